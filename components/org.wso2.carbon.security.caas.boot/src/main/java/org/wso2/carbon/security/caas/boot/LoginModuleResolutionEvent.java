@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.boot;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event emitted when {@code ProxyLoginModule} resolves the login module it delegates to.
+ * This class must only be loaded after checking that the flight recorder API is available.
+ *
+ * @since 1.0.1
+ */
+@Name("org.wso2.carbon.security.LoginModuleResolution")
+@Label("Login Module Resolution")
+@Category({"WSO2 Carbon", "Security"})
+@Description("Lookup of the login module a ProxyLoginModule delegates to")
+@Threshold("1 ms")
+final class LoginModuleResolutionEvent extends Event {
+
+    @Label("Login Module")
+    String loginModule;
+
+    @Label("Resolved")
+    boolean resolved;
+}
@@ -35,6 +35,10 @@ import javax.security.auth.spi.LoginModule;
  * .security.auth.login.Configuration implementation, the name of the login module and bundle id to be used to load it.
  * This class MUST be available from all modules.
  * </p>
+ * <p>
+ * Login modules are looked up as prototype scoped OSGi services once {@link #init(BundleContext)} is called. Without a
+ * BundleContext, e.g. when embedded in a plain JVM, they are loaded with {@code java.util.ServiceLoader} instead.
+ * </p>
  *
  * @since 1.0.0
  */
@@ -43,6 +47,8 @@ public class ProxyLoginModule implements LoginModule {
     public static final String LOGIN_MODULE_OPTION_KEY = "LOGIN_MODULE";
     public static final String LOGIN_MODULE_SEARCH_KEY = "login.module.class.name";
 
+    private static final boolean FLIGHT_RECORDER_SUPPORTED = isFlightRecorderSupported();
+
     private static BundleContext bundleContext;
 
     private LoginModule instance = null;
@@ -55,10 +61,6 @@ public class ProxyLoginModule implements LoginModule {
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState,
                            Map<String, ?> options) {
 
-        if (bundleContext == null) {
-            throw new IllegalStateException("ProxyLoginModule is not initialized.");
-        }
-
         Map<String, ?> updatedOptions = new HashMap<>(options);
 
         String module = (String) updatedOptions.remove(LOGIN_MODULE_OPTION_KEY);
@@ -67,17 +69,37 @@ public class ProxyLoginModule implements LoginModule {
                                             "javax.security.auth.login.Configuration implementation.");
         }
 
-        Collection<ServiceReference<LoginModule>> serviceReferences;
-        try {
-            serviceReferences = bundleContext.getServiceReferences(
-                    LoginModule.class, "(&(" + LOGIN_MODULE_SEARCH_KEY + "=" + module + ")(service.scope=prototype))");
-        } catch (InvalidSyntaxException e) {
-            throw new IllegalStateException("Invalid syntax found while searching login module " + module);
+        LoginModuleResolutionEvent event = null;
+        if (FLIGHT_RECORDER_SUPPORTED) {
+            event = new LoginModuleResolutionEvent();
+            event.begin();
         }
 
-        serviceReferences.forEach(
-                serviceReference -> instance = bundleContext.getServiceObjects(serviceReference).getService()
-        );
+        BundleContext context = bundleContext;
+        if (context != null) {
+            Collection<ServiceReference<LoginModule>> serviceReferences;
+            try {
+                serviceReferences = context.getServiceReferences(LoginModule.class,
+                        "(&(" + LOGIN_MODULE_SEARCH_KEY + "=" + module + ")(service.scope=prototype))");
+            } catch (InvalidSyntaxException e) {
+                throw new IllegalStateException("Invalid syntax found while searching login module " + module);
+            }
+
+            serviceReferences.forEach(
+                    serviceReference -> instance = context.getServiceObjects(serviceReference).getService()
+            );
+        } else {
+            instance = ServiceLoaderLoginModuleRegistry.getLoginModule(module);
+        }
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.loginModule = module;
+                event.resolved = instance != null;
+                event.commit();
+            }
+        }
 
         if (instance == null) {
             throw new IllegalStateException("Unable to find login module " + module);
@@ -86,6 +108,16 @@ public class ProxyLoginModule implements LoginModule {
         instance.initialize(subject, callbackHandler, sharedState, Collections.unmodifiableMap(updatedOptions));
     }
 
+    // Flight recorder events are only emitted on JVMs which ship the jdk.jfr API.
+    private static boolean isFlightRecorderSupported() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ProxyLoginModule.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
     @Override
     public boolean login() throws LoginException {
         return instance.login();
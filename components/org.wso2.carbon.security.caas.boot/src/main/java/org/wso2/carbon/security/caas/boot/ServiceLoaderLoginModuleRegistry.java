@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.boot;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.security.auth.spi.LoginModule;
+
+/**
+ * <p>
+ * Login module registry backed by {@code java.util.ServiceLoader}, used by {@code ProxyLoginModule} when it runs in a
+ * plain JVM without an OSGi {@code BundleContext}. Login modules are registered by listing them in
+ * {@code META-INF/services/javax.security.auth.spi.LoginModule}.
+ * </p>
+ * The service files are scanned once per login module name. As with the OSGi prototype scope, a new login module
+ * instance is created for every lookup.
+ *
+ * @since 1.0.1
+ */
+final class ServiceLoaderLoginModuleRegistry {
+
+    private static final ConcurrentMap<String, Class<? extends LoginModule>> loginModules = new ConcurrentHashMap<>();
+
+    private ServiceLoaderLoginModuleRegistry() {
+    }
+
+    /**
+     * Returns a new instance of the login module with the given class name.
+     *
+     * @param className class name of the login module.
+     * @return LoginModule, or null if no such login module is registered.
+     */
+    static LoginModule getLoginModule(String className) {
+
+        Class<? extends LoginModule> loginModuleClass = loginModules.get(className);
+        if (loginModuleClass == null) {
+            LoginModule loginModule = load(className);
+            if (loginModule != null) {
+                loginModules.putIfAbsent(className, loginModule.getClass());
+            }
+            return loginModule;
+        }
+
+        try {
+            return loginModuleClass.getDeclaredConstructor().newInstance();
+        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException |
+                InvocationTargetException e) {
+            throw new IllegalStateException("Unable to instantiate login module " + className, e);
+        }
+    }
+
+    private static LoginModule load(String className) {
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ServiceLoaderLoginModuleRegistry.class.getClassLoader();
+        }
+
+        Iterator<LoginModule> iterator = ServiceLoader.load(LoginModule.class, classLoader).iterator();
+        while (iterator.hasNext()) {
+            LoginModule loginModule;
+            try {
+                loginModule = iterator.next();
+            } catch (ServiceConfigurationError e) {
+                // A broken provider must not hide the others.
+                continue;
+            }
+            if (loginModule.getClass().getName().equals(className)) {
+                return loginModule;
+            }
+        }
+        return null;
+    }
+}
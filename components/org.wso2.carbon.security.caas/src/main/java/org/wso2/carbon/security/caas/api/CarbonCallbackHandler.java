@@ -27,4 +27,17 @@ public interface CarbonCallbackHandler extends CallbackHandler {
      */
     boolean canHandle();
 
+    /**
+     * Returns the type of login module this callback handler serves, e.g.
+     * {@code CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE}. This is the counterpart of the
+     * {@link #SUPPORTED_LOGIN_MODULE} service property for callback handlers loaded with
+     * {@code java.util.ServiceLoader} outside OSGi.
+     *
+     * @return supported login module type, or null if the callback handler is only registered as an OSGi service.
+     * @since 1.0.1
+     */
+    default String getSupportedLoginModule() {
+        return null;
+    }
+
 }
@@ -16,6 +16,7 @@
 
 package org.wso2.carbon.security.caas.api;
 
+import org.wso2.carbon.security.caas.api.metrics.SecurityMetrics;
 import org.wso2.carbon.security.caas.boot.ProxyLoginModule;
 import sun.security.provider.ConfigFile.Spi;
 
@@ -51,6 +52,8 @@ public class CarbonJAASConfiguration extends Configuration {
     @Override
     public AppConfigurationEntry[] getAppConfigurationEntry(String applicationName) {
 
+        SecurityMetrics.getInstance().recordLoginAttempt(applicationName);
+
         AppConfigurationEntry[] configurationEntries = spi.engineGetAppConfigurationEntry(applicationName);
 
         if (configurationEntries == null) {
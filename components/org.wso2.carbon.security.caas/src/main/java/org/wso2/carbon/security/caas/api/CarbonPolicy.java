@@ -16,6 +16,10 @@
 
 package org.wso2.carbon.security.caas.api;
 
+import org.wso2.carbon.security.caas.api.audit.AuditLog;
+import org.wso2.carbon.security.caas.api.metrics.SecurityMetrics;
+import org.wso2.carbon.security.caas.internal.AuthorizationEvent;
+import org.wso2.carbon.security.caas.internal.SecurityEvents;
 import sun.security.provider.PolicyFile;
 
 import java.net.URL;
@@ -29,7 +33,8 @@ import javax.security.auth.Subject;
  * <p>
  * The class {@code CarbonPolicy} is the carbon specific extension of {@code PolicyFile}.
  * This class's {@code implies} method is overridden to specially handle {@code CarbonPermission} and uses the carbon
- * authorization implementation to check authorization.
+ * authorization implementation to check authorization. Denied {@code CarbonPermission}s are recorded in the
+ * {@code AuditLog}.
  *
  * @since 1.0.0
  */
@@ -48,21 +53,54 @@ public class CarbonPolicy extends PolicyFile {
 
         if (permission instanceof CarbonPermission) {
 
-            // get the current subject.
-            Subject subject = Subject.getSubject(AccessController.getContext());
+            SecurityMetrics metrics = SecurityMetrics.getInstance();
+            long start = metrics.startTimer();
+            AuthorizationEvent event = SecurityEvents.beginAuthorization();
+            boolean granted = false;
+            try {
+                // get the current subject.
+                Subject subject = Subject.getSubject(AccessController.getContext());
+                granted = isAuthorized(subject, (CarbonPermission) permission);
+                if (!granted) {
+                    AuditLog.getInstance().authorizationDenied(getPrincipalName(subject),
+                                                               describe((CarbonPermission) permission));
+                }
+                return granted;
+            } finally {
+                metrics.stopTimer(SecurityMetrics.Phase.AUTHORIZATION, start);
+                SecurityEvents.commitAuthorization(event, (CarbonPermission) permission, granted);
+            }
+        }
 
-            for (Principal principal : subject.getPrincipals()) {
-                if (principal instanceof CarbonPrincipal) {
-                    if (((CarbonPrincipal) principal).isAuthorized((CarbonPermission) permission)) {
-                        return true;
-                    }
+        return super.implies(domain, permission);
+    }
+
+    private boolean isAuthorized(Subject subject, CarbonPermission permission) {
+
+        for (Principal principal : subject.getPrincipals()) {
+            if (principal instanceof CarbonPrincipal) {
+                if (((CarbonPrincipal) principal).isAuthorized(permission)) {
+                    return true;
                 }
             }
-        } else {
-            return super.implies(domain, permission);
         }
 
         return false;
     }
 
+    private static String describe(CarbonPermission permission) {
+        return permission.getActions() == null ? permission.getName() :
+               permission.getName() + " " + permission.getActions();
+    }
+
+    private static String getPrincipalName(Subject subject) {
+
+        for (Principal principal : subject.getPrincipals()) {
+            if (principal instanceof CarbonPrincipal) {
+                return principal.getName();
+            }
+        }
+        return null;
+    }
+
 }
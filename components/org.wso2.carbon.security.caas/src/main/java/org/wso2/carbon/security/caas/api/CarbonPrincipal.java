@@ -20,50 +20,129 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.security.caas.api.model.User;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.security.Principal;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class {@code CarbonPrincipal} is the principal representation of the carbon platform.
  * This is an implementation of {@code Principal}.
+ * <p>
+ * Principals are immutable and equal when they represent the same user of the same tenant. Login modules should
+ * obtain them through {@link #intern(String, User)} so that all the subjects of a user share a single principal and
+ * its parsed permission set. The password of the user is not kept.
+ * </p>
  *
  * @since 1.0.0
  */
-public class CarbonPrincipal implements Principal {
+public final class CarbonPrincipal implements Principal {
 
     private static final Logger log = LoggerFactory.getLogger(CarbonPrincipal.class);
 
-    private User user;
+    private static final InternTable internTable = new InternTable();
 
-    public CarbonPrincipal() {
+    private final String tenant;
 
-    }
+    private final User user;
+
+    private final CarbonPermission[] grants;
+
+    private final int hash;
 
     public CarbonPrincipal(User user) {
-        this.setUser(user);
+        this(null, user);
+    }
+
+    /**
+     * Creates a principal of a user of a tenant.
+     *
+     * @param tenant tenant of the user, or null for the default partition.
+     * @param user User to be represented by the principal.
+     */
+    public CarbonPrincipal(String tenant, User user) {
+
+        if (user == null || user.getUsername() == null) {
+            throw new IllegalArgumentException("User of a CarbonPrincipal must have a username.");
+        }
+
+        this.tenant = tenant;
+        this.user = copyOf(user);
+        this.grants = parseGrants(user.getPermission());
+        this.hash = 31 * Objects.hashCode(tenant) + user.getUsername().hashCode();
+    }
+
+    /**
+     * Returns the shared principal of a user of the default partition.
+     *
+     * @param user User to be represented by the principal.
+     * @return canonical CarbonPrincipal of the user.
+     * @see #intern(String, User)
+     */
+    public static CarbonPrincipal intern(User user) {
+        return internTable.intern(null, user);
+    }
+
+    /**
+     * Returns the shared principal of a user of a tenant. A new principal is created only if none is in use for the
+     * user or if the permissions of the user have changed since the current one was created.
+     *
+     * @param tenant tenant of the user, or null for the default partition.
+     * @param user User to be represented by the principal.
+     * @return canonical CarbonPrincipal of the user.
+     */
+    public static CarbonPrincipal intern(String tenant, User user) {
+        return internTable.intern(tenant, user);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(this);
+        return hash;
     }
 
     @Override
     public String getName() {
-        return getUser().getUsername();
+        return user.getUsername();
     }
 
-    public User getUser() {
-        return user;
+    /**
+     * Returns the tenant of the user represented by this principal.
+     *
+     * @return tenant, or null for the default partition.
+     */
+    public String getTenant() {
+        return tenant;
     }
 
-    public void setUser(User user) {
-        this.user = user;
+    /**
+     * Returns a copy of the user represented by this principal, without the password.
+     *
+     * @return User.
+     */
+    public User getUser() {
+        return copyOf(user);
     }
 
     @Override
     public boolean equals(Object obj) {
-        return this == obj;
+
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CarbonPrincipal)) {
+            return false;
+        }
+
+        CarbonPrincipal other = (CarbonPrincipal) obj;
+        return hash == other.hash && user.getUsername().equals(other.user.getUsername()) &&
+               Objects.equals(tenant, other.tenant);
+    }
+
+    @Override
+    public String toString() {
+        return "CarbonPrincipal{" + (tenant == null ? "" : tenant + "/") + user.getUsername() + "}";
     }
 
     /**
@@ -74,7 +153,128 @@ public class CarbonPrincipal implements Principal {
      */
     public boolean isAuthorized(CarbonPermission carbonPermission) {
 
-        return getUser().isUserAuthorized(carbonPermission);
+        for (CarbonPermission grant : grants) {
+            if (carbonPermission.implies(grant)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A changed password leaves the principal as it is, only a change of the permissions calls for a new one.
+    private boolean represents(User other) {
+        return Objects.equals(user.getUsername(), other.getUsername())
+               && Objects.equals(user.getPermission(), other.getPermission());
+    }
+
+    private static User copyOf(User user) {
+
+        User copy = new User();
+        copy.setUsername(user.getUsername());
+        copy.setPermission(user.getPermission());
+        return copy;
+    }
+
+    private static CarbonPermission[] parseGrants(String permissions) {
+
+        if (permissions == null) {
+            return new CarbonPermission[0];
+        }
+
+        String[] allowedPermissions = permissions.split(",");
+        CarbonPermission[] parsed = new CarbonPermission[allowedPermissions.length];
+        for (int i = 0; i < allowedPermissions.length; i++) {
+            parsed[i] = new CarbonPermission(allowedPermissions[i], "grant");
+        }
+        return parsed;
+    }
+
+    /**
+     * Weak valued table of principals keyed by tenant and username. Principals which are no longer referenced by any
+     * subject are garbage collected and their entries are purged on subsequent lookups.
+     */
+    private static final class InternTable {
+
+        private final ConcurrentMap<PrincipalKey, PrincipalReference> principals = new ConcurrentHashMap<>();
+
+        private final ReferenceQueue<CarbonPrincipal> referenceQueue = new ReferenceQueue<>();
+
+        CarbonPrincipal intern(String tenant, User user) {
+
+            purge();
+
+            String username = user.getUsername();
+            PrincipalKey key = new PrincipalKey(tenant, username);
+            PrincipalReference reference = principals.get(key);
+            CarbonPrincipal principal = reference != null ? reference.get() : null;
+
+            while (principal == null || !principal.represents(user)) {
+                CarbonPrincipal candidate = new CarbonPrincipal(tenant, user);
+                PrincipalReference candidateReference = new PrincipalReference(key, candidate, referenceQueue);
+
+                boolean replaced = reference == null ? principals.putIfAbsent(key, candidateReference) == null
+                                                     : principals.replace(key, reference, candidateReference);
+                if (replaced) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Interned principal for user {} of tenant {}.", username, tenant);
+                    }
+                    return candidate;
+                }
+
+                reference = principals.get(key);
+                principal = reference != null ? reference.get() : null;
+            }
+            return principal;
+        }
+
+        private void purge() {
+
+            PrincipalReference reference;
+            while ((reference = (PrincipalReference) referenceQueue.poll()) != null) {
+                principals.remove(reference.key, reference);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to an interned principal which remembers its key.
+     */
+    private static final class PrincipalReference extends WeakReference<CarbonPrincipal> {
+
+        private final PrincipalKey key;
+
+        PrincipalReference(PrincipalKey key, CarbonPrincipal principal, ReferenceQueue<CarbonPrincipal> queue) {
+            super(principal, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Key of an interned principal, the same username in different tenants being different users.
+     */
+    private static final class PrincipalKey {
+
+        private final String tenant;
+        private final String username;
+
+        PrincipalKey(String tenant, String username) {
+            this.tenant = tenant;
+            this.username = username;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(tenant) + username.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
 
+            if (!(obj instanceof PrincipalKey)) {
+                return false;
+            }
+            PrincipalKey other = (PrincipalKey) obj;
+            return username.equals(other.username) && Objects.equals(tenant, other.tenant);
+        }
     }
 }
@@ -21,8 +21,12 @@ import org.slf4j.LoggerFactory;
 import org.wso2.carbon.messaging.CarbonMessage;
 import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
 import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+import org.wso2.carbon.security.caas.internal.CallbackHandlerEvent;
+import org.wso2.carbon.security.caas.internal.SecurityEvents;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.List;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -61,23 +65,28 @@ public class ProxyCallbackHandler implements CallbackHandler {
                 if (callback instanceof NameCallback || callback instanceof PasswordCallback) {
                     if (!handled) {
                         handled = true;
-                        List<CarbonCallbackHandler> callbackHandlers = CarbonSecurityUtils
-                                .getCallbackHandlers(CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE);
+                        List<CarbonCallbackHandler> callbackHandlers =
+                                lookupCallbackHandlers(CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE);
                         if (!callbackHandlers.isEmpty()) {
-                            doHandle(callbackHandlers, callbacks);
+                            doHandle(CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE, callbackHandlers,
+                                     callbacks);
                         } else {
                             throw new UnsupportedCallbackException(callback);
                         }
                     }
                     // Handle CarbonCallbacks
                 } else if (callback instanceof CarbonCallback) {
-                    List<CarbonCallbackHandler> callbackHandlers = CarbonSecurityUtils
-                            .getCallbackHandlers(((CarbonCallback) callback).getLoginModuleType());
+                    String loginModuleType = ((CarbonCallback) callback).getLoginModuleType();
+                    List<CarbonCallbackHandler> callbackHandlers = lookupCallbackHandlers(loginModuleType);
                     if (!callbackHandlers.isEmpty()) {
-                        doHandle(callbackHandlers, new Callback[]{callback});
+                        doHandle(loginModuleType, callbackHandlers, new Callback[]{callback});
                     } else {
                         throw new UnsupportedCallbackException(callback);
                     }
+                } else if (callback instanceof ClientAddressCallback) {
+                    ((ClientAddressCallback) callback).setClientAddress(getClientAddress());
+                } else if (callback instanceof TenantCallback) {
+                    ((TenantCallback) callback).setTenant(getTenant());
                 } else {
                     throw new UnsupportedCallbackException(callback);
                 }
@@ -85,17 +94,53 @@ public class ProxyCallbackHandler implements CallbackHandler {
         }
     }
 
-    private void doHandle(List<CarbonCallbackHandler> callbackHandlers, Callback[] callbacks) {
-        callbackHandlers
-                .stream()
-                .filter((handler) -> {
-                    handler.setCarbonMessage(carbonMessage);
-                    return handler.canHandle();
-                })
-                .findFirst()
-                .ifPresent(rethrowConsumer(handler -> {
-                    handler.handle(callbacks);
-                }));
+    private String getClientAddress() {
+
+        Object address = carbonMessage == null ? null :
+                         carbonMessage.getProperty(CarbonSecurityConstants.CLIENT_ADDRESS_PROPERTY);
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress socketAddress = (InetSocketAddress) address;
+            return socketAddress.getAddress() != null ? socketAddress.getAddress().getHostAddress() :
+                   socketAddress.getHostString();
+        } else if (address instanceof InetAddress) {
+            return ((InetAddress) address).getHostAddress();
+        }
+        return address == null ? null : address.toString();
+    }
+
+    private String getTenant() {
+
+        Object tenant = carbonMessage == null ? null :
+                        carbonMessage.getProperty(CarbonSecurityConstants.TENANT_PROPERTY);
+        return tenant == null ? null : tenant.toString();
+    }
+
+    private List<CarbonCallbackHandler> lookupCallbackHandlers(String loginModuleType) {
+
+        CallbackHandlerEvent event = SecurityEvents.beginCallbackHandler();
+        List<CarbonCallbackHandler> callbackHandlers = CarbonSecurityUtils.getCallbackHandlers(loginModuleType);
+        SecurityEvents.commitCallbackHandler(event, "lookup", loginModuleType, callbackHandlers.size());
+        return callbackHandlers;
+    }
+
+    private void doHandle(String loginModuleType, List<CarbonCallbackHandler> callbackHandlers,
+                          Callback[] callbacks) {
+
+        CallbackHandlerEvent event = SecurityEvents.beginCallbackHandler();
+        try {
+            callbackHandlers
+                    .stream()
+                    .filter((handler) -> {
+                        handler.setCarbonMessage(carbonMessage);
+                        return handler.canHandle();
+                    })
+                    .findFirst()
+                    .ifPresent(rethrowConsumer(handler -> {
+                        handler.handle(callbacks);
+                    }));
+        } finally {
+            SecurityEvents.commitCallbackHandler(event, "dispatch", loginModuleType, callbackHandlers.size());
+        }
     }
 
 }
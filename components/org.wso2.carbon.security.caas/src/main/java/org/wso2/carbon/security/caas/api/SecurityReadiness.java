@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Readiness of the carbon security module. The module is ready once it has warmed up after activation, i.e. the user
+ * store, the JAAS configuration and the callback handlers have been loaded, so that the first logins do not pay for
+ * loading them. Health checks of load balancers can gate traffic on it.
+ * </p>
+ * It is registered as an OSGi service with the {@link #READY} service property, which is updated when the module
+ * becomes ready. Hence consumers can also track the {@code (carbon.security.ready=true)} filter.
+ *
+ * @since 1.0.1
+ */
+public interface SecurityReadiness {
+
+    String READY = "carbon.security.ready";
+
+    /**
+     * Returns whether the module has completed warming up.
+     *
+     * @return true if ready.
+     */
+    boolean isReady();
+
+    /**
+     * Waits until the module has completed warming up.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit unit of the timeout.
+     * @return true if ready, false if the timeout elapsed before.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api;
+
+import javax.security.auth.callback.Callback;
+
+/**
+ * <p>
+ * Callback through which a login module retrieves the tenant a client logs in to, which selects the user store
+ * partition the client is authenticated against. {@code ProxyCallbackHandler} takes it from the {@code CarbonMessage}
+ * of the request.
+ * </p>
+ * Callback handlers which do not know the tenant may reject it with an {@code UnsupportedCallbackException}.
+ *
+ * @since 1.0.1
+ */
+public class TenantCallback implements Callback {
+
+    private String tenant;
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+}
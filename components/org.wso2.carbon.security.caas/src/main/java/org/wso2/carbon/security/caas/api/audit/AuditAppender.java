@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination the audit log writer appends batches of events to. Appenders are only called from the writer thread.
+ *
+ * @since 1.0.1
+ */
+interface AuditAppender extends Closeable {
+
+    /**
+     * Appends a batch of events and flushes them.
+     *
+     * @param events events in the order they were published.
+     * @throws IOException if the events could not be written.
+     */
+    void append(List<AuditEvent> events) throws IOException;
+
+    /**
+     * Rolls over to a new file if the current one is due for rotation. Called regularly, also while idle.
+     *
+     * @throws IOException if the rotation fails.
+     */
+    void rotateIfDue() throws IOException;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+/**
+ * Security relevant event recorded in the audit log.
+ *
+ * @since 1.0.1
+ */
+public final class AuditEvent {
+
+    private final long timestamp;
+    private final Type type;
+    private final String principal;
+    private final int errorCode;
+    private final String source;
+    private final String detail;
+
+    /**
+     * Creates an audit event.
+     *
+     * @param timestamp time of the event in milliseconds since the epoch.
+     * @param type type of the event.
+     * @param principal name of the user, or null if unknown.
+     * @param errorCode {@code CarbonSecurityErrorMessages} code of a failure, or -1.
+     * @param source address of the client, or null if unknown.
+     * @param detail additional information, e.g. the denied permission, or null.
+     */
+    public AuditEvent(long timestamp, Type type, String principal, int errorCode, String source, String detail) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.principal = principal;
+        this.errorCode = errorCode;
+        this.source = source;
+        this.detail = detail;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPrincipal() {
+        return principal;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Audit event types. Binary audit logs store the ordinal, hence new types must only be added at the end.
+     */
+    public enum Type {
+
+        LOGIN_SUCCESS,
+        LOGIN_FAILURE,
+        LOGOUT,
+        AUTHORIZATION_DENIED
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Naming of audit log files and their rolled over copies.
+ *
+ * @since 1.0.1
+ */
+final class AuditFiles {
+
+    private static final DateTimeFormatter ROTATION_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    /**
+     * Returns the name a file is rolled over to, which carries the time of the rotation, e.g.
+     * {@code carbon-security-audit-20170101-120000.log}. A counter is added if the name is taken.
+     *
+     * @param file audit log file.
+     * @return path of the rolled over file.
+     */
+    static Path rotationTarget(Path file) {
+
+        String name = file.getFileName().toString();
+        String base = baseName(name);
+        String extension = name.substring(base.length());
+        String stamp = ROTATION_SUFFIX.format(Instant.now());
+
+        Path target = file.resolveSibling(base + "-" + stamp + extension);
+        for (int i = 1; Files.exists(target); i++) {
+            target = file.resolveSibling(base + "-" + stamp + "." + i + extension);
+        }
+        return target;
+    }
+
+    /**
+     * Returns the sibling of a file with the same base name and another extension.
+     *
+     * @param file file.
+     * @param extension extension including the dot, e.g. {@code ".dict"}.
+     * @return path of the sibling.
+     */
+    static Path withExtension(Path file, String extension) {
+        return file.resolveSibling(baseName(file.getFileName().toString()) + extension);
+    }
+
+    private static String baseName(String name) {
+
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    private AuditFiles() {
+
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Audit log of logins, logouts and denied authorizations. Publishing an event only places it in a lock-free ring
+ * buffer; a background writer thread drains the buffer in batches to an append-only file, rolled over on size and
+ * time. Hence auditing adds no I/O to the login path. The file is either text, or with
+ * {@code carbon.security.audit.format=binary} compact binary records queried with {@code AuditLogReader}.
+ * </p>
+ * <p>
+ * When events are published faster than they can be written the configured {@link OverflowPolicy} applies. Events
+ * that are not recorded are counted and reported by {@link #getDroppedEvents()} and {@link #getSampledOutEvents()}.
+ * </p>
+ * The audit log is configured with the {@code carbon.security.audit.*} system properties.
+ *
+ * @since 1.0.1
+ */
+public class AuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private static final AuditLog instance = new AuditLog();
+
+    private final boolean enabled;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final AuditRingBuffer buffer;
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder sampledOutEvents = new LongAdder();
+    private final AtomicLong writtenEvents = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean unavailable;
+    // Set by stop(), so that events published afterwards are dropped rather than starting the writer again.
+    private volatile boolean stopped;
+    private Thread writer;
+    private Thread shutdownHook;
+
+    private AuditLog() {
+
+        enabled = Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.AUDIT_ENABLED, "true"));
+        overflowPolicy = readOverflowPolicy();
+        sampleRate = Math.max(1, Integer.getInteger(CarbonSecurityConstants.AUDIT_SAMPLE_RATE,
+                                                    CarbonSecurityConstants.DEFAULT_AUDIT_SAMPLE_RATE));
+        buffer = enabled ? new AuditRingBuffer(Integer.getInteger(CarbonSecurityConstants.AUDIT_BUFFER_SIZE,
+                                                                  CarbonSecurityConstants.DEFAULT_AUDIT_BUFFER_SIZE))
+                         : null;
+    }
+
+    private static OverflowPolicy readOverflowPolicy() {
+
+        String policy = System.getProperty(CarbonSecurityConstants.AUDIT_OVERFLOW_POLICY, OverflowPolicy.DROP.name());
+        try {
+            return OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown audit log overflow policy '{}', events will be dropped when the buffer is full.", policy);
+            return OverflowPolicy.DROP;
+        }
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return AuditLog.
+     */
+    public static AuditLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns whether events are audited.
+     *
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a successful login.
+     *
+     * @param principal name of the user.
+     * @param source client address, or null if unknown.
+     */
+    public void loginSucceeded(String principal, String source) {
+        publish(AuditEvent.Type.LOGIN_SUCCESS, principal, -1, source, null);
+    }
+
+    /**
+     * Records a failed login.
+     *
+     * @param principal presented username, or null if none was presented.
+     * @param source client address, or null if unknown.
+     * @param errorCode {@code CarbonSecurityErrorMessages} code of the failure, or -1.
+     */
+    public void loginFailed(String principal, String source, int errorCode) {
+        publish(AuditEvent.Type.LOGIN_FAILURE, principal, errorCode, source, null);
+    }
+
+    /**
+     * Records a logout.
+     *
+     * @param principal name of the user.
+     * @param source client address, or null if unknown.
+     */
+    public void loggedOut(String principal, String source) {
+        publish(AuditEvent.Type.LOGOUT, principal, -1, source, null);
+    }
+
+    /**
+     * Records a denied authorization.
+     *
+     * @param principal name of the user, or null if the subject has no carbon principal.
+     * @param permission denied permission.
+     */
+    public void authorizationDenied(String principal, String permission) {
+        publish(AuditEvent.Type.AUTHORIZATION_DENIED, principal, -1, null, permission);
+    }
+
+    private void publish(AuditEvent.Type type, String principal, int errorCode, String source, String detail) {
+
+        if (!enabled) {
+            return;
+        }
+        if (!running) {
+            if (!stopped && !unavailable) {
+                startOnFirstEvent();
+            }
+            if (!running) {
+                droppedEvents.increment();
+                return;
+            }
+        }
+
+        if (overflowPolicy == OverflowPolicy.SAMPLE && buffer.size() > buffer.capacity() / 2 &&
+            ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            sampledOutEvents.increment();
+            return;
+        }
+
+        AuditEvent event = new AuditEvent(System.currentTimeMillis(), type, principal, errorCode, source, detail);
+        if (buffer.offer(event)) {
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            do {
+                LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                if (buffer.offer(event)) {
+                    return;
+                }
+            } while (running);
+        }
+        droppedEvents.increment();
+    }
+
+    /**
+     * Returns the number of events lost because the buffer was full, or because they could not be written.
+     *
+     * @return dropped event count.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Returns the number of events left out by the {@link OverflowPolicy#SAMPLE} policy.
+     *
+     * @return sampled out event count.
+     */
+    public long getSampledOutEvents() {
+        return sampledOutEvents.sum();
+    }
+
+    /**
+     * Returns the number of events written to the audit log file.
+     *
+     * @return written event count.
+     */
+    public long getWrittenEvents() {
+        return writtenEvents.get();
+    }
+
+    /**
+     * Starts the writer thread, again if the audit log was stopped. Otherwise the writer is started by the first
+     * published event.
+     */
+    public synchronized void start() {
+
+        stopped = false;
+        startWriter();
+    }
+
+    private synchronized void startOnFirstEvent() {
+
+        // Checked again under the lock, a concurrent stop() wins over a lazy start.
+        if (!stopped) {
+            startWriter();
+        }
+    }
+
+    private void startWriter() {
+
+        if (!enabled || running) {
+            return;
+        }
+
+        AuditAppender appender;
+        try {
+            appender = createAppender();
+        } catch (IOException e) {
+            log.error("Unable to open the audit log. Audit events will be dropped.", e);
+            unavailable = true;
+            return;
+        }
+
+        running = true;
+        writer = new Thread(() -> write(appender), "carbon-security-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        shutdownHook = new Thread(this::stop, "carbon-security-audit-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the writer thread after writing out the buffered events. Events published afterwards are counted as
+     * dropped, until {@link #start()} is called. Does nothing if already stopped.
+     */
+    public synchronized void stop() {
+
+        stopped = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        // Unregistered, so that a stopped audit log, e.g. of an uninstalled bundle, is not kept until the JVM exits.
+        if (shutdownHook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is shutting down, the hook is running or about to run and will find the log stopped.
+            }
+        }
+        shutdownHook = null;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private AuditAppender createAppender() throws IOException {
+
+        boolean binary = "binary".equalsIgnoreCase(System.getProperty(CarbonSecurityConstants.AUDIT_FORMAT));
+        String defaultFileName = binary ? CarbonSecurityConstants.DEFAULT_BINARY_AUDIT_FILE :
+                                 CarbonSecurityConstants.DEFAULT_AUDIT_FILE;
+        String fileName = System.getProperty(CarbonSecurityConstants.AUDIT_FILE);
+        Path file;
+        if (fileName != null) {
+            file = Paths.get(fileName);
+        } else if (System.getProperty(CarbonSecurityConstants.CARBON_HOME) != null) {
+            file = CarbonSecurityConstants.getCarbonHomeDirectory().resolve(defaultFileName);
+        } else {
+            file = Paths.get(defaultFileName);
+        }
+
+        long rotationSize = Long.getLong(CarbonSecurityConstants.AUDIT_ROTATION_SIZE,
+                                         CarbonSecurityConstants.DEFAULT_AUDIT_ROTATION_SIZE);
+        long rotationInterval = TimeUnit.SECONDS.toMillis(
+                Long.getLong(CarbonSecurityConstants.AUDIT_ROTATION_INTERVAL,
+                             CarbonSecurityConstants.DEFAULT_AUDIT_ROTATION_INTERVAL));
+        return binary ? new MappedAuditAppender(file, rotationSize, rotationInterval) :
+               new RollingFileAuditAppender(file, rotationSize, rotationInterval);
+    }
+
+    private void write(AuditAppender appender) {
+
+        List<AuditEvent> batch = new ArrayList<>(BATCH_SIZE);
+        boolean failing = false;
+
+        // Keep draining after a stop until the buffer is empty, so that no accepted event is lost.
+        while (running || buffer.size() > 0) {
+            int drained = buffer.drain(batch, BATCH_SIZE);
+            try {
+                if (drained > 0) {
+                    appender.append(batch);
+                    writtenEvents.addAndGet(drained);
+                } else if (buffer.size() > 0) {
+                    // A producer has claimed the next slot but not filled it yet.
+                    Thread.yield();
+                } else {
+                    appender.rotateIfDue();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                failing = false;
+            } catch (IOException e) {
+                droppedEvents.add(drained);
+                if (!failing) {
+                    log.error("Unable to write to the audit log.", e);
+                    failing = true;
+                }
+            }
+            batch.clear();
+        }
+
+        try {
+            appender.close();
+        } catch (IOException e) {
+            log.error("Unable to close the audit log.", e);
+        }
+    }
+}
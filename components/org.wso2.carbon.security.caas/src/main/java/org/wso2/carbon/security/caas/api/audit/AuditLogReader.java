@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.HEADER_SIZE;
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.NONE;
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.RECORD_SIZE;
+
+/**
+ * <p>
+ * Queries binary audit logs by time range, principal and event type. Segments are scanned through a read-only
+ * mapping and only the records that match are turned into {@code AuditEvent}s, so segments of any size are queried
+ * without loading them into the heap. Segments whose time range does not overlap the query, or whose dictionary does
+ * not hold the principal, are skipped without scanning.
+ * </p>
+ * Also runnable from the command line, printing the matching events in the text audit log format:
+ * <pre>
+ *     java -cp org.wso2.carbon.security.caas.jar org.wso2.carbon.security.caas.api.audit.AuditLogReader \
+ *          --from 2017-01-01T00:00:00Z --principal admin --outcome failure,denied $CARBON_HOME/logs/audit
+ * </pre>
+ *
+ * @since 1.0.1
+ */
+public final class AuditLogReader {
+
+    private final long from;
+    private final long to;
+    private final String principal;
+    private final Set<AuditEvent.Type> types;
+
+    /**
+     * Creates a reader for a query.
+     *
+     * @param from lowest matching timestamp in milliseconds since the epoch, inclusive.
+     * @param to highest matching timestamp in milliseconds since the epoch, exclusive.
+     * @param principal matching principal name, or null to match all principals.
+     * @param types matching event types.
+     */
+    public AuditLogReader(long from, long to, String principal, Set<AuditEvent.Type> types) {
+
+        this.from = from;
+        this.to = to;
+        this.principal = principal;
+        this.types = types.isEmpty() ? EnumSet.noneOf(AuditEvent.Type.class) : EnumSet.copyOf(types);
+    }
+
+    /**
+     * Passes the matching events of a segment to a consumer, in the order they were written.
+     *
+     * @param segment binary audit log segment.
+     * @param consumer consumer of the matching events.
+     * @return number of matching events.
+     * @throws IOException if the segment or its dictionary cannot be read.
+     */
+    public long read(Path segment, Consumer<AuditEvent> consumer) throws IOException {
+
+        MappedByteBuffer records;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return 0;
+            }
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+        }
+
+        if (records.getInt(BinaryAuditFormat.MAGIC_OFFSET) != BinaryAuditFormat.MAGIC ||
+            records.getShort(BinaryAuditFormat.VERSION_OFFSET) != BinaryAuditFormat.VERSION ||
+            records.getShort(BinaryAuditFormat.RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IOException("Not a binary audit log of a supported version: " + segment);
+        }
+
+        long count = Math.min(records.getLong(BinaryAuditFormat.COUNT_OFFSET),
+                              (records.capacity() - HEADER_SIZE) / RECORD_SIZE);
+        if (count == 0 || records.getLong(BinaryAuditFormat.MAX_TIMESTAMP_OFFSET) < from ||
+            records.getLong(BinaryAuditFormat.MIN_TIMESTAMP_OFFSET) >= to) {
+            return 0;
+        }
+
+        // Read after the record count, as the dictionary is written ahead of it.
+        List<String> dictionary = readDictionary(AuditFiles.withExtension(segment,
+                                                                          BinaryAuditFormat.DICTIONARY_EXTENSION));
+        int principalIndex = NONE;
+        if (principal != null) {
+            principalIndex = dictionary.indexOf(principal);
+            if (principalIndex == NONE) {
+                return 0;
+            }
+        }
+
+        AuditEvent.Type[] allTypes = AuditEvent.Type.values();
+        long matches = 0;
+        for (int record = HEADER_SIZE; record < HEADER_SIZE + count * RECORD_SIZE; record += RECORD_SIZE) {
+            long timestamp = records.getLong(record + BinaryAuditFormat.TIMESTAMP_OFFSET);
+            int type = records.get(record + BinaryAuditFormat.TYPE_OFFSET);
+            int principalOfRecord = records.getInt(record + BinaryAuditFormat.PRINCIPAL_OFFSET);
+
+            if (timestamp < from || timestamp >= to || type < 0 || type >= allTypes.length ||
+                !types.contains(allTypes[type]) || (principalIndex != NONE && principalOfRecord != principalIndex)) {
+                continue;
+            }
+
+            int errorCode = records.getInt(record + BinaryAuditFormat.ERROR_CODE_OFFSET);
+            String source = lookup(dictionary, records.getInt(record + BinaryAuditFormat.SOURCE_OFFSET));
+            String detail = lookup(dictionary, records.getInt(record + BinaryAuditFormat.DETAIL_OFFSET));
+            consumer.accept(new AuditEvent(timestamp, allTypes[type], lookup(dictionary, principalOfRecord),
+                                           errorCode, source, detail));
+            matches++;
+        }
+        return matches;
+    }
+
+    private static List<String> readDictionary(Path file) throws IOException {
+
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+
+        List<String> dictionary = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[BinaryAuditFormat.MAX_STRING_LENGTH * 3];
+            while (entries.remaining() >= 2) {
+                int length = entries.getShort() & 0xFFFF;
+                if (entries.remaining() < length || length > bytes.length) {
+                    break;
+                }
+                entries.get(bytes, 0, length);
+                dictionary.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+        }
+        return dictionary;
+    }
+
+    private static String lookup(List<String> dictionary, int index) {
+        return index >= 0 && index < dictionary.size() ? dictionary.get(index) : null;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        String principal = null;
+        Set<AuditEvent.Type> types = EnumSet.allOf(AuditEvent.Type.class);
+        List<Path> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--help".equals(option)) {
+                printUsage(System.out);
+                return;
+            }
+            if (!option.startsWith("--")) {
+                paths.add(Paths.get(option));
+                continue;
+            }
+            if (i + 1 == args.length) {
+                exitWithUsage("Missing value of " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--from":
+                        from = Instant.parse(value).toEpochMilli();
+                        break;
+                    case "--to":
+                        to = Instant.parse(value).toEpochMilli();
+                        break;
+                    case "--principal":
+                        principal = value;
+                        break;
+                    case "--outcome":
+                        types = parseOutcomes(value);
+                        break;
+                    default:
+                        exitWithUsage("Unknown option " + option);
+                }
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                exitWithUsage("Invalid value of " + option + ": " + value);
+            }
+        }
+        if (paths.isEmpty()) {
+            exitWithUsage("No audit log given.");
+        }
+
+        AuditLogReader reader = new AuditLogReader(from, to, principal, types);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out,
+                                                                                    StandardCharsets.UTF_8)));
+        StringBuilder line = new StringBuilder(256);
+        try {
+            for (Path segment : listSegments(paths)) {
+                reader.read(segment, event -> {
+                    line.setLength(0);
+                    RollingFileAuditAppender.format(event, line);
+                    out.println(line);
+                });
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static Set<AuditEvent.Type> parseOutcomes(String value) {
+
+        Set<AuditEvent.Type> types = EnumSet.noneOf(AuditEvent.Type.class);
+        for (String outcome : value.split(",")) {
+            switch (outcome.trim().toLowerCase(Locale.ENGLISH)) {
+                case "success":
+                    types.add(AuditEvent.Type.LOGIN_SUCCESS);
+                    break;
+                case "failure":
+                    types.add(AuditEvent.Type.LOGIN_FAILURE);
+                    break;
+                case "logout":
+                    types.add(AuditEvent.Type.LOGOUT);
+                    break;
+                case "denied":
+                    types.add(AuditEvent.Type.AUTHORIZATION_DENIED);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown outcome " + outcome);
+            }
+        }
+        return types;
+    }
+
+    // Directories are expanded to the segments they hold. Rolled over segments sort before the live one.
+    private static List<Path> listSegments(List<Path> paths) throws IOException {
+
+        List<Path> segments = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    segments.addAll(files.filter(file -> file.getFileName().toString().endsWith(".bin"))
+                                         .sorted()
+                                         .collect(Collectors.toList()));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                segments.add(path);
+            }
+        }
+        return segments;
+    }
+
+    private static void exitWithUsage(String message) {
+
+        System.err.println(message);
+        printUsage(System.err);
+        System.exit(1);
+    }
+
+    private static void printUsage(PrintStream out) {
+
+        out.println("Usage: AuditLogReader [options] <segment or directory>...");
+        out.println("  --from <instant>     only events at or after this time, e.g. 2017-01-01T00:00:00Z");
+        out.println("  --to <instant>       only events before this time");
+        out.println("  --principal <name>   only events of this principal");
+        out.println("  --outcome <o,o,..>   only these outcomes out of success, failure, logout and denied");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+/**
+ * <p>
+ * Layout of binary audit log segments. A segment is a data file of fixed size records, preceded by a header, and a
+ * dictionary file next to it holding the strings the records refer to by index. Numbers are big-endian.
+ * </p>
+ * <pre>
+ *     header (32 bytes)               record (32 bytes)
+ *      0  int    magic "CSAU"          0  long  timestamp, milliseconds since the epoch
+ *      4  short  format version        8  byte  event type, {@code AuditEvent.Type} ordinal
+ *      6  short  record size          12  int   principal, dictionary index or -1
+ *      8  long   record count         16  int   error code or -1
+ *     16  long   lowest timestamp     20  int   source, dictionary index or -1
+ *     24  long   highest timestamp    24  int   detail, dictionary index or -1
+ * </pre>
+ * Dictionary entries are an unsigned short length followed by that many bytes of UTF-8. The index of an entry is
+ * its position in the dictionary file. Records beyond the record count in the header are not valid.
+ *
+ * @since 1.0.1
+ */
+final class BinaryAuditFormat {
+
+    static final int MAGIC = 0x43534155;
+    static final short VERSION = 1;
+    static final String DICTIONARY_EXTENSION = ".dict";
+    static final int NONE = -1;
+
+    static final int HEADER_SIZE = 32;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_SIZE_OFFSET = 6;
+    static final int COUNT_OFFSET = 8;
+    static final int MIN_TIMESTAMP_OFFSET = 16;
+    static final int MAX_TIMESTAMP_OFFSET = 24;
+
+    static final int RECORD_SIZE = 32;
+    static final int TIMESTAMP_OFFSET = 0;
+    static final int TYPE_OFFSET = 8;
+    static final int PRINCIPAL_OFFSET = 12;
+    static final int ERROR_CODE_OFFSET = 16;
+    static final int SOURCE_OFFSET = 20;
+    static final int DETAIL_OFFSET = 24;
+
+    // Longer strings, which only an attacker would present as a username, are truncated.
+    static final int MAX_STRING_LENGTH = 1024;
+
+    private BinaryAuditFormat() {
+
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.DICTIONARY_EXTENSION;
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.HEADER_SIZE;
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.NONE;
+import static org.wso2.carbon.security.caas.api.audit.BinaryAuditFormat.RECORD_SIZE;
+
+/**
+ * <p>
+ * Appends audit events as fixed size binary records, see {@link BinaryAuditFormat}, to a memory-mapped segment file.
+ * Principals, sources and details are stored once per segment in its dictionary and referred to by index, so a
+ * record takes 32 bytes regardless of the strings it carries.
+ * </p>
+ * <p>
+ * The segment is mapped at its full size up front, which file systems supporting sparse files do not allocate until
+ * written, and rolled over once full or once it has been open for longer than the rotation interval. The record
+ * count in the header is only advanced after the records of a batch are written and its dictionary entries synced,
+ * so neither a reader of the live segment nor one of a segment left by a crash sees partially written records or
+ * records referring to missing entries. An existing segment is rolled over on start.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+final class MappedAuditAppender implements AuditAppender {
+
+    private final Path file;
+    private final Path dictionaryFile;
+    private final int capacity;
+    private final long rotationIntervalMillis;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private ByteBuffer dictionaryEntries = ByteBuffer.allocate(4096);
+    private FileChannel dictionaryChannel;
+    private MappedByteBuffer segment;
+    private int count;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private long openedAt;
+
+    /**
+     * Creates the appender and maps a new segment.
+     *
+     * @param file audit log segment file.
+     * @param maxFileSize size in bytes of a segment.
+     * @param rotationIntervalMillis time after which the segment is rolled over, or 0 to only roll over when full.
+     * @throws IOException if the segment cannot be mapped.
+     */
+    MappedAuditAppender(Path file, long maxFileSize, long rotationIntervalMillis) throws IOException {
+
+        this.file = file;
+        this.dictionaryFile = AuditFiles.withExtension(file, DICTIONARY_EXTENSION);
+        this.capacity = (int) Math.max(1, (Math.min(maxFileSize, Integer.MAX_VALUE) - HEADER_SIZE) / RECORD_SIZE);
+        this.rotationIntervalMillis = rotationIntervalMillis;
+
+        if (Files.exists(file)) {
+            moveAside();
+        }
+        open();
+    }
+
+    @Override
+    public void append(List<AuditEvent> events) throws IOException {
+
+        for (AuditEvent event : events) {
+            if (count == capacity) {
+                rotate();
+            }
+            put(event);
+        }
+        publish();
+        rotateIfDue();
+    }
+
+    @Override
+    public void rotateIfDue() throws IOException {
+
+        if (count == capacity || (rotationIntervalMillis > 0 && count > 0 &&
+                                  System.currentTimeMillis() - openedAt >= rotationIntervalMillis)) {
+            rotate();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        publish();
+        segment.force();
+        dictionaryChannel.close();
+    }
+
+    private void open() throws IOException {
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+        dictionaryChannel = FileChannel.open(dictionaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                             StandardOpenOption.TRUNCATE_EXISTING);
+
+        segment.putInt(BinaryAuditFormat.MAGIC_OFFSET, BinaryAuditFormat.MAGIC);
+        segment.putShort(BinaryAuditFormat.VERSION_OFFSET, BinaryAuditFormat.VERSION);
+        segment.putShort(BinaryAuditFormat.RECORD_SIZE_OFFSET, (short) RECORD_SIZE);
+        dictionary.clear();
+        count = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+        openedAt = System.currentTimeMillis();
+        publish();
+    }
+
+    private void rotate() throws IOException {
+
+        close();
+        moveAside();
+        open();
+    }
+
+    private void moveAside() throws IOException {
+
+        Path target = AuditFiles.rotationTarget(file);
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        if (Files.exists(dictionaryFile)) {
+            Files.move(dictionaryFile, AuditFiles.withExtension(target, DICTIONARY_EXTENSION),
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void put(AuditEvent event) throws IOException {
+
+        int record = HEADER_SIZE + count * RECORD_SIZE;
+        segment.putLong(record + BinaryAuditFormat.TIMESTAMP_OFFSET, event.getTimestamp());
+        segment.put(record + BinaryAuditFormat.TYPE_OFFSET, (byte) event.getType().ordinal());
+        segment.putInt(record + BinaryAuditFormat.PRINCIPAL_OFFSET, indexOf(event.getPrincipal()));
+        segment.putInt(record + BinaryAuditFormat.ERROR_CODE_OFFSET, event.getErrorCode());
+        segment.putInt(record + BinaryAuditFormat.SOURCE_OFFSET, indexOf(event.getSource()));
+        segment.putInt(record + BinaryAuditFormat.DETAIL_OFFSET, indexOf(event.getDetail()));
+
+        count++;
+        minTimestamp = Math.min(minTimestamp, event.getTimestamp());
+        maxTimestamp = Math.max(maxTimestamp, event.getTimestamp());
+    }
+
+    private int indexOf(String value) {
+
+        if (value == null) {
+            return NONE;
+        }
+        String key = value;
+        if (value.length() > BinaryAuditFormat.MAX_STRING_LENGTH) {
+            int length = BinaryAuditFormat.MAX_STRING_LENGTH;
+            // Cut before a surrogate pair rather than through it, which would not encode to UTF-8.
+            if (Character.isHighSurrogate(value.charAt(length - 1))) {
+                length--;
+            }
+            key = value.substring(0, length);
+        }
+        Integer index = dictionary.get(key);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(key, index);
+
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (dictionaryEntries.remaining() < 2 + bytes.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(dictionaryEntries.capacity() * 2,
+                                                                dictionaryEntries.position() + 2 + bytes.length));
+                dictionaryEntries.flip();
+                grown.put(dictionaryEntries);
+                dictionaryEntries = grown;
+            }
+            dictionaryEntries.putShort((short) bytes.length).put(bytes);
+        }
+        return index;
+    }
+
+    // Makes the records put so far visible to readers, after the dictionary entries they refer to.
+    private void publish() throws IOException {
+
+        dictionaryEntries.flip();
+        if (dictionaryEntries.hasRemaining()) {
+            while (dictionaryEntries.hasRemaining()) {
+                dictionaryChannel.write(dictionaryEntries);
+            }
+            // The count in the mapped segment may reach the disk first, hence the entries are synced before it moves.
+            dictionaryChannel.force(false);
+        }
+        dictionaryEntries.clear();
+
+        if (count > 0) {
+            segment.putLong(BinaryAuditFormat.MIN_TIMESTAMP_OFFSET, minTimestamp);
+            segment.putLong(BinaryAuditFormat.MAX_TIMESTAMP_OFFSET, maxTimestamp);
+        }
+        segment.putLong(BinaryAuditFormat.COUNT_OFFSET, count);
+    }
+}
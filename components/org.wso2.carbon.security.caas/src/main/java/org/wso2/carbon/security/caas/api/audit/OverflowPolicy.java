@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+/**
+ * Behaviour of the audit log when its buffer is full, i.e. when events are published faster than they are written.
+ *
+ * @since 1.0.1
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The publishing thread waits until there is room in the buffer. No event is lost, at the cost of login latency.
+     */
+    BLOCK,
+
+    /**
+     * Events published while the buffer is full are dropped.
+     */
+    DROP,
+
+    /**
+     * Once the buffer is half full only a sample of the events is kept, so that events keep being recorded throughout
+     * a burst. Events published while the buffer is full are dropped.
+     */
+    SAMPLE
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * <p>
+ * Appends audit events as lines of text to an append-only file. Each batch is encoded into a single buffer and
+ * written with one call. The file is rolled over once it grows past the maximum size or has been open for longer
+ * than the rotation interval; rolled over files are renamed with the time of the rotation.
+ * </p>
+ * Field values are written with control characters replaced, so a crafted username cannot forge audit lines.
+ *
+ * @since 1.0.1
+ */
+final class RollingFileAuditAppender implements AuditAppender {
+
+    private final Path file;
+    private final long maxFileSize;
+    private final long rotationIntervalMillis;
+    private final StringBuilder line = new StringBuilder(256);
+    private FileChannel channel;
+    private long fileSize;
+    private long openedAt;
+
+    /**
+     * Creates the appender and opens the file.
+     *
+     * @param file audit log file.
+     * @param maxFileSize size in bytes after which the file is rolled over.
+     * @param rotationIntervalMillis time after which the file is rolled over, or 0 to only roll over on size.
+     * @throws IOException if the file cannot be opened.
+     */
+    RollingFileAuditAppender(Path file, long maxFileSize, long rotationIntervalMillis) throws IOException {
+
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.rotationIntervalMillis = rotationIntervalMillis;
+        open();
+    }
+
+    @Override
+    public void append(List<AuditEvent> events) throws IOException {
+
+        line.setLength(0);
+        for (AuditEvent event : events) {
+            format(event, line);
+            line.append('\n');
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(line.toString());
+        while (buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+        rotateIfDue();
+    }
+
+    @Override
+    public void rotateIfDue() throws IOException {
+
+        boolean sizeExceeded = fileSize >= maxFileSize;
+        boolean intervalElapsed = rotationIntervalMillis > 0 && fileSize > 0 &&
+                                  System.currentTimeMillis() - openedAt >= rotationIntervalMillis;
+        if (sizeExceeded || intervalElapsed) {
+            channel.close();
+            Files.move(file, AuditFiles.rotationTarget(file), StandardCopyOption.ATOMIC_MOVE);
+            open();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.APPEND);
+        fileSize = channel.size();
+        openedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Formats an event as a line of text, without the line separator.
+     *
+     * @param event event.
+     * @param line builder to append the line to.
+     */
+    static void format(AuditEvent event, StringBuilder line) {
+
+        line.append(Instant.ofEpochMilli(event.getTimestamp())).append(' ').append(event.getType());
+        appendField(line, "principal", event.getPrincipal());
+        if (event.getErrorCode() != -1) {
+            line.append(" code=").append(event.getErrorCode());
+        }
+        appendField(line, "source", event.getSource());
+        appendField(line, "detail", event.getDetail());
+    }
+
+    private static void appendField(StringBuilder line, String name, String value) {
+
+        if (value == null) {
+            return;
+        }
+        line.append(' ').append(name).append('=');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            line.append(Character.isISOControl(c) ? '?' : c);
+        }
+    }
+}
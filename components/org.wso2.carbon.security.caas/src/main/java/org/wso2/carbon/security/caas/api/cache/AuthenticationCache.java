@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.caching.CarbonCachingService;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+import org.wso2.carbon.security.caas.internal.CarbonSecurityDataHolder;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * <p>
+ * Cache of authenticated {@code CarbonPrincipal}s keyed by a digest of the presented credential.
+ * Entries live in a {@code javax.cache.Cache} obtained from the {@code CarbonCachingService} and expire a fixed
+ * time after they are created. The key is an HMAC computed with a random key which never leaves this JVM, hence a
+ * cache key cannot be used to recover or verify a credential elsewhere.
+ * </p>
+ * <p>
+ * All entries are dropped as soon as the user store version changes, and entries of a single user can be removed
+ * with {@link #invalidate(String)} when that user's record is updated. Each of these bumps an epoch, and a
+ * principal is only cached under the epoch read before its user was looked up, so that a verification still in
+ * flight while a password changes never caches the old password.
+ * </p>
+ * <p>
+ * Each tenant partition has its own cache, named after the tenant and following that tenant's user store, with the
+ * tenant mixed into the key so that the same credential of two tenants never shares an entry.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class AuthenticationCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationCache.class);
+
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    private static final SecretKeySpec digestKey = createDigestKey();
+
+    private static final ThreadLocal<Mac> mac = ThreadLocal.withInitial(() -> {
+        try {
+            Mac instance = Mac.getInstance(DIGEST_ALGORITHM);
+            instance.init(digestKey);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + DIGEST_ALGORITHM, e);
+        }
+    });
+
+    private static final AuthenticationCache instance = new AuthenticationCache(null, null);
+
+    private final boolean enabled;
+    private final long ttl;
+    private final String tenant;
+    private final String cacheName;
+    private final UserStore userStore;
+    private final AtomicLong epoch = new AtomicLong();
+    // Digests cached for each username, so that the entries of a user are removed without walking the cache. Digests
+    // of expired entries linger until their user is invalidated, at most one per password the user logged in with.
+    private final ConcurrentMap<String, Set<String>> digestsByUser = new ConcurrentHashMap<>();
+
+    private volatile Cache<String, CarbonPrincipal> cache;
+    private volatile long userStoreVersion;
+
+    /**
+     * Creates the authentication cache of a tenant partition.
+     *
+     * @param tenant tenant the cached authentications belong to, or null for the default partition.
+     * @param userStore user store whose changes drop the cached authentications, or null for the default one.
+     */
+    public AuthenticationCache(String tenant, UserStore userStore) {
+
+        this.tenant = tenant;
+        this.userStore = userStore;
+        cacheName = tenant == null ? CarbonSecurityConstants.AUTHENTICATION_CACHE_NAME :
+                    CarbonSecurityConstants.AUTHENTICATION_CACHE_NAME + "-" + tenant;
+        enabled = Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.AUTHENTICATION_CACHE_ENABLED,
+                                                          "true"));
+        ttl = Long.getLong(CarbonSecurityConstants.AUTHENTICATION_CACHE_TTL,
+                           CarbonSecurityConstants.DEFAULT_AUTHENTICATION_CACHE_TTL);
+    }
+
+    /**
+     * Get the authentication cache of the default partition.
+     *
+     * @return AuthenticationCache.
+     */
+    public static AuthenticationCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns whether authentication caching is enabled.
+     *
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return enabled && ttl > 0;
+    }
+
+    /**
+     * Computes the cache key for a username and password pair.
+     *
+     * @param username username.
+     * @param password password.
+     * @return keyed digest of the credential.
+     */
+    public String digest(String username, char[] password) {
+
+        Mac digest = mac.get();
+        if (tenant != null) {
+            digest.update(tenant.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(username.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+
+        ByteBuffer passwordBytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        digest.update(passwordBytes.duplicate());
+        if (passwordBytes.hasArray()) {
+            Arrays.fill(passwordBytes.array(), (byte) 0);
+        }
+
+        return Base64.getEncoder().encodeToString(digest.doFinal());
+    }
+
+    /**
+     * Returns the current epoch of the cache, which changes whenever cached authentications are dropped. Read it
+     * before looking up the user to be verified, and pass it to {@link #put(String, CarbonPrincipal, long)}.
+     *
+     * @return current epoch.
+     */
+    public long getEpoch() {
+
+        Cache<String, CarbonPrincipal> authenticationCache = getCache();
+        if (authenticationCache != null) {
+            checkVersion(authenticationCache);
+        }
+        return epoch.get();
+    }
+
+    /**
+     * Returns the principal authenticated with the given credential digest.
+     *
+     * @param digest credential digest.
+     * @return cached principal, or null on a cache miss.
+     */
+    public CarbonPrincipal get(String digest) {
+
+        Cache<String, CarbonPrincipal> authenticationCache = getCache();
+        if (authenticationCache == null || checkVersion(authenticationCache)) {
+            return null;
+        }
+
+        return authenticationCache.get(digest);
+    }
+
+    /**
+     * Adds an authenticated principal to the cache, unless cached authentications were dropped since the given
+     * epoch was read, in which case the principal may have been verified against a stale user record.
+     *
+     * @param digest credential digest.
+     * @param principal authenticated principal.
+     * @param stamp epoch read before the user was looked up.
+     */
+    public void put(String digest, CarbonPrincipal principal, long stamp) {
+
+        Cache<String, CarbonPrincipal> authenticationCache = getCache();
+        if (authenticationCache == null) {
+            return;
+        }
+
+        checkVersion(authenticationCache);
+        if (epoch.get() != stamp) {
+            return;
+        }
+        digestsByUser.computeIfAbsent(principal.getName(), username -> ConcurrentHashMap.newKeySet()).add(digest);
+        authenticationCache.put(digest, principal);
+
+        // Dropped concurrently with the put above, which may have missed the entry.
+        checkVersion(authenticationCache);
+        if (epoch.get() != stamp) {
+            authenticationCache.remove(digest, principal);
+        }
+    }
+
+    /**
+     * Removes all the cached authentications of a user.
+     *
+     * @param username username of the user whose record changed.
+     */
+    public void invalidate(String username) {
+        invalidate(Collections.singleton(username));
+    }
+
+    /**
+     * Removes all the cached authentications of several users.
+     *
+     * @param usernames usernames of the users whose records changed.
+     */
+    public void invalidate(Collection<String> usernames) {
+
+        Cache<String, CarbonPrincipal> authenticationCache = getCache();
+        if (authenticationCache == null || usernames.isEmpty()) {
+            return;
+        }
+
+        epoch.incrementAndGet();
+        for (String username : usernames) {
+            Set<String> digests = digestsByUser.remove(username);
+            if (digests != null) {
+                authenticationCache.removeAll(digests);
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached authentications.
+     */
+    public void invalidateAll() {
+
+        Cache<String, CarbonPrincipal> authenticationCache = getCache();
+        if (authenticationCache != null) {
+            epoch.incrementAndGet();
+            digestsByUser.clear();
+            authenticationCache.removeAll();
+        }
+    }
+
+    /**
+     * Drops the cache along with all the cached authentications, when the tenant partition is unloaded. A later
+     * authentication creates it again.
+     */
+    public void release() {
+
+        Cache<String, CarbonPrincipal> authenticationCache;
+        synchronized (this) {
+            authenticationCache = cache;
+            cache = null;
+            epoch.incrementAndGet();
+            digestsByUser.clear();
+        }
+        if (authenticationCache != null && !authenticationCache.isClosed()) {
+            CacheManager cacheManager = authenticationCache.getCacheManager();
+            if (cacheManager != null && !cacheManager.isClosed()) {
+                cacheManager.destroyCache(cacheName);
+            }
+        }
+    }
+
+    /**
+     * Drops all the entries when the user store version changed since they were cached.
+     *
+     * @return true if the entries were dropped.
+     */
+    private boolean checkVersion(Cache<String, CarbonPrincipal> authenticationCache) {
+
+        long currentVersion = getUserStoreVersion();
+        if (currentVersion == userStoreVersion) {
+            return false;
+        }
+
+        // Bumped first, so that a put racing with this check is either refused or removed below.
+        epoch.incrementAndGet();
+        userStoreVersion = currentVersion;
+        digestsByUser.clear();
+        authenticationCache.removeAll();
+        return true;
+    }
+
+    private long getUserStoreVersion() {
+
+        if (userStore == null) {
+            return CarbonSecurityUtils.getUserStoreVersion();
+        }
+        try {
+            return userStore.getVersion();
+        } catch (CarbonSecurityServerException e) {
+            return -1;
+        }
+    }
+
+    private static SecretKeySpec createDigestKey() {
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec secretKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+        Arrays.fill(key, (byte) 0);
+        return secretKey;
+    }
+
+    private Cache<String, CarbonPrincipal> getCache() {
+
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Cache<String, CarbonPrincipal> authenticationCache = cache;
+        if (authenticationCache != null && !authenticationCache.isClosed()) {
+            return authenticationCache;
+        }
+
+        CarbonCachingService cachingService = CarbonSecurityDataHolder.getInstance().getCarbonCachingService();
+        if (cachingService == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (cache == null || cache.isClosed()) {
+                epoch.incrementAndGet();
+                digestsByUser.clear();
+                userStoreVersion = getUserStoreVersion();
+                cache = createCache(cachingService.getCachingProvider().getCacheManager());
+            }
+            return cache;
+        }
+    }
+
+    private Cache<String, CarbonPrincipal> createCache(CacheManager cacheManager) {
+
+        Cache<String, CarbonPrincipal> authenticationCache = cacheManager.getCache(cacheName, String.class,
+                                                                                   CarbonPrincipal.class);
+        if (authenticationCache != null) {
+            return authenticationCache;
+        }
+
+        MutableConfiguration<String, CarbonPrincipal> configuration = new MutableConfiguration<>();
+        configuration.setTypes(String.class, CarbonPrincipal.class)
+                .setStoreByValue(false)
+                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, ttl)));
+
+        try {
+            authenticationCache = cacheManager.createCache(cacheName, configuration);
+        } catch (CacheException e) {
+            // Created concurrently by someone else.
+            authenticationCache = cacheManager.getCache(cacheName, String.class, CarbonPrincipal.class);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Authentication cache {} initialized with a TTL of {} seconds.", cacheName, ttl);
+        }
+        return authenticationCache;
+    }
+}
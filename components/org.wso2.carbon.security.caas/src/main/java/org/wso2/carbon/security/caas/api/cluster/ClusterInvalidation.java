@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartition;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartitions;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Keeps the user stores and authentication caches of the nodes of a cluster coherent. Changes applied to a user store
+ * of this node are sent to the other nodes over the {@code InvalidationBus}, and changes received from other nodes
+ * reload the changed users, which are expected to be shared with those nodes, and drop their cached authentications.
+ * The other users and their cached authentications are kept. Caches may hence use long TTLs and still converge within
+ * the delivery time of a datagram.
+ * </p>
+ * <p>
+ * Invalidations are sent by a single sender thread, which takes all the queued invalidations and packs them into as
+ * few batches as fit a datagram, so a burst of changes costs a handful of datagrams. Each invalidation carries the
+ * user store version of the originating node, and invalidations older than an invalidation of all the users of their
+ * tenant, already received from the same node, are skipped, since that tenant was reloaded after them. A batch is
+ * numbered once it is sent, and a batch which cannot be sent is retried with the next one, hence a gap in the batch
+ * sequence of a node means a batch was lost, in which case all the loaded tenants are reloaded.
+ * </p>
+ * Disabled unless {@code carbon.security.cluster.invalidation.bus} is set.
+ *
+ * @since 1.0.1
+ */
+public class ClusterInvalidation {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterInvalidation.class);
+
+    private static final ClusterInvalidation instance = new ClusterInvalidation();
+
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final long node = new SecureRandom().nextLong();
+    private final BlockingQueue<Invalidation> outgoing = new LinkedBlockingQueue<>();
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder sentBatches = new LongAdder();
+    private final LongAdder receivedBatches = new LongAdder();
+    private final LongAdder lostBatches = new LongAdder();
+
+    // Guarded by receiveLock.
+    private final Object receiveLock = new Object();
+    private final Map<Long, Long> lastSequences = new HashMap<>();
+    private final Map<String, Long> lastVersions = new HashMap<>();
+
+    private volatile InvalidationBus bus;
+    private volatile Thread sender;
+    private long sequence;
+
+    private ClusterInvalidation() {
+
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return ClusterInvalidation.
+     */
+    public static ClusterInvalidation getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the bus named by {@code carbon.security.cluster.invalidation.bus}, unless it is not set or a bus is
+     * already started.
+     */
+    public synchronized void start() {
+
+        String name = System.getProperty(CarbonSecurityConstants.CLUSTER_INVALIDATION_BUS);
+        if (bus != null || name == null || name.isEmpty()) {
+            return;
+        }
+        try {
+            start(createBus(name));
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            log.error("Unable to start the cluster invalidation bus {}.", name, e);
+        }
+    }
+
+    /**
+     * Starts sending and receiving invalidations over a bus.
+     *
+     * @param invalidationBus bus.
+     * @throws IOException if the bus cannot be started.
+     */
+    public synchronized void start(InvalidationBus invalidationBus) throws IOException {
+
+        if (bus != null) {
+            throw new IllegalStateException("Cluster invalidation is already started.");
+        }
+        invalidationBus.start(this::receive);
+        bus = invalidationBus;
+        UserStore.getInstance().setChangeListener((usernames, version) -> publish(null, usernames, version));
+
+        Thread thread = new Thread(() -> send(invalidationBus), "carbon-security-invalidation-sender");
+        thread.setDaemon(true);
+        sender = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the bus after sending the queued invalidations.
+     */
+    public void stop() {
+
+        InvalidationBus stopped;
+        Thread stoppedSender;
+        synchronized (this) {
+            stopped = bus;
+            stoppedSender = sender;
+            bus = null;
+            sender = null;
+        }
+        if (stoppedSender != null) {
+            try {
+                stoppedSender.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (stopped != null) {
+            stopped.stop();
+        }
+    }
+
+    /**
+     * Returns whether invalidations are sent and received.
+     *
+     * @return true if started.
+     */
+    public boolean isStarted() {
+        return bus != null;
+    }
+
+    /**
+     * Queues the invalidations of changed users, to be sent to the other nodes.
+     *
+     * @param tenant tenant of the users, or null for the default partition.
+     * @param usernames usernames of the changed users.
+     * @param version user store version after the changes.
+     */
+    public void publish(String tenant, List<String> usernames, long version) {
+
+        if (bus == null) {
+            return;
+        }
+        int maxSize = InvalidationBatch.MAX_SIZE - InvalidationBatch.getHeaderSize();
+        for (String username : usernames) {
+            Invalidation invalidation = new Invalidation(tenant, username, version);
+            if (InvalidationBatch.getEncodedSize(invalidation) > maxSize) {
+                // Would not fit a datagram, hence all the users of the tenant are invalidated instead.
+                invalidation = new Invalidation(tenant, null, version);
+            }
+            outgoing.add(invalidation);
+        }
+    }
+
+    /**
+     * Adds a listener of the invalidations received from other nodes, for caches other than the built in ones.
+     *
+     * @param listener listener.
+     */
+    public void addListener(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(InvalidationListener)}.
+     *
+     * @param listener listener.
+     */
+    public void removeListener(InvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    public long getSentBatches() {
+        return sentBatches.sum();
+    }
+
+    public long getReceivedBatches() {
+        return receivedBatches.sum();
+    }
+
+    public long getLostBatches() {
+        return lostBatches.sum();
+    }
+
+    private void send(InvalidationBus invalidationBus) {
+
+        Thread self = Thread.currentThread();
+        List<Invalidation> pending = new ArrayList<>();
+
+        // Keep sending after a stop until the queue is empty, so that no change is left unannounced.
+        while (sender == self || !outgoing.isEmpty()) {
+            try {
+                Invalidation first = outgoing.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pending.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            outgoing.drainTo(pending);
+
+            List<Invalidation> batch = new ArrayList<>();
+            int size = InvalidationBatch.getHeaderSize();
+            for (Invalidation invalidation : pending) {
+                int encodedSize = InvalidationBatch.getEncodedSize(invalidation);
+                if (size + encodedSize > InvalidationBatch.MAX_SIZE) {
+                    publish(invalidationBus, batch);
+                    batch.clear();
+                    size = InvalidationBatch.getHeaderSize();
+                }
+                batch.add(invalidation);
+                size += encodedSize;
+            }
+            publish(invalidationBus, batch);
+            pending.clear();
+        }
+    }
+
+    private void publish(InvalidationBus invalidationBus, List<Invalidation> batch) {
+
+        try {
+            invalidationBus.publish(new InvalidationBatch(node, sequence + 1, batch));
+            // Only advanced once sent, so that a failed send is not mistaken for a lost batch by the receivers.
+            sequence++;
+            sentBatches.increment();
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to send {} user store invalidations to the cluster.", batch.size(), e);
+            if (sender == Thread.currentThread()) {
+                // Retried with the next batch, unless stopped, after a pause so that a failing bus is not spun on.
+                outgoing.addAll(batch);
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException ignored) {
+                    // Retried sooner.
+                }
+            }
+        }
+    }
+
+    private void receive(InvalidationBatch batch) {
+
+        if (batch.getNode() == node) {
+            return;
+        }
+        receivedBatches.increment();
+
+        // Usernames of the changed users per tenant, null for all the users of the tenant.
+        Map<String, Set<String>> changes = new LinkedHashMap<>();
+        boolean lost;
+        synchronized (receiveLock) {
+            Long last = lastSequences.get(batch.getNode());
+            lost = last != null && batch.getSequence() > last + 1;
+            if (lost) {
+                lostBatches.add(batch.getSequence() - last - 1);
+            }
+            if (last == null || batch.getSequence() > last) {
+                lastSequences.put(batch.getNode(), batch.getSequence());
+            }
+
+            for (Invalidation invalidation : batch.getInvalidations()) {
+                String key = batch.getNode() + "/" + (invalidation.getTenant() == null ? "" :
+                                                      invalidation.getTenant());
+                Long lastVersion = lastVersions.get(key);
+                if (lastVersion != null && invalidation.getVersion() < lastVersion) {
+                    continue;
+                }
+                String tenant = invalidation.getTenant();
+                if (invalidation.getUsername() == null) {
+                    lastVersions.put(key, invalidation.getVersion());
+                    changes.put(tenant, null);
+                } else if (!changes.containsKey(tenant)) {
+                    changes.put(tenant, new LinkedHashSet<>(Collections.singleton(invalidation.getUsername())));
+                } else if (changes.get(tenant) != null) {
+                    changes.get(tenant).add(invalidation.getUsername());
+                }
+            }
+        }
+
+        TenantPartitions partitions = TenantPartitions.getInstance();
+        if (lost) {
+            log.warn("Lost invalidation batches from a cluster node, reloading all the users.");
+            partitions.forEachLoaded(ClusterInvalidation::invalidate);
+        } else {
+            for (Map.Entry<String, Set<String>> change : changes.entrySet()) {
+                TenantPartition partition = partitions.getLoadedPartition(change.getKey());
+                if (partition == null) {
+                    continue;
+                }
+                if (change.getValue() == null) {
+                    invalidate(partition);
+                } else {
+                    invalidate(partition, change.getValue());
+                }
+            }
+        }
+
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(batch);
+            } catch (RuntimeException e) {
+                log.error("Error in an invalidation listener.", e);
+            }
+        }
+    }
+
+    private static void invalidate(TenantPartition partition) {
+
+        partition.getUserStore().reload();
+        partition.getAuthenticationCache().invalidateAll();
+    }
+
+    private static void invalidate(TenantPartition partition, Set<String> usernames) {
+
+        // Reloaded first, so that an authentication cached after the invalidation is one of a reloaded user.
+        partition.getUserStore().reload(usernames);
+        partition.getAuthenticationCache().invalidate(usernames);
+    }
+
+    private static InvalidationBus createBus(String name) throws ReflectiveOperationException {
+
+        if (CarbonSecurityConstants.MULTICAST_INVALIDATION_BUS.equals(name)) {
+            return new MulticastInvalidationBus();
+        } else if (CarbonSecurityConstants.LOOPBACK_INVALIDATION_BUS.equals(name)) {
+            return new LoopbackInvalidationBus();
+        }
+        return Class.forName(name).asSubclass(InvalidationBus.class).getConstructor().newInstance();
+    }
+}
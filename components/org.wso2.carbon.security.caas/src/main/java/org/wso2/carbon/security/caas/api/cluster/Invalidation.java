@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+/**
+ * Invalidation of a user, or of all the users of a tenant, changed on another node.
+ *
+ * @since 1.0.1
+ */
+public final class Invalidation {
+
+    private final String tenant;
+    private final String username;
+    private final long version;
+
+    /**
+     * Creates an invalidation.
+     *
+     * @param tenant tenant of the changed users, or null for the default partition.
+     * @param username username of the changed user, or null for all the users of the tenant.
+     * @param version user store version of the originating node after the change.
+     */
+    public Invalidation(String tenant, String username, long version) {
+
+        this.tenant = tenant;
+        this.username = username;
+        this.version = version;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "Invalidation{tenant=" + tenant + ", username=" + username + ", version=" + version + "}";
+    }
+}
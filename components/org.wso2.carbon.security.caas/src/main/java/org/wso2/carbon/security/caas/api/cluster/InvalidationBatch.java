@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Batch of invalidations sent by a node as a single message. Each node numbers its batches, so that receivers can
+ * tell when a batch was lost. A batch is encoded as
+ * </p>
+ * <pre>
+ *     magic:int node:long sequence:long count:short
+ *     count * (flags:byte version:long [tenant:utf] [username:utf])
+ * </pre>
+ * with strings written as a short length followed by UTF-8 bytes, and fits a single datagram once it is at most
+ * {@link #MAX_SIZE} bytes.
+ *
+ * @since 1.0.1
+ */
+public final class InvalidationBatch {
+
+    /**
+     * Largest encoded batch, which fits an Ethernet frame along with the IP and UDP headers and a 32 byte MAC.
+     */
+    public static final int MAX_SIZE = 1400;
+
+    private static final int MAGIC = 0x43534931;
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 2;
+    private static final int MAX_COUNT = 0xFFFF;
+    private static final byte HAS_TENANT = 1;
+    private static final byte HAS_USERNAME = 2;
+
+    private final long node;
+    private final long sequence;
+    private final List<Invalidation> invalidations;
+
+    /**
+     * Creates a batch.
+     *
+     * @param node identifier of the sending node.
+     * @param sequence number of the batch among the batches of the sending node.
+     * @param invalidations invalidations.
+     */
+    public InvalidationBatch(long node, long sequence, List<Invalidation> invalidations) {
+
+        if (invalidations.size() > MAX_COUNT) {
+            throw new IllegalArgumentException("Too many invalidations in a batch: " + invalidations.size());
+        }
+        this.node = node;
+        this.sequence = sequence;
+        this.invalidations = Collections.unmodifiableList(new ArrayList<>(invalidations));
+    }
+
+    public long getNode() {
+        return node;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<Invalidation> getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the size of an empty encoded batch.
+     *
+     * @return size in bytes.
+     */
+    public static int getHeaderSize() {
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Returns the size an invalidation adds to an encoded batch.
+     *
+     * @param invalidation invalidation.
+     * @return size in bytes.
+     */
+    public static int getEncodedSize(Invalidation invalidation) {
+        return 1 + 8 + getEncodedSize(invalidation.getTenant()) + getEncodedSize(invalidation.getUsername());
+    }
+
+    /**
+     * Encodes this batch.
+     *
+     * @return encoded batch.
+     */
+    public byte[] encode() {
+
+        int size = HEADER_SIZE;
+        for (Invalidation invalidation : invalidations) {
+            size += getEncodedSize(invalidation);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putLong(node).putLong(sequence).putShort((short) invalidations.size());
+        for (Invalidation invalidation : invalidations) {
+            byte flags = 0;
+            if (invalidation.getTenant() != null) {
+                flags |= HAS_TENANT;
+            }
+            if (invalidation.getUsername() != null) {
+                flags |= HAS_USERNAME;
+            }
+            buffer.put(flags).putLong(invalidation.getVersion());
+            putString(buffer, invalidation.getTenant());
+            putString(buffer, invalidation.getUsername());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a batch.
+     *
+     * @param bytes buffer holding the encoded batch.
+     * @param offset offset of the batch in the buffer.
+     * @param length length of the batch.
+     * @return InvalidationBatch.
+     * @throws IllegalArgumentException if the bytes are not an encoded batch.
+     */
+    public static InvalidationBatch decode(byte[] bytes, int offset, int length) {
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an invalidation batch.");
+            }
+            long node = buffer.getLong();
+            long sequence = buffer.getLong();
+            int count = buffer.getShort() & 0xFFFF;
+
+            List<Invalidation> invalidations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte flags = buffer.get();
+                long version = buffer.getLong();
+                String tenant = (flags & HAS_TENANT) != 0 ? getString(buffer) : null;
+                String username = (flags & HAS_USERNAME) != 0 ? getString(buffer) : null;
+                invalidations.add(new Invalidation(tenant, username, version));
+            }
+            return new InvalidationBatch(node, sequence, invalidations);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated invalidation batch.", e);
+        }
+    }
+
+    private static int getEncodedSize(String value) {
+        return value == null ? 0 : 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Invalidation field too long: " + bytes.length + " bytes.");
+            }
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                                  StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Channel carrying invalidation batches between the nodes of a cluster. Delivery is best effort: batches may be lost,
+ * duplicated or reordered, which receivers detect through the batch sequence numbers.
+ * </p>
+ * Implementations are selected with the {@code carbon.security.cluster.invalidation.bus} system property, which names
+ * one of the built in buses, {@code multicast} or {@code loopback}, or the class of a custom bus with a public no
+ * argument constructor.
+ *
+ * @since 1.0.1
+ */
+public interface InvalidationBus {
+
+    /**
+     * Joins the cluster.
+     *
+     * @param listener listener of the batches sent by other nodes.
+     * @throws IOException if the cluster cannot be joined.
+     */
+    void start(InvalidationListener listener) throws IOException;
+
+    /**
+     * Sends a batch to the other nodes.
+     *
+     * @param batch batch, at most {@link InvalidationBatch#MAX_SIZE} bytes once encoded.
+     * @throws IOException if the batch cannot be sent.
+     */
+    void publish(InvalidationBatch batch) throws IOException;
+
+    /**
+     * Leaves the cluster.
+     */
+    void stop();
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * <p>
+ * Invalidation bus connecting the buses started within this JVM, for tests of nodes run in a single process. Batches
+ * are encoded and decoded as they would be on the wire, and delivered to the other started buses on the publishing
+ * thread before {@link #publish(InvalidationBatch)} returns.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+    private static final Set<LoopbackInvalidationBus> buses = new CopyOnWriteArraySet<>();
+
+    private volatile InvalidationListener listener;
+
+    @Override
+    public void start(InvalidationListener listener) throws IOException {
+
+        this.listener = listener;
+        buses.add(this);
+    }
+
+    @Override
+    public void publish(InvalidationBatch batch) throws IOException {
+
+        if (listener == null) {
+            throw new IOException("The invalidation bus is not started.");
+        }
+        byte[] bytes = batch.encode();
+        for (LoopbackInvalidationBus bus : buses) {
+            InvalidationListener receiver = bus.listener;
+            if (bus != this && receiver != null) {
+                receiver.onInvalidation(InvalidationBatch.decode(bytes, 0, bytes.length));
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+
+        buses.remove(this);
+        listener = null;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * <p>
+ * Invalidation bus sending every batch as a single UDP datagram to a multicast group, by default
+ * {@code 239.255.27.1:45627} with a TTL of 1, which keeps the batches within the local network. The group, port, TTL
+ * and network interface are set with the {@code carbon.security.cluster.multicast.group}, {@code .port},
+ * {@code .ttl} and {@code .interface} system properties.
+ * </p>
+ * <p>
+ * Every datagram ends with an HMAC-SHA256 of the batch, computed with a key shared by the nodes of the cluster, and
+ * datagrams without a valid one are dropped, hence only the nodes holding the key can invalidate users. The key is
+ * read from {@code carbon.security.cluster.multicast.key.file}, by default {@code conf/security/cluster.key} under
+ * {@code carbon.home}, which must hold at least 32 random bytes. The bus does not start without it.
+ * </p>
+ * Datagrams are not encrypted. They carry usernames but never credentials.
+ *
+ * @since 1.0.1
+ */
+public class MulticastInvalidationBus implements InvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(MulticastInvalidationBus.class);
+
+    private static final int RECEIVE_BUFFER_SIZE = 65536;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_SIZE = 32;
+    private static final int MIN_KEY_SIZE = 32;
+
+    private final String group;
+    private final int port;
+    private final int ttl;
+    private final String networkInterface;
+    private final Path keyFile;
+
+    private volatile MulticastSocket socket;
+    private volatile InetAddress groupAddress;
+    // Shared by the publishing threads, which synchronize on it.
+    private volatile Mac mac;
+    private Thread receiver;
+
+    /**
+     * Creates a bus configured with system properties.
+     */
+    public MulticastInvalidationBus() {
+        this(System.getProperty(CarbonSecurityConstants.MULTICAST_GROUP,
+                                CarbonSecurityConstants.DEFAULT_MULTICAST_GROUP),
+             Integer.getInteger(CarbonSecurityConstants.MULTICAST_PORT, CarbonSecurityConstants.DEFAULT_MULTICAST_PORT),
+             Integer.getInteger(CarbonSecurityConstants.MULTICAST_TTL, CarbonSecurityConstants.DEFAULT_MULTICAST_TTL),
+             System.getProperty(CarbonSecurityConstants.MULTICAST_INTERFACE),
+             getDefaultKeyFile());
+    }
+
+    /**
+     * Creates a bus.
+     *
+     * @param group multicast group address.
+     * @param port port.
+     * @param ttl time to live of the datagrams.
+     * @param networkInterface name of the network interface to join the group on, or null for the default one.
+     * @param keyFile file holding the key shared by the nodes of the cluster.
+     */
+    public MulticastInvalidationBus(String group, int port, int ttl, String networkInterface, Path keyFile) {
+
+        this.group = group;
+        this.port = port;
+        this.ttl = ttl;
+        this.networkInterface = networkInterface;
+        this.keyFile = keyFile;
+    }
+
+    @Override
+    public synchronized void start(InvalidationListener listener) throws IOException {
+
+        if (socket != null) {
+            return;
+        }
+
+        SecretKeySpec key = readKey(keyFile);
+        InetAddress address = InetAddress.getByName(group);
+        if (!address.isMulticastAddress()) {
+            throw new IOException(group + " is not a multicast address.");
+        }
+
+        MulticastSocket multicastSocket = new MulticastSocket(port);
+        try {
+            multicastSocket.setTimeToLive(ttl);
+            NetworkInterface joinInterface = null;
+            if (networkInterface != null) {
+                joinInterface = NetworkInterface.getByName(networkInterface);
+                if (joinInterface == null) {
+                    throw new IOException("Unknown network interface " + networkInterface + ".");
+                }
+                multicastSocket.setNetworkInterface(joinInterface);
+            }
+            multicastSocket.joinGroup(new InetSocketAddress(address, port), joinInterface);
+        } catch (IOException e) {
+            multicastSocket.close();
+            throw e;
+        }
+
+        groupAddress = address;
+        mac = createMac(key);
+        socket = multicastSocket;
+        Mac receiveMac = createMac(key);
+        receiver = new Thread(() -> receive(multicastSocket, receiveMac, listener),
+                              "carbon-security-invalidation-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Joined the invalidation group {}:{}.", group, port);
+        }
+    }
+
+    @Override
+    public void publish(InvalidationBatch batch) throws IOException {
+
+        MulticastSocket multicastSocket = socket;
+        if (multicastSocket == null) {
+            throw new IOException("The invalidation bus is not started.");
+        }
+        byte[] bytes = batch.encode();
+        byte[] datagram = Arrays.copyOf(bytes, bytes.length + MAC_SIZE);
+        Mac sendMac = mac;
+        synchronized (sendMac) {
+            System.arraycopy(sendMac.doFinal(bytes), 0, datagram, bytes.length, MAC_SIZE);
+        }
+        multicastSocket.send(new DatagramPacket(datagram, datagram.length, groupAddress, port));
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        MulticastSocket multicastSocket = socket;
+        if (multicastSocket == null) {
+            return;
+        }
+        socket = null;
+        // Closing the socket ends a blocked receive.
+        multicastSocket.close();
+        try {
+            receiver.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        receiver = null;
+    }
+
+    private void receive(MulticastSocket multicastSocket, Mac receiveMac, InvalidationListener listener) {
+
+        byte[] buffer = new byte[RECEIVE_BUFFER_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!multicastSocket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                multicastSocket.receive(packet);
+                int length = packet.getLength() - MAC_SIZE;
+                if (length < 0 || !isAuthentic(receiveMac, buffer, packet.getOffset(), length)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Dropped a datagram from {} without a valid MAC.", packet.getSocketAddress());
+                    }
+                    continue;
+                }
+                listener.onInvalidation(InvalidationBatch.decode(buffer, packet.getOffset(), length));
+            } catch (IllegalArgumentException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Ignored a datagram from {} which is not an invalidation batch.",
+                              packet.getSocketAddress(), e);
+                }
+            } catch (SocketException e) {
+                if (!multicastSocket.isClosed()) {
+                    log.error("Error in receiving invalidation batches.", e);
+                }
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("Error in receiving an invalidation batch.", e);
+            }
+        }
+    }
+
+    private static boolean isAuthentic(Mac receiveMac, byte[] buffer, int offset, int length) {
+
+        receiveMac.update(buffer, offset, length);
+        return MessageDigest.isEqual(receiveMac.doFinal(),
+                                     Arrays.copyOfRange(buffer, offset + length, offset + length + MAC_SIZE));
+    }
+
+    private static SecretKeySpec readKey(Path file) throws IOException {
+
+        if (!Files.isReadable(file)) {
+            throw new IOException("The cluster key " + file + " is not readable.");
+        }
+        byte[] key = Files.readAllBytes(file);
+        try {
+            if (key.length < MIN_KEY_SIZE) {
+                throw new IOException("The cluster key " + file + " must hold at least " + MIN_KEY_SIZE + " bytes.");
+            }
+            return new SecretKeySpec(key, MAC_ALGORITHM);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    private static Mac createMac(SecretKeySpec key) {
+
+        try {
+            Mac instance = Mac.getInstance(MAC_ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + MAC_ALGORITHM, e);
+        }
+    }
+
+    private static Path getDefaultKeyFile() {
+
+        String configured = System.getProperty(CarbonSecurityConstants.MULTICAST_KEY_FILE);
+        return configured != null ? Paths.get(configured) :
+               Paths.get(CarbonSecurityConstants.getCarbonHomeDirectory().toString() +
+                         CarbonSecurityConstants.CLUSTER_KEY_LOCATION);
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wso2.carbon.security.caas.api.codec;
+
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import javax.security.auth.Subject;
+
+/**
+ * <p>
+ * Compact binary encoding of {@code CarbonPrincipal}s, {@code User}s and the carbon principals of {@code Subject}s,
+ * for handing them between threads, processes and session stores without Java serialization or YAML. An encoding
+ * starts with the format version and the type of the record, followed by the record
+ * </p>
+ * <pre>
+ *     version:byte type:byte
+ *     principal:       flags:byte [tenant:utf] username:utf [permission:utf]
+ *     user:            flags:byte username:utf [password:utf] [permission:utf]
+ *     subject:         count:varint count * principal
+ * </pre>
+ * <p>
+ * with counts written as unsigned LEB128 varints and strings as a varint length followed by UTF-8 bytes. The
+ * permission holds the comma-separated grants of the user. Principals are encoded with their tenant and without the
+ * password, users with the password. Most records take a few bytes more than their strings.
+ * </p>
+ * <p>
+ * Decoded principals are interned with {@link CarbonPrincipal#intern(String, User)}, hence share the principal and
+ * parsed permissions of the other subjects of the user, and never hold a password, even when decoded from a user.
+ * </p>
+ * <p>
+ * Decoding reads the strings straight out of the buffer, heap or direct, without copying the record, and leaves the
+ * buffer positioned after it, so records can be read in sequence from a single mapped buffer.
+ * </p>
+ * <pre>
+ *     ByteBuffer buffer = ByteBuffer.allocate(PrincipalCodec.getEncodedSize(principal));
+ *     PrincipalCodec.encode(principal, buffer);
+ *     buffer.flip();
+ *     CarbonPrincipal decoded = PrincipalCodec.decodePrincipal(buffer);
+ * </pre>
+ *
+ * @since 1.0.1
+ */
+public final class PrincipalCodec {
+
+    /**
+     * Version of the encoding written by this codec. Records of other versions are rejected.
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final byte PRINCIPAL = 1;
+    private static final byte USER = 2;
+    private static final byte SUBJECT = 3;
+
+    private static final int HEADER_SIZE = 2;
+    private static final byte HAS_PASSWORD = 1;
+    private static final byte HAS_PERMISSION = 2;
+    private static final byte HAS_TENANT = 4;
+
+    private PrincipalCodec() {
+
+    }
+
+    /**
+     * Returns the size of an encoded principal.
+     *
+     * @param principal principal.
+     * @return size in bytes.
+     */
+    public static int getEncodedSize(CarbonPrincipal principal) {
+        return HEADER_SIZE + getRecordSize(principal.getTenant(), principal.getUser(), false);
+    }
+
+    /**
+     * Returns the size of an encoded user.
+     *
+     * @param user user.
+     * @return size in bytes.
+     */
+    public static int getEncodedSize(User user) {
+        return HEADER_SIZE + getRecordSize(null, checkUser(user), true);
+    }
+
+    /**
+     * Returns the size of an encoded subject.
+     *
+     * @param subject subject.
+     * @return size in bytes.
+     */
+    public static int getEncodedSize(Subject subject) {
+        return HEADER_SIZE + getSubjectSize(subject.getPrincipals(CarbonPrincipal.class));
+    }
+
+    /**
+     * Encodes a principal, without the password of its user.
+     *
+     * @param principal principal.
+     * @return encoded principal.
+     */
+    public static byte[] encode(CarbonPrincipal principal) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(principal));
+        putHeader(buffer, PRINCIPAL);
+        putRecord(buffer, principal.getTenant(), principal.getUser(), false);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a principal, without the password of its user, at the position of a buffer.
+     *
+     * @param principal principal.
+     * @param buffer buffer, left positioned after the encoded principal.
+     * @throws BufferOverflowException if the buffer has not enough space left, in which case nothing is written.
+     */
+    public static void encode(CarbonPrincipal principal, ByteBuffer buffer) {
+
+        checkRemaining(buffer, getEncodedSize(principal));
+        putHeader(buffer, PRINCIPAL);
+        putRecord(buffer, principal.getTenant(), principal.getUser(), false);
+    }
+
+    /**
+     * Encodes a user, along with its password, at the position of a buffer.
+     *
+     * @param user user.
+     * @param buffer buffer, left positioned after the encoded user.
+     * @throws BufferOverflowException if the buffer has not enough space left, in which case nothing is written.
+     * @throws IllegalArgumentException if the user has no username.
+     */
+    public static void encode(User user, ByteBuffer buffer) {
+
+        checkRemaining(buffer, HEADER_SIZE + getRecordSize(null, checkUser(user), true));
+        putHeader(buffer, USER);
+        putRecord(buffer, null, user, true);
+    }
+
+    /**
+     * Encodes the carbon principals of a subject, without passwords, at the position of a buffer. Other principals
+     * and the credentials of the subject are left out.
+     *
+     * @param subject subject.
+     * @param buffer buffer, left positioned after the encoded subject.
+     * @throws BufferOverflowException if the buffer has not enough space left, in which case nothing is written.
+     */
+    public static void encode(Subject subject, ByteBuffer buffer) {
+
+        // Copied, so that the principals written are the ones measured.
+        List<CarbonPrincipal> principals = new ArrayList<>(subject.getPrincipals(CarbonPrincipal.class));
+        checkRemaining(buffer, HEADER_SIZE + getSubjectSize(principals));
+        putHeader(buffer, SUBJECT);
+        putVarint(buffer, principals.size());
+        for (CarbonPrincipal principal : principals) {
+            putRecord(buffer, principal.getTenant(), principal.getUser(), false);
+        }
+    }
+
+    /**
+     * Decodes a principal, or a user of the default partition as a principal without its password, from the position
+     * of a buffer.
+     *
+     * @param buffer buffer, left positioned after the record.
+     * @return interned CarbonPrincipal.
+     * @throws IllegalArgumentException if the buffer does not hold an encoded principal or user, in which case the
+     *                                  position of the buffer is undefined.
+     */
+    public static CarbonPrincipal decodePrincipal(ByteBuffer buffer) {
+
+        try {
+            byte type = getHeader(buffer);
+            if (type != PRINCIPAL && type != USER) {
+                throw new IllegalArgumentException("Not an encoded principal or user.");
+            }
+            return getPrincipal(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated principal.", e);
+        }
+    }
+
+    /**
+     * Decodes a user, or a principal as a user without password or tenant, from the position of a buffer.
+     *
+     * @param buffer buffer, left positioned after the record.
+     * @return User.
+     * @throws IllegalArgumentException if the buffer does not hold an encoded user or principal, in which case the
+     *                                  position of the buffer is undefined.
+     */
+    public static User decodeUser(ByteBuffer buffer) {
+
+        try {
+            byte type = getHeader(buffer);
+            if (type != PRINCIPAL && type != USER) {
+                throw new IllegalArgumentException("Not an encoded principal or user.");
+            }
+            byte flags = getFlags(buffer);
+            if ((flags & HAS_TENANT) != 0) {
+                skipString(buffer);
+            }
+            return getUser(buffer, flags, true);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated principal.", e);
+        }
+    }
+
+    /**
+     * Decodes a subject from the position of a buffer.
+     *
+     * @param buffer buffer, left positioned after the record.
+     * @return new Subject holding the decoded, interned principals.
+     * @throws IllegalArgumentException if the buffer does not hold an encoded subject, in which case the position of
+     *                                  the buffer is undefined.
+     */
+    public static Subject decodeSubject(ByteBuffer buffer) {
+
+        try {
+            if (getHeader(buffer) != SUBJECT) {
+                throw new IllegalArgumentException("Not an encoded subject.");
+            }
+            int count = getVarint(buffer);
+            // Each principal takes at least two bytes, which bounds the count of a corrupted record.
+            if (count > buffer.remaining() / 2) {
+                throw new BufferUnderflowException();
+            }
+            Subject subject = new Subject();
+            Set<Principal> principals = subject.getPrincipals();
+            for (int i = 0; i < count; i++) {
+                principals.add(getPrincipal(buffer));
+            }
+            return subject;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated subject.", e);
+        }
+    }
+
+    private static User checkUser(User user) {
+
+        if (user.getUsername() == null) {
+            throw new IllegalArgumentException("Encoded users must have a username.");
+        }
+        return user;
+    }
+
+    private static int getSubjectSize(Collection<CarbonPrincipal> principals) {
+
+        int size = getVarintSize(principals.size());
+        for (CarbonPrincipal principal : principals) {
+            size += getRecordSize(principal.getTenant(), principal.getUser(), false);
+        }
+        return size;
+    }
+
+    private static void checkRemaining(ByteBuffer buffer, int size) {
+
+        if (buffer.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private static void putHeader(ByteBuffer buffer, byte type) {
+        buffer.put(FORMAT_VERSION).put(type);
+    }
+
+    private static byte getHeader(ByteBuffer buffer) {
+
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported principal encoding version " + version + ".");
+        }
+        return buffer.get();
+    }
+
+    private static int getRecordSize(String tenant, User user, boolean withPassword) {
+
+        int size = 1 + getStringSize(user.getUsername());
+        if (tenant != null) {
+            size += getStringSize(tenant);
+        }
+        if (withPassword && user.getPassword() != null) {
+            size += getStringSize(user.getPassword());
+        }
+        if (user.getPermission() != null) {
+            size += getStringSize(user.getPermission());
+        }
+        return size;
+    }
+
+    private static void putRecord(ByteBuffer buffer, String tenant, User user, boolean withPassword) {
+
+        String password = withPassword ? user.getPassword() : null;
+        String permission = user.getPermission();
+
+        byte flags = 0;
+        if (password != null) {
+            flags |= HAS_PASSWORD;
+        }
+        if (permission != null) {
+            flags |= HAS_PERMISSION;
+        }
+        if (tenant != null) {
+            flags |= HAS_TENANT;
+        }
+        buffer.put(flags);
+        if (tenant != null) {
+            putString(buffer, tenant);
+        }
+        putString(buffer, user.getUsername());
+        if (password != null) {
+            putString(buffer, password);
+        }
+        if (permission != null) {
+            putString(buffer, permission);
+        }
+    }
+
+    private static CarbonPrincipal getPrincipal(ByteBuffer buffer) {
+
+        byte flags = getFlags(buffer);
+        String tenant = (flags & HAS_TENANT) != 0 ? getString(buffer) : null;
+        return CarbonPrincipal.intern(tenant, getUser(buffer, flags, false));
+    }
+
+    private static byte getFlags(ByteBuffer buffer) {
+
+        byte flags = buffer.get();
+        if ((flags & ~(HAS_PASSWORD | HAS_PERMISSION | HAS_TENANT)) != 0) {
+            throw new IllegalArgumentException("Unknown principal flags " + flags + ".");
+        }
+        return flags;
+    }
+
+    // Reads the rest of a record, after its flags and tenant.
+    private static User getUser(ByteBuffer buffer, byte flags, boolean withPassword) {
+
+        User user = new User();
+        user.setUsername(getString(buffer));
+        if ((flags & HAS_PASSWORD) != 0) {
+            if (withPassword) {
+                user.setPassword(getString(buffer));
+            } else {
+                skipString(buffer);
+            }
+        }
+        if ((flags & HAS_PERMISSION) != 0) {
+            user.setPermission(getString(buffer));
+        }
+        return user;
+    }
+
+    private static int getVarintSize(int value) {
+        return value < 0x80 ? 1 : value < 0x4000 ? 2 : value < 0x200000 ? 3 : value < 0x10000000 ? 4 : 5;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+
+        int value = 0;
+        for (int shift = 0; shift < 28; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        // The fifth byte holds the top three bits of a non-negative length.
+        byte b = buffer.get();
+        if ((b & 0xF8) != 0) {
+            throw new IllegalArgumentException("Malformed length in an encoded principal.");
+        }
+        return value | b << 28;
+    }
+
+    private static int getStringSize(String value) {
+
+        int size = getUtf8Size(value);
+        return getVarintSize(size) + size;
+    }
+
+    // Lone surrogates are written as '?', as String.getBytes writes them.
+    private static int getUtf8Size(String value) {
+
+        int length = value.length();
+        int size = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 && c < 0x800) {
+                size += 1;
+            } else if (c >= 0x800 && !Character.isSurrogate(c)) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 2;
+                i++;
+            }
+        }
+        return size;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+
+        putVarint(buffer, getUtf8Size(value));
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                      .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                buffer.put((byte) '?');
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+
+        int length = getVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        int position = buffer.position();
+        String value = buffer.hasArray() ?
+                       new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8) :
+                       getDirectString(buffer, position, length);
+        buffer.position(position + length);
+        return value;
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+
+        int length = getVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(buffer.position() + length);
+    }
+
+    // Usernames and permissions are nearly always ASCII, which is decoded in place. Anything else is copied out.
+    private static String getDirectString(ByteBuffer buffer, int position, int length) {
+
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(position + i);
+            if (b < 0) {
+                byte[] bytes = new byte[length];
+                ByteBuffer source = buffer.duplicate();
+                source.position(position);
+                source.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.context;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@code Executor} which runs each task with the security context of the thread that submitted it.
+ * Suitable as the executor of asynchronous {@code CompletableFuture} stages.
+ *
+ * @since 1.0.1
+ */
+public class SecurityContextPropagatingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    public SecurityContextPropagatingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(SecurityContextSnapshot.capture().wrap(command));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.context;
+
+import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
+
+import java.security.Principal;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>
+ * Immutable snapshot of the security state held in the thread local {@code PrivilegedCarbonContext}.
+ * A snapshot is captured on the thread which authenticated the user and restored on the thread which runs the work,
+ * so that authenticated work can be handed to thread pools, {@code CompletableFuture} stages or virtual threads
+ * without logging in again.
+ * </p>
+ * <pre>
+ *     SecurityContextSnapshot snapshot = SecurityContextSnapshot.capture();
+ *     executor.execute(() -&gt; {
+ *         try (SecurityContextSnapshot.Scope scope = snapshot.restore()) {
+ *             // runs as the captured user
+ *         }
+ *     });
+ * </pre>
+ *
+ * @since 1.0.1
+ */
+public final class SecurityContextSnapshot {
+
+    private static final SecurityContextSnapshot EMPTY = new SecurityContextSnapshot(null);
+
+    private final Principal userPrincipal;
+
+    private SecurityContextSnapshot(Principal userPrincipal) {
+        this.userPrincipal = userPrincipal;
+    }
+
+    /**
+     * Captures the security context of the current thread.
+     *
+     * @return SecurityContextSnapshot.
+     */
+    public static SecurityContextSnapshot capture() {
+
+        Principal principal = PrivilegedCarbonContext.getCurrentContext().getUserPrincipal();
+        return principal == null ? EMPTY : new SecurityContextSnapshot(principal);
+    }
+
+    /**
+     * Returns the user principal captured by this snapshot.
+     *
+     * @return user principal, or null if the captured context was not authenticated.
+     */
+    public Principal getUserPrincipal() {
+        return userPrincipal;
+    }
+
+    /**
+     * Installs the principal of this snapshot on the current thread. The previous principal of the thread is
+     * reinstated when the returned scope is closed. The rest of the carbon context of the thread, such as its
+     * properties, is left as it is, unless a different principal is already set.
+     *
+     * @return Scope to be closed once the work is done.
+     */
+    public Scope restore() {
+
+        Principal previous = PrivilegedCarbonContext.getCurrentContext().getUserPrincipal();
+        install(userPrincipal);
+        return new Scope(previous);
+    }
+
+    /**
+     * Wraps a task so that it runs with this snapshot as its security context.
+     *
+     * @param task task to be wrapped.
+     * @return wrapped task.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            try (Scope ignored = restore()) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so that it runs with this snapshot as its security context.
+     *
+     * @param task task to be wrapped.
+     * @param <T> result type of the task.
+     * @return wrapped task.
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            try (Scope ignored = restore()) {
+                return task.call();
+            }
+        };
+    }
+
+    // Only the principal is replaced, and not at all when the task runs on the thread which captured it. The carbon
+    // context may refuse to override a principal which is already set, only then is the context of the thread
+    // discarded before a different principal is installed.
+    private static void install(Principal principal) {
+
+        PrivilegedCarbonContext context = PrivilegedCarbonContext.getCurrentContext();
+        if (context.getUserPrincipal() == principal) {
+            return;
+        }
+        try {
+            context.setUserPrincipal(principal);
+        } catch (IllegalStateException e) {
+            PrivilegedCarbonContext.destroyCurrentContext();
+            if (principal != null) {
+                PrivilegedCarbonContext.getCurrentContext().setUserPrincipal(principal);
+            }
+        }
+    }
+
+    /**
+     * Scope of a restored snapshot. Closing the scope reinstates the principal the thread had before.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final Principal previous;
+
+        private Scope(Principal previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            install(previous);
+        }
+    }
+}
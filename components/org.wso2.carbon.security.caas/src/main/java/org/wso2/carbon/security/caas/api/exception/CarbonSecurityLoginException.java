@@ -128,7 +128,12 @@ public class CarbonSecurityLoginException extends LoginException {
         INVALID_CREDENTIALS(10000, "Invalid user credentials."),
         CREDENTIAL_STORE_FAILURE(10001, "One or more credential stores produced errors while authenticating."),
         UNSUPPORTED_CALLBACK_EXCEPTION(10002, "Callback handler cannot handle given callbacks."),
-        CALLBACK_HANDLE_EXCEPTION(10003, "Error while handling callbacks.");
+        CALLBACK_HANDLE_EXCEPTION(10003, "Error while handling callbacks."),
+        LOGIN_THROTTLED(10004, "Too many failed login attempts. Try again later."),
+        USER_ALREADY_EXISTS(10005, "User already exists."),
+        USER_NOT_FOUND(10006, "User does not exist."),
+        USER_STORE_WRITE_FAILURE(10007, "Error while persisting a change to the user store."),
+        UNKNOWN_TENANT(10008, "Tenant does not exist.");
 
         private final int code;
         private final String description;
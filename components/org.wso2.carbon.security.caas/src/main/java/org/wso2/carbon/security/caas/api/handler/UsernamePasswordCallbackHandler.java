@@ -81,6 +81,11 @@ public class UsernamePasswordCallbackHandler implements CarbonCallbackHandler {
         return false;
     }
 
+    @Override
+    public String getSupportedLoginModule() {
+        return CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE;
+    }
+
     @Override
     public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Lock free latency histogram with power of two buckets. Every bucket is a striped {@code LongAdder}, hence
+ * concurrent recorders do not contend on a shared counter. Percentiles are approximated by the upper bound of the
+ * bucket they fall in, which is within a factor of two of the real value.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds.
+     */
+    public void record(long nanos) {
+
+        long value = Math.max(nanos, 0);
+        buckets[Math.max(0, BUCKETS - 1 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns a point in time view of the recorded latencies.
+     *
+     * @return LatencySnapshot.
+     */
+    public LatencySnapshot snapshot() {
+
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            recorded += counts[i];
+        }
+
+        return new LatencySnapshot(recorded,
+                                   recorded == 0 ? 0 : total.sum() / recorded,
+                                   percentile(counts, recorded, 0.5),
+                                   percentile(counts, recorded, 0.99),
+                                   percentile(counts, recorded, 0.999),
+                                   max.get());
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Clears all the recorded latencies.
+     */
+    public void reset() {
+
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    private static long percentile(long[] counts, long recorded, double quantile) {
+
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(recorded * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i >= BUCKETS - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
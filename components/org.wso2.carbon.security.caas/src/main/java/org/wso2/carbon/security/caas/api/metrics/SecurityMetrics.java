@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.metrics;
+
+import org.wso2.carbon.security.caas.api.audit.AuditLog;
+import org.wso2.carbon.security.caas.api.cluster.ClusterInvalidation;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.SyntheticLogins;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Login and authorization metrics of the carbon security module. All the counters are striped {@code LongAdder}s,
+ * so recording never blocks. When metrics are disabled recording costs a single volatile read. Synthetic logins of
+ * the module itself, such as the warm-up logins, are not recorded.
+ * </p>
+ * <pre>
+ *     long start = SecurityMetrics.getInstance().startTimer();
+ *     ...
+ *     SecurityMetrics.getInstance().stopTimer(SecurityMetrics.Phase.LOGIN, start);
+ * </pre>
+ *
+ * @since 1.0.1
+ */
+public class SecurityMetrics implements SecurityMetricsMXBean {
+
+    private static final SecurityMetrics instance = new SecurityMetrics();
+
+    private volatile boolean enabled;
+
+    private final ConcurrentMap<String, LongAdder> loginAttempts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> failedLogins = new ConcurrentHashMap<>();
+    private final LongAdder successfulLogins = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Phase.values().length];
+
+    private SecurityMetrics() {
+
+        enabled = Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.METRICS_ENABLED, "true"));
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return SecurityMetrics.
+     */
+    public static SecurityMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return start time to be passed to {@link #stopTimer(Phase, long)}, or 0 if metrics are disabled.
+     */
+    public long startTimer() {
+        return isRecording() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the latency of an operation started with {@link #startTimer()}.
+     *
+     * @param phase timed phase.
+     * @param start value returned by {@link #startTimer()}.
+     */
+    public void stopTimer(Phase phase, long start) {
+        if (start != 0L) {
+            latencies[phase.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the creation of a login context for an application entry.
+     *
+     * @param applicationName JAAS application name.
+     */
+    public void recordLoginAttempt(String applicationName) {
+        if (applicationName != null && isRecording()) {
+            loginAttempts.computeIfAbsent(applicationName, name -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records a successful login.
+     */
+    public void recordLoginSuccess() {
+        if (isRecording()) {
+            successfulLogins.increment();
+        }
+    }
+
+    /**
+     * Records a failed login.
+     *
+     * @param errorCode {@code CarbonSecurityErrorMessages} code of the failure, or -1.
+     */
+    public void recordLoginFailure(int errorCode) {
+        if (isRecording()) {
+            failedLogins.computeIfAbsent(errorCode, code -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Long> getLoginAttemptsByApplication() {
+
+        Map<String, Long> attempts = new TreeMap<>();
+        loginAttempts.forEach((name, count) -> attempts.put(name, count.sum()));
+        return attempts;
+    }
+
+    @Override
+    public long getSuccessfulLogins() {
+        return successfulLogins.sum();
+    }
+
+    @Override
+    public Map<Integer, Long> getFailedLoginsByErrorCode() {
+
+        Map<Integer, Long> failures = new TreeMap<>();
+        failedLogins.forEach((code, count) -> failures.put(code, count.sum()));
+        return failures;
+    }
+
+    @Override
+    public LatencySnapshot getInitializeLatency() {
+        return latencies[Phase.INITIALIZE.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getLoginLatency() {
+        return latencies[Phase.LOGIN.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCommitLatency() {
+        return latencies[Phase.COMMIT.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getUserLookupLatency() {
+        return latencies[Phase.USER_LOOKUP.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getAuthorizationLatency() {
+        return latencies[Phase.AUTHORIZATION.ordinal()].snapshot();
+    }
+
+    @Override
+    public long getWrittenAuditEvents() {
+        return AuditLog.getInstance().getWrittenEvents();
+    }
+
+    @Override
+    public long getDroppedAuditEvents() {
+        return AuditLog.getInstance().getDroppedEvents();
+    }
+
+    @Override
+    public long getSampledOutAuditEvents() {
+        return AuditLog.getInstance().getSampledOutEvents();
+    }
+
+    @Override
+    public int getUserCount() {
+
+        try {
+            return UserStore.getInstance().getUserCount();
+        } catch (CarbonSecurityServerException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getUserStoreHeapSize() {
+
+        try {
+            return UserStore.getInstance().getHeapSize();
+        } catch (CarbonSecurityServerException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getUserStoreHeapSizePerUser() {
+
+        try {
+            UserStore userStore = UserStore.getInstance();
+            int users = userStore.getUserCount();
+            return users == 0 ? 0 : userStore.getHeapSize() / users;
+        } catch (CarbonSecurityServerException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getSentInvalidationBatches() {
+        return ClusterInvalidation.getInstance().getSentBatches();
+    }
+
+    @Override
+    public long getReceivedInvalidationBatches() {
+        return ClusterInvalidation.getInstance().getReceivedBatches();
+    }
+
+    @Override
+    public long getLostInvalidationBatches() {
+        return ClusterInvalidation.getInstance().getLostBatches();
+    }
+
+    private boolean isRecording() {
+        return enabled && !SyntheticLogins.isSynthetic();
+    }
+
+    @Override
+    public void reset() {
+
+        loginAttempts.clear();
+        failedLogins.clear();
+        successfulLogins.reset();
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+    }
+
+    /**
+     * Timed phases of the authentication and authorization pipeline.
+     */
+    public enum Phase {
+
+        INITIALIZE,
+        LOGIN,
+        COMMIT,
+        USER_LOOKUP,
+        AUTHORIZATION
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the carbon security login and authorization metrics.
+ *
+ * @since 1.0.1
+ */
+public interface SecurityMetricsMXBean {
+
+    /**
+     * Returns whether metrics are recorded.
+     *
+     * @return true if enabled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables recording of metrics.
+     *
+     * @param enabled true to enable.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the number of login contexts created per JAAS application entry.
+     *
+     * @return login attempts keyed by application name.
+     */
+    Map<String, Long> getLoginAttemptsByApplication();
+
+    /**
+     * Returns the number of successful logins.
+     *
+     * @return successful login count.
+     */
+    long getSuccessfulLogins();
+
+    /**
+     * Returns the number of failed logins per {@code CarbonSecurityErrorMessages} code. Failures without a code are
+     * reported against -1.
+     *
+     * @return failed login count keyed by error code.
+     */
+    Map<Integer, Long> getFailedLoginsByErrorCode();
+
+    /**
+     * Returns the latency of the login module initialize phase.
+     *
+     * @return LatencySnapshot.
+     */
+    LatencySnapshot getInitializeLatency();
+
+    /**
+     * Returns the latency of the login module login phase.
+     *
+     * @return LatencySnapshot.
+     */
+    LatencySnapshot getLoginLatency();
+
+    /**
+     * Returns the latency of the login module commit phase.
+     *
+     * @return LatencySnapshot.
+     */
+    LatencySnapshot getCommitLatency();
+
+    /**
+     * Returns the latency of user store lookups.
+     *
+     * @return LatencySnapshot.
+     */
+    LatencySnapshot getUserLookupLatency();
+
+    /**
+     * Returns the latency of {@code CarbonPolicy} authorization decisions.
+     *
+     * @return LatencySnapshot.
+     */
+    LatencySnapshot getAuthorizationLatency();
+
+    /**
+     * Returns the number of audit events written to the audit log.
+     *
+     * @return written audit event count.
+     */
+    long getWrittenAuditEvents();
+
+    /**
+     * Returns the number of audit events lost because the audit log buffer was full or the audit log could not be
+     * written.
+     *
+     * @return dropped audit event count.
+     */
+    long getDroppedAuditEvents();
+
+    /**
+     * Returns the number of audit events left out by sampling while the audit log buffer was filling up.
+     *
+     * @return sampled out audit event count.
+     */
+    long getSampledOutAuditEvents();
+
+    /**
+     * Returns the number of users of the user store.
+     *
+     * @return user count, or -1 if the user store cannot be read.
+     */
+    int getUserCount();
+
+    /**
+     * Returns the estimated heap held by the users of the user store. Computed on each call by walking all the users.
+     *
+     * @return size in bytes, or -1 if the user store cannot be read.
+     */
+    long getUserStoreHeapSize();
+
+    /**
+     * Returns the estimated heap held per user of the user store, to be tracked as the user store grows. Computed on
+     * each call by walking all the users.
+     *
+     * @return size in bytes, or -1 if the user store cannot be read.
+     */
+    long getUserStoreHeapSizePerUser();
+
+    /**
+     * Returns the number of invalidation batches sent to the other nodes of the cluster.
+     *
+     * @return sent batch count.
+     */
+    long getSentInvalidationBatches();
+
+    /**
+     * Returns the number of invalidation batches received from the other nodes of the cluster.
+     *
+     * @return received batch count.
+     */
+    long getReceivedInvalidationBatches();
+
+    /**
+     * Returns the number of invalidation batches of other nodes which were never received, each of which made this
+     * node reload all its users.
+     *
+     * @return lost batch count.
+     */
+    long getLostInvalidationBatches();
+
+    /**
+     * Clears all the recorded metrics.
+     */
+    void reset();
+}
@@ -17,6 +17,9 @@ package org.wso2.carbon.security.caas.api.model;
 
 import org.wso2.carbon.security.caas.api.CarbonPermission;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * Users mapper class.
  */
@@ -50,8 +53,20 @@ public class User {
         this.permission = permission;
     }
 
+    /**
+     * Compares a credential, encoded as the users file stores it, with the credential of this user in constant time.
+     *
+     * @param credential UTF-8 bytes of the encoded credential.
+     * @return true if the credentials are equal.
+     */
+    public boolean matchesCredential(byte[] credential) {
+
+        String password = getPassword();
+        return password != null && MessageDigest.isEqual(credential, password.getBytes(StandardCharsets.UTF_8));
+    }
+
     public boolean isUserAuthorized(CarbonPermission permission) {
-        String[] allowedPermissions = this.permission.split(",");
+        String[] allowedPermissions = getPermission().split(",");
         for (String allowedPermission : allowedPermissions) {
             if (permission.implies(new CarbonPermission(allowedPermission, "grant"))) {
                 return true;
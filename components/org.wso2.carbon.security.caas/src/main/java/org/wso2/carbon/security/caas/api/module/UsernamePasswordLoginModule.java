@@ -20,12 +20,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
 import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.ClientAddressCallback;
+import org.wso2.carbon.security.caas.api.TenantCallback;
+import org.wso2.carbon.security.caas.api.audit.AuditLog;
+import org.wso2.carbon.security.caas.api.cache.AuthenticationCache;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityAuthenticationException;
 import org.wso2.carbon.security.caas.api.exception.CarbonSecurityClientException;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityLoginException;
 import org.wso2.carbon.security.caas.api.exception.CarbonSecurityLoginException.CarbonSecurityErrorMessages;
 import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.metrics.SecurityMetrics;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartition;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartitions;
+import org.wso2.carbon.security.caas.api.throttle.LoginThrottle;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
 import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+import org.wso2.carbon.security.caas.internal.LoginPhaseEvent;
+import org.wso2.carbon.security.caas.internal.SecurityEvents;
+import org.wso2.carbon.security.caas.internal.SingleFlight;
+import org.wso2.carbon.security.caas.internal.SyntheticLogins;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Map;
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
@@ -40,7 +61,13 @@ import javax.security.auth.spi.LoginModule;
  * <p>
  * This LoginModule authenticates users against the underline UserStoreManager.
  * Upon successful authentication, <code>CarbonPrincipal</code> with user information is added to the subject.
- * This LoginModule does not recognize any options defined in the login configuration.
+ * Successful authentications are remembered in the {@code AuthenticationCache}, so that repeated logins with the same
+ * credential skip the user store. Attempts throttled by the {@code LoginThrottle} are rejected before the credential
+ * is looked at, and concurrent logins presenting the same credential share a single verification. Logins and
+ * logouts are recorded in the {@code AuditLog}, except for the synthetic logins of the module itself, which are
+ * neither audited nor throttled.
+ * Users are looked up in the partition of the tenant named by the {@code tenant} option of the login configuration,
+ * or else the tenant given through a {@code TenantCallback}, and in the default partition if there is neither.
  * </p>
  *
  * @since 1.0.0
@@ -48,6 +75,10 @@ import javax.security.auth.spi.LoginModule;
 public class UsernamePasswordLoginModule implements LoginModule {
 
     private static final Logger log = LoggerFactory.getLogger(UsernamePasswordLoginModule.class);
+    private static final String LOGIN_MODULE_NAME = UsernamePasswordLoginModule.class.getName();
+    private static final boolean COALESCING_ENABLED =
+            Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.LOGIN_COALESCING_ENABLED, "true"));
+    private static final SingleFlight<String, CarbonPrincipal> inFlightLogins = new SingleFlight<>();
     private Subject subject;
     private String username;
     private char[] password;
@@ -57,6 +88,9 @@ public class UsernamePasswordLoginModule implements LoginModule {
     private boolean success = false;
     private boolean commitSuccess = false;
     private CarbonPrincipal carbonPrincipal;
+    private String presentedUsername;
+    private String clientAddress;
+    private TenantPartition partition;
 
     /**
      * This method initializes the login module.
@@ -69,6 +103,11 @@ public class UsernamePasswordLoginModule implements LoginModule {
     @Override
     public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState,
                            Map<String, ?> options) {
+
+        SecurityMetrics metrics = SecurityMetrics.getInstance();
+        long start = metrics.startTimer();
+        LoginPhaseEvent event = SecurityEvents.beginLoginPhase();
+
         // TODO Remove this check
         if (username != null || password != null) {
             log.warn("PrototypeServiceFactory failed to deliver new UsernamePasswordLoginModule object");
@@ -78,6 +117,9 @@ public class UsernamePasswordLoginModule implements LoginModule {
         this.callbackHandler = callbackHandler;
         this.sharedState = sharedState;
         this.options = options;
+
+        metrics.stopTimer(SecurityMetrics.Phase.INITIALIZE, start);
+        SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "initialize", true);
     }
 
     /**
@@ -90,6 +132,40 @@ public class UsernamePasswordLoginModule implements LoginModule {
     @Override
     public boolean login() throws LoginException {
 
+        SecurityMetrics metrics = SecurityMetrics.getInstance();
+        long start = metrics.startTimer();
+        LoginPhaseEvent event = SecurityEvents.beginLoginPhase();
+        boolean authenticated = false;
+
+        boolean audited = !SyntheticLogins.isSynthetic();
+
+        try {
+            authenticated = authenticate();
+            metrics.recordLoginSuccess();
+            if (audited) {
+                AuditLog.getInstance().loginSucceeded(carbonPrincipal.getName(), clientAddress);
+            }
+            return authenticated;
+        } catch (CarbonSecurityLoginException e) {
+            metrics.recordLoginFailure(e.getCode());
+            if (audited) {
+                AuditLog.getInstance().loginFailed(presentedUsername, clientAddress, e.getCode());
+            }
+            throw e;
+        } catch (LoginException e) {
+            metrics.recordLoginFailure(-1);
+            if (audited) {
+                AuditLog.getInstance().loginFailed(presentedUsername, clientAddress, -1);
+            }
+            throw e;
+        } finally {
+            metrics.stopTimer(SecurityMetrics.Phase.LOGIN, start);
+            SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "login", authenticated);
+        }
+    }
+
+    private boolean authenticate() throws LoginException {
+
         NameCallback usernameCallback = new NameCallback("username");
         PasswordCallback passwordCallback = new PasswordCallback("password", false);
         Callback[] callbacks = {usernameCallback, passwordCallback};
@@ -108,14 +184,129 @@ public class UsernamePasswordLoginModule implements LoginModule {
 
         username = usernameCallback.getName();
         password = passwordCallback.getPassword();
+        // Kept for the audit log, as the credentials are cleared once verified.
+        presentedUsername = username;
 
+        if (username == null || password == null) {
+            throw new CarbonSecurityAuthenticationException(
+                    CarbonSecurityErrorMessages.INVALID_CREDENTIALS.getCode(),
+                    CarbonSecurityErrorMessages.INVALID_CREDENTIALS.getDescription());
+        }
 
+        // Reject throttled attempts before spending anything on the credential.
+        LoginThrottle loginThrottle = LoginThrottle.getInstance();
+        boolean throttled = loginThrottle.isEnabled() && !SyntheticLogins.isSynthetic();
+        String tenant;
+        try {
+            if (throttled || AuditLog.getInstance().isEnabled()) {
+                clientAddress = getClientAddress();
+            }
+            // Failures are counted per tenant, as usernames are only unique within one.
+            tenant = getTenant();
+        } catch (CarbonSecurityLoginException e) {
+            clearCredentials();
+            throw e;
+        }
+        if (throttled) {
+            if (loginThrottle.isThrottled(tenant, username, clientAddress)) {
+                clearCredentials();
+                throw new CarbonSecurityAuthenticationException(
+                        CarbonSecurityErrorMessages.LOGIN_THROTTLED.getCode(),
+                        CarbonSecurityErrorMessages.LOGIN_THROTTLED.getDescription());
+            }
+        }
+
+        try {
+            partition = TenantPartitions.getInstance().getPartition(tenant);
+        } catch (CarbonSecurityLoginException e) {
+            clearCredentials();
+            throw e;
+        }
+        AuthenticationCache authenticationCache = partition.getAuthenticationCache();
+        String credentialDigest = null;
+
+        if (authenticationCache.isEnabled() || COALESCING_ENABLED) {
+            credentialDigest = authenticationCache.digest(username, password);
+        }
+        if (authenticationCache.isEnabled()) {
+            carbonPrincipal = authenticationCache.get(credentialDigest);
+        }
+
+        if (carbonPrincipal == null) {
+            String digest = credentialDigest;
+            // Concurrent logins with the same credential share a single verification.
+            carbonPrincipal = COALESCING_ENABLED ? inFlightLogins.execute(digest, () -> verifyCredentials(digest)) :
+                              verifyCredentials(digest);
+
+            if (carbonPrincipal == null) {
+                if (throttled) {
+                    loginThrottle.recordFailure(tenant, username, clientAddress);
+                }
+                clearCredentials();
+                throw new CarbonSecurityAuthenticationException(
+                        CarbonSecurityErrorMessages.INVALID_CREDENTIALS.getCode(),
+                        CarbonSecurityErrorMessages.INVALID_CREDENTIALS.getDescription());
+            }
+        }
 
-        //TODO Add Audit logs CARBON-15870
         success = true;
         return true;
     }
 
+    private CarbonPrincipal verifyCredentials(String credentialDigest) throws CarbonSecurityServerException {
+
+        // Read before the user, so that a password changed while verifying never leaves the old one cached.
+        AuthenticationCache authenticationCache = partition.getAuthenticationCache();
+        long epoch = authenticationCache.isEnabled() ? authenticationCache.getEpoch() : 0;
+
+        User user = CarbonSecurityUtils.getUserView(partition.getUserStore(), username);
+        if (user == null || !isValidPassword(user, password)) {
+            return null;
+        }
+
+        CarbonPrincipal principal = CarbonPrincipal.intern(partition.getTenant(), user);
+        if (authenticationCache.isEnabled()) {
+            authenticationCache.put(credentialDigest, principal, epoch);
+        }
+        return principal;
+    }
+
+    private String getClientAddress() throws CarbonSecurityServerException {
+
+        // Asked separately, as callback handlers other than ProxyCallbackHandler may not know the client address.
+        ClientAddressCallback clientAddressCallback = new ClientAddressCallback();
+        try {
+            callbackHandler.handle(new Callback[]{clientAddressCallback});
+        } catch (UnsupportedCallbackException e) {
+            return null;
+        } catch (IOException e) {
+            throw new CarbonSecurityServerException(CarbonSecurityErrorMessages.CALLBACK_HANDLE_EXCEPTION.getCode(),
+                                                    CarbonSecurityErrorMessages.CALLBACK_HANDLE_EXCEPTION
+                                                            .getDescription(), e);
+        }
+        return clientAddressCallback.getClientAddress();
+    }
+
+    private String getTenant() throws CarbonSecurityServerException {
+
+        Object tenant = options == null ? null : options.get(CarbonSecurityConstants.TENANT_OPTION);
+        if (tenant != null) {
+            return tenant.toString();
+        }
+
+        TenantCallback tenantCallback = new TenantCallback();
+        try {
+            callbackHandler.handle(new Callback[]{tenantCallback});
+        } catch (UnsupportedCallbackException e) {
+            return null;
+        } catch (IOException e) {
+            throw new CarbonSecurityServerException(CarbonSecurityErrorMessages.CALLBACK_HANDLE_EXCEPTION.getCode(),
+                                                    CarbonSecurityErrorMessages.CALLBACK_HANDLE_EXCEPTION
+                                                            .getDescription(), e);
+        }
+        return tenantCallback.getTenant();
+    }
+
     /**
      * This method is called if the LoginContext's  overall authentication success.
      * <p> If this LoginModule's own authentication attempt
@@ -130,11 +321,14 @@ public class UsernamePasswordLoginModule implements LoginModule {
     @Override
     public boolean commit() throws LoginException {
 
+        SecurityMetrics metrics = SecurityMetrics.getInstance();
+        long start = metrics.startTimer();
+        LoginPhaseEvent event = SecurityEvents.beginLoginPhase();
+
         if (success) {
-            carbonPrincipal = new CarbonPrincipal(CarbonSecurityUtils.getUser(username));
-            if (!subject.getPrincipals().contains(carbonPrincipal)) {
-                subject.getPrincipals().add(carbonPrincipal);
-            }
+            // An equal principal left by an earlier login may carry outdated permissions, hence it is replaced.
+            subject.getPrincipals().remove(carbonPrincipal);
+            subject.getPrincipals().add(carbonPrincipal);
 
             PrivilegedCarbonContext privilegedCarbonContext = PrivilegedCarbonContext.getCurrentContext();
             privilegedCarbonContext.setUserPrincipal(carbonPrincipal);
@@ -149,6 +343,9 @@ public class UsernamePasswordLoginModule implements LoginModule {
         } else {
             commitSuccess = false;
         }
+
+        metrics.stopTimer(SecurityMetrics.Phase.COMMIT, start);
+        SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "commit", commitSuccess);
         return commitSuccess;
     }
 
@@ -164,7 +361,10 @@ public class UsernamePasswordLoginModule implements LoginModule {
     @Override
     public boolean abort() throws LoginException {
 
+        LoginPhaseEvent event = SecurityEvents.beginLoginPhase();
+
         if (!success) {
+            SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "abort", false);
             return false;
         } else if (!commitSuccess) {
             // login success but overall authentication failed
@@ -182,6 +382,8 @@ public class UsernamePasswordLoginModule implements LoginModule {
             // but someone else's commit failed
             logout();
         }
+
+        SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "abort", true);
         return true;
     }
 
@@ -195,6 +397,11 @@ public class UsernamePasswordLoginModule implements LoginModule {
     @Override
     public boolean logout() throws LoginException {
 
+        LoginPhaseEvent event = SecurityEvents.beginLoginPhase();
+
+        if (commitSuccess) {
+            AuditLog.getInstance().loggedOut(carbonPrincipal.getName(), clientAddress);
+        }
         subject.getPrincipals().remove(carbonPrincipal);
         success = false;
         commitSuccess = false;
@@ -206,7 +413,41 @@ public class UsernamePasswordLoginModule implements LoginModule {
             password = null;
         }
         carbonPrincipal = null;
+        presentedUsername = null;
+        clientAddress = null;
+        partition = null;
+
+        SecurityEvents.commitLoginPhase(event, LOGIN_MODULE_NAME, "logout", true);
         return true;
     }
 
+    private void clearCredentials() {
+        username = null;
+        if (password != null) {
+            for (int i = 0; i < password.length; i++) {
+                password[i] = ' ';
+            }
+            password = null;
+        }
+    }
+
+    // Users file keeps Base64 encoded passwords, hence the presented password is encoded the same way and compared
+    // in constant time.
+    private static boolean isValidPassword(User user, char[] password) {
+
+        ByteBuffer passwordBytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] rawPassword = new byte[passwordBytes.remaining()];
+        passwordBytes.get(rawPassword);
+        if (passwordBytes.hasArray()) {
+            Arrays.fill(passwordBytes.array(), (byte) 0);
+        }
+
+        byte[] encodedPassword = Base64.getEncoder().encode(rawPassword);
+        Arrays.fill(rawPassword, (byte) 0);
+
+        boolean valid = user.matchesCredential(encodedPassword);
+        Arrays.fill(encodedPassword, (byte) 0);
+        return valid;
+    }
+
 }
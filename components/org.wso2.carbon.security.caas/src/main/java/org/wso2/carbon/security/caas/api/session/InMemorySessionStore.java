@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.session;
+
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.TimingWheel;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session store keeping the sessions in a {@code ConcurrentHashMap}, visible to this JVM only. Holds at most
+ * {@code carbon.security.session.store.capacity} sessions. Each session is removed by the housekeeping
+ * {@code TimingWheel} once it expires, so expired sessions are never scanned for.
+ *
+ * @since 1.0.1
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /**
+     * Creates a store configured with system properties.
+     */
+    public InMemorySessionStore() {
+        this(Integer.getInteger(CarbonSecurityConstants.SESSION_STORE_CAPACITY,
+                                CarbonSecurityConstants.DEFAULT_SESSION_STORE_CAPACITY));
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param capacity maximum number of sessions.
+     */
+    public InMemorySessionStore(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void put(String sessionId, byte[] principal, long expiresAt) throws CarbonSecurityServerException {
+
+        if (sessions.size() >= capacity && !sessions.containsKey(sessionId)) {
+            removeExpired(System.currentTimeMillis());
+            if (sessions.size() >= capacity) {
+                throw new CarbonSecurityServerException("Session store is full, " + capacity + " sessions.");
+            }
+        }
+        Session session = new Session(principal.clone(), expiresAt);
+        session.expiry = TimingWheel.getInstance().schedule(() -> sessions.remove(sessionId, session),
+                                                            expiresAt - System.currentTimeMillis(),
+                                                            TimeUnit.MILLISECONDS);
+        cancel(sessions.put(sessionId, session));
+    }
+
+    @Override
+    public byte[] get(String sessionId, long now) {
+
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt <= now) {
+            if (sessions.remove(sessionId, session)) {
+                cancel(session);
+            }
+            return null;
+        }
+        return session.principal.clone();
+    }
+
+    @Override
+    public boolean remove(String sessionId) {
+
+        Session session = sessions.remove(sessionId);
+        cancel(session);
+        return session != null;
+    }
+
+    @Override
+    public int removeExpired(long now) {
+
+        int removed = 0;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.expiresAt <= now) {
+                iterator.remove();
+                cancel(session);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void close() {
+
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            cancel(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static void cancel(Session session) {
+
+        if (session != null) {
+            session.expiry.cancel();
+        }
+    }
+
+    private static final class Session {
+
+        private final byte[] principal;
+        private final long expiresAt;
+        private TimingWheel.Timeout expiry;
+
+        private Session(byte[] principal, long expiresAt) {
+
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.TimingWheel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Session store kept in a memory-mapped file, by default {@code tmp/security/sessions.bin} under {@code carbon.home},
+ * which all the JVMs of a host mapping the same file share. A session created by one process is hence resolved by the
+ * others without authenticating again.
+ * </p>
+ * <p>
+ * The file is a fixed size open addressing hash table of {@code carbon.security.session.store.capacity} slots of 512
+ * bytes, split into 64 stripes. A session lives in the stripe its ID hashes to, and is probed for within that stripe
+ * only, so that every operation locks a single stripe: with a {@code ReentrantLock} against the other threads of this
+ * JVM and a shared or exclusive {@code FileLock} on the stripe against other processes. Lookups allocate only the
+ * digest of the session ID and the principal copied out of the mapped file.
+ * </p>
+ * <p>
+ * Sessions are keyed by the SHA-256 digest of their ID, so the file never holds a session ID which could be presented
+ * to resolve the session. On file systems supporting POSIX permissions the file is created readable and writable by
+ * its owner only.
+ * </p>
+ * <pre>
+ *     header:  magic:int format:int slots:int slotSize:int stripes:int, padded to 64 bytes
+ *     slot:    state:byte pad:3 hash:int expiresAt:long idLength:short principalLength:short idDigest principal
+ * </pre>
+ * The first process creates the file; later ones use the geometry found in it, whatever their configured capacity.
+ * Removed and expired sessions leave their slots for reuse until the stripes are compacted, once a minute on the
+ * housekeeping {@code TimingWheel} of every process mapping the file.
+ *
+ * @since 1.0.1
+ */
+public class MappedSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSessionStore.class);
+
+    private static final long COMPACTION_INTERVAL_SECONDS = 60;
+    private static final int MAGIC = 0x43535353;
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 512;
+    private static final int STRIPES = 64;
+
+    private static final int STATE = 0;
+    private static final int HASH = 4;
+    private static final int EXPIRES_AT = 8;
+    private static final int ID_LENGTH = 16;
+    private static final int PRINCIPAL_LENGTH = 18;
+    private static final int SLOT_HEADER_SIZE = 20;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte REMOVED = 2;
+
+    private static final String ID_DIGEST_ALGORITHM = "SHA-256";
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+
+    private static final ThreadLocal<MessageDigest> idDigest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(ID_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to initialize " + ID_DIGEST_ALGORITHM, e);
+        }
+    });
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int slotSize;
+    private final int slotsPerStripe;
+    private final int stripeCount;
+    private final ReentrantLock[] locks;
+
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private volatile TimingWheel.Timeout compaction;
+
+    /**
+     * Creates a store configured with system properties.
+     *
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public MappedSessionStore() throws IOException {
+        this(getDefaultFile(), Integer.getInteger(CarbonSecurityConstants.SESSION_STORE_CAPACITY,
+                                                  CarbonSecurityConstants.DEFAULT_SESSION_STORE_CAPACITY));
+    }
+
+    /**
+     * Creates a store, or opens the store of another process.
+     *
+     * @param file store file.
+     * @param capacity number of sessions, used only when creating the file.
+     * @throws IOException if the file cannot be created or mapped, or is not a session store.
+     */
+    public MappedSessionStore(Path file, int capacity) throws IOException {
+
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE);
+        // The permissions apply only if the file is created, an existing file keeps its own.
+        FileChannel fileChannel;
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            fileChannel = FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS));
+        } else {
+            fileChannel = FileChannel.open(file, options);
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            try (FileLock ignored = fileChannel.lock(0, HEADER_SIZE, false)) {
+                if (fileChannel.size() >= HEADER_SIZE) {
+                    while (header.hasRemaining()) {
+                        if (fileChannel.read(header, header.position()) < 0) {
+                            break;
+                        }
+                    }
+                    header.flip();
+                }
+                // A file without a magic was left behind by a process which died while creating it.
+                if (header.limit() < HEADER_SIZE || header.getInt(0) == 0) {
+                    int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+                    header.clear();
+                    header.putInt(MAGIC).putInt(FORMAT).putInt(perStripe * STRIPES).putInt(SLOT_SIZE)
+                            .putInt(STRIPES);
+                    header.clear();
+                    long length = HEADER_SIZE + (long) perStripe * STRIPES * SLOT_SIZE;
+                    checkLength(length);
+                    fileChannel.write(ByteBuffer.allocate(1), length - 1);
+                    fileChannel.write(header, 0);
+                    fileChannel.force(true);
+                }
+            }
+
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                throw new IOException(file + " is not a session store.");
+            }
+            int slots = header.getInt(8);
+            slotSize = header.getInt(12);
+            stripeCount = header.getInt(16);
+            if (slots <= 0 || slotSize <= SLOT_HEADER_SIZE || stripeCount <= 0 || slots % stripeCount != 0) {
+                throw new IOException("Corrupted session store header in " + file + ".");
+            }
+            slotsPerStripe = slots / stripeCount;
+            long length = HEADER_SIZE + (long) slots * slotSize;
+            checkLength(length);
+            if (fileChannel.size() < length) {
+                throw new IOException("Truncated session store " + file + ".");
+            }
+            buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+
+        channel = fileChannel;
+        locks = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        scheduleCompaction();
+    }
+
+    @Override
+    public void put(String sessionId, byte[] principal, long expiresAt) throws CarbonSecurityServerException {
+
+        byte[] id = digest(sessionId);
+        if (SLOT_HEADER_SIZE + id.length + principal.length > slotSize) {
+            throw new CarbonSecurityServerException("Session of " + (id.length + principal.length) + " bytes does " +
+                                                    "not fit a session store slot.");
+        }
+
+        int hash = hashOf(id);
+        int stripe = stripeOf(hash);
+        boolean stored = withStripe(stripe, false, () -> {
+            int slot = findSlot(stripe, hash, id, System.currentTimeMillis());
+            if (slot < 0) {
+                return false;
+            }
+            write(slot, hash, expiresAt, id, principal);
+            return true;
+        });
+        if (!stored) {
+            throw new CarbonSecurityServerException("Session store " + file + " is full.");
+        }
+    }
+
+    @Override
+    public byte[] get(String sessionId, long now) throws CarbonSecurityServerException {
+
+        byte[] id = digest(sessionId);
+        int hash = hashOf(id);
+        int stripe = stripeOf(hash);
+        return withStripe(stripe, true, () -> {
+            int slot = find(stripe, hash, id);
+            if (slot < 0 || buffer.getLong(slot + EXPIRES_AT) <= now) {
+                return null;
+            }
+            byte[] principal = new byte[buffer.getShort(slot + PRINCIPAL_LENGTH) & 0xFFFF];
+            int offset = slot + SLOT_HEADER_SIZE + id.length;
+            for (int i = 0; i < principal.length; i++) {
+                principal[i] = buffer.get(offset + i);
+            }
+            return principal;
+        });
+    }
+
+    @Override
+    public boolean remove(String sessionId) throws CarbonSecurityServerException {
+
+        byte[] id = digest(sessionId);
+        int hash = hashOf(id);
+        int stripe = stripeOf(hash);
+        return withStripe(stripe, false, () -> {
+            int slot = find(stripe, hash, id);
+            if (slot < 0) {
+                return false;
+            }
+            buffer.put(slot + STATE, REMOVED);
+            return true;
+        });
+    }
+
+    @Override
+    public int removeExpired(long now) throws CarbonSecurityServerException {
+
+        int removed = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            int current = stripe;
+            removed += withStripe(stripe, false, () -> compact(current, now));
+        }
+        return removed;
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+        compaction.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing is written through the channel, which only holds the locks.
+        }
+    }
+
+    private void scheduleCompaction() {
+        // Blocking, as the stripes are locked against the other processes sharing the file.
+        compaction = TimingWheel.getInstance().scheduleBlocking(this::compactExpired, COMPACTION_INTERVAL_SECONDS,
+                                                                TimeUnit.SECONDS);
+    }
+
+    private void compactExpired() {
+
+        if (closed) {
+            return;
+        }
+        try {
+            removeExpired(System.currentTimeMillis());
+        } catch (CarbonSecurityServerException e) {
+            log.error("Unable to remove the expired sessions of {}.", file, e);
+        } finally {
+            if (!closed) {
+                scheduleCompaction();
+            }
+        }
+    }
+
+    // Rehashes the live sessions of a stripe, so that removed and expired ones no longer lengthen the probes.
+    private int compact(int stripe, long now) {
+
+        List<byte[]> live = new ArrayList<>();
+        int removed = 0;
+        boolean hasRemoved = false;
+        for (int i = 0; i < slotsPerStripe; i++) {
+            int slot = slotOffset(stripe, i);
+            byte state = buffer.get(slot + STATE);
+            if (state == USED && buffer.getLong(slot + EXPIRES_AT) > now) {
+                byte[] record = new byte[SLOT_HEADER_SIZE + (buffer.getShort(slot + ID_LENGTH) & 0xFFFF) +
+                                         (buffer.getShort(slot + PRINCIPAL_LENGTH) & 0xFFFF)];
+                for (int j = 0; j < record.length; j++) {
+                    record[j] = buffer.get(slot + j);
+                }
+                live.add(record);
+            } else if (state == USED) {
+                removed++;
+            } else if (state == REMOVED) {
+                hasRemoved = true;
+            }
+        }
+        if (removed == 0 && !hasRemoved) {
+            return 0;
+        }
+
+        for (int i = 0; i < slotsPerStripe; i++) {
+            buffer.put(slotOffset(stripe, i) + STATE, EMPTY);
+        }
+        for (byte[] record : live) {
+            int hash = ByteBuffer.wrap(record).getInt(HASH);
+            int start = startOf(hash);
+            for (int i = 0; i < slotsPerStripe; i++) {
+                int slot = slotOffset(stripe, (start + i) % slotsPerStripe);
+                if (buffer.get(slot + STATE) == EMPTY) {
+                    // State goes last, as the first byte of the record.
+                    for (int j = record.length - 1; j >= 0; j--) {
+                        buffer.put(slot + j, record[j]);
+                    }
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    // Slot of the session, or else the first reusable slot on its probe sequence, or -1 if the stripe is full.
+    private int findSlot(int stripe, int hash, byte[] id, long now) {
+
+        int start = startOf(hash);
+        int reusable = -1;
+        for (int i = 0; i < slotsPerStripe; i++) {
+            int slot = slotOffset(stripe, (start + i) % slotsPerStripe);
+            byte state = buffer.get(slot + STATE);
+            if (state == EMPTY) {
+                return reusable >= 0 ? reusable : slot;
+            } else if (state == USED && matches(slot, hash, id)) {
+                return slot;
+            } else if (reusable < 0 && (state == REMOVED || buffer.getLong(slot + EXPIRES_AT) <= now)) {
+                reusable = slot;
+            }
+        }
+        return reusable;
+    }
+
+    private int find(int stripe, int hash, byte[] id) {
+
+        int start = startOf(hash);
+        for (int i = 0; i < slotsPerStripe; i++) {
+            int slot = slotOffset(stripe, (start + i) % slotsPerStripe);
+            byte state = buffer.get(slot + STATE);
+            if (state == EMPTY) {
+                return -1;
+            } else if (state == USED && matches(slot, hash, id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int slot, int hash, byte[] id) {
+
+        if (buffer.getInt(slot + HASH) != hash || (buffer.getShort(slot + ID_LENGTH) & 0xFFFF) != id.length) {
+            return false;
+        }
+        int offset = slot + SLOT_HEADER_SIZE;
+        for (int i = 0; i < id.length; i++) {
+            if (buffer.get(offset + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(int slot, int hash, long expiresAt, byte[] id, byte[] principal) {
+
+        buffer.putInt(slot + HASH, hash);
+        buffer.putLong(slot + EXPIRES_AT, expiresAt);
+        buffer.putShort(slot + ID_LENGTH, (short) id.length);
+        buffer.putShort(slot + PRINCIPAL_LENGTH, (short) principal.length);
+        int offset = slot + SLOT_HEADER_SIZE;
+        for (byte b : id) {
+            buffer.put(offset++, b);
+        }
+        for (byte b : principal) {
+            buffer.put(offset++, b);
+        }
+        buffer.put(slot + STATE, USED);
+    }
+
+    private <T> T withStripe(int stripe, boolean shared, StripeAction<T> action)
+            throws CarbonSecurityServerException {
+
+        ReentrantLock lock = locks[stripe];
+        lock.lock();
+        // An interrupt while waiting for a file lock would close the channel, hence it is held back until done.
+        boolean interrupted = Thread.interrupted();
+        try (FileLock ignored = channel().lock(HEADER_SIZE + (long) stripe * slotsPerStripe * slotSize,
+                                               (long) slotsPerStripe * slotSize, shared)) {
+            return action.apply();
+        } catch (IOException e) {
+            throw new CarbonSecurityServerException("Error in locking the session store " + file + ".", e);
+        } finally {
+            lock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Reopens the channel if an interrupt closed it nonetheless. The mapping stays valid regardless.
+    private FileChannel channel() throws IOException {
+
+        FileChannel current = channel;
+        if (current.isOpen() || closed) {
+            return current;
+        }
+        synchronized (this) {
+            if (!channel.isOpen() && !closed) {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+    }
+
+    private int stripeOf(int hash) {
+        return Math.floorMod(mix(hash) >>> 16, stripeCount);
+    }
+
+    private int startOf(int hash) {
+        return Math.floorMod(mix(hash), slotsPerStripe);
+    }
+
+    private int slotOffset(int stripe, int index) {
+        return HEADER_SIZE + (stripe * slotsPerStripe + index) * slotSize;
+    }
+
+    private static byte[] digest(String sessionId) {
+        return idDigest.get().digest(sessionId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int hashOf(byte[] id) {
+        return (id[0] & 0xFF) << 24 | (id[1] & 0xFF) << 16 | (id[2] & 0xFF) << 8 | id[3] & 0xFF;
+    }
+
+    // Murmur3 finalizer, spreading the bits of the hash over the stripe and the slot.
+    private static int mix(int hash) {
+
+        int mixed = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+        mixed = (mixed ^ (mixed >>> 13)) * 0xC2B2AE35;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private static void checkLength(long length) throws IOException {
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Session store of " + length + " bytes exceeds the 2 GB mapping limit.");
+        }
+    }
+
+    private static Path getDefaultFile() {
+
+        String configured = System.getProperty(CarbonSecurityConstants.SESSION_STORE_FILE);
+        return configured != null ? Paths.get(configured) :
+               Paths.get(CarbonSecurityConstants.getCarbonHomeDirectory().toString() +
+                         CarbonSecurityConstants.SESSIONS_LOCATION);
+    }
+
+    /**
+     * Operation run while holding the lock of a stripe.
+     */
+    private interface StripeAction<T> {
+
+        T apply();
+    }
+}
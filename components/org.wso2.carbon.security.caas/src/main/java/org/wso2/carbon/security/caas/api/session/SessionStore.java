@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.session;
+
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+
+/**
+ * <p>
+ * Store of sessions, each holding a serialized principal under a session ID until it expires. Sessions are created
+ * and resolved through {@code Sessions}, which does the serialization; stores only keep bytes.
+ * </p>
+ * Implementations are selected with the {@code carbon.security.session.store} system property, which names one of the
+ * built in stores, {@code memory} (default) or {@code mapped}, or the class of a custom store with a public no
+ * argument constructor. Implementations must be thread safe, and are expected to remove expired sessions on their own.
+ *
+ * @since 1.0.1
+ */
+public interface SessionStore {
+
+    /**
+     * Stores a session, replacing any session with the same ID.
+     *
+     * @param sessionId session ID.
+     * @param principal serialized principal.
+     * @param expiresAt expiry time in milliseconds since the epoch.
+     * @throws CarbonSecurityServerException if the store is full or cannot be written.
+     */
+    void put(String sessionId, byte[] principal, long expiresAt) throws CarbonSecurityServerException;
+
+    /**
+     * Looks up a session.
+     *
+     * @param sessionId session ID.
+     * @param now current time in milliseconds since the epoch.
+     * @return serialized principal, or null if there is no such session or it has expired.
+     * @throws CarbonSecurityServerException if the store cannot be read.
+     */
+    byte[] get(String sessionId, long now) throws CarbonSecurityServerException;
+
+    /**
+     * Removes a session.
+     *
+     * @param sessionId session ID.
+     * @return true if the session existed.
+     * @throws CarbonSecurityServerException if the store cannot be written.
+     */
+    boolean remove(String sessionId) throws CarbonSecurityServerException;
+
+    /**
+     * Removes the expired sessions.
+     *
+     * @param now current time in milliseconds since the epoch.
+     * @return number of sessions removed.
+     * @throws CarbonSecurityServerException if the store cannot be written.
+     */
+    int removeExpired(long now) throws CarbonSecurityServerException;
+
+    /**
+     * Releases the resources of the store. Sessions of a store shared with other processes are kept.
+     */
+    void close();
+}
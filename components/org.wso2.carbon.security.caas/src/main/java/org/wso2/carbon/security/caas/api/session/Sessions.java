@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.codec.PrincipalCodec;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityClientException;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartitions;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Sessions of authenticated principals, kept in the {@code SessionStore} selected with
+ * {@code carbon.security.session.store}. A session is created once a login succeeds and resolved on later requests,
+ * possibly by other processes sharing a {@code mapped} store, without authenticating again.
+ * </p>
+ * <pre>
+ *     String sessionId = Sessions.getInstance().create(principal);
+ *     ...
+ *     CarbonPrincipal principal = Sessions.getInstance().get(sessionId);
+ * </pre>
+ * <p>
+ * Sessions expire {@code carbon.security.session.ttl} seconds (1800) after they are created. A session keeps the
+ * principal's tenant, username and permissions as they were at login, the password is never stored. Every lookup
+ * checks them against the user store of the tenant, which other nodes keep current through
+ * {@code ClusterInvalidation}, and ends the session once the user is deleted or its permissions changed. Session IDs
+ * are 256 bit random values. Stores remove expired sessions themselves.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class Sessions {
+
+    private static final Logger log = LoggerFactory.getLogger(Sessions.class);
+
+    private static final Sessions instance = new Sessions();
+
+    private static final int SESSION_ID_LENGTH = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final long ttl;
+
+    private volatile SessionStore sessionStore;
+
+    private Sessions() {
+        ttl = TimeUnit.SECONDS.toMillis(Long.getLong(CarbonSecurityConstants.SESSION_TTL,
+                                                     CarbonSecurityConstants.DEFAULT_SESSION_TTL));
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return Sessions.
+     */
+    public static Sessions getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a session of a principal.
+     *
+     * @param principal authenticated principal.
+     * @return session ID.
+     * @throws CarbonSecurityServerException if the session cannot be stored.
+     */
+    public String create(CarbonPrincipal principal) throws CarbonSecurityServerException {
+
+        byte[] id = new byte[SESSION_ID_LENGTH];
+        random.nextBytes(id);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+
+        getSessionStore().put(sessionId, PrincipalCodec.encode(principal), System.currentTimeMillis() + ttl);
+        return sessionId;
+    }
+
+    /**
+     * Resolves a session.
+     *
+     * @param sessionId session ID.
+     * @return principal of the session, or null if there is no such session, it has expired or its user was deleted
+     *         or had its permissions changed since the login.
+     * @throws CarbonSecurityServerException if the session store or the user store cannot be read.
+     */
+    public CarbonPrincipal get(String sessionId) throws CarbonSecurityServerException {
+
+        if (sessionId == null) {
+            return null;
+        }
+        SessionStore store = getSessionStore();
+        byte[] encoded = store.get(sessionId, System.currentTimeMillis());
+        if (encoded == null) {
+            return null;
+        }
+        CarbonPrincipal principal;
+        try {
+            principal = PrincipalCodec.decodePrincipal(ByteBuffer.wrap(encoded));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignored a corrupted session in the session store.");
+            return null;
+        }
+        if (!isCurrent(principal)) {
+            store.remove(sessionId);
+            return null;
+        }
+        return principal;
+    }
+
+    /**
+     * Ends a session, on logout.
+     *
+     * @param sessionId session ID.
+     * @return true if the session existed.
+     * @throws CarbonSecurityServerException if the session store cannot be written.
+     */
+    public boolean invalidate(String sessionId) throws CarbonSecurityServerException {
+        return sessionId != null && getSessionStore().remove(sessionId);
+    }
+
+    /**
+     * Replaces the session store, closing the current one.
+     *
+     * @param store session store.
+     */
+    public synchronized void setSessionStore(SessionStore store) {
+
+        SessionStore current = sessionStore;
+        sessionStore = store;
+        if (current != null && current != store) {
+            current.close();
+        }
+    }
+
+    /**
+     * Closes the session store. Sessions of a shared store are kept for the other processes.
+     */
+    public synchronized void close() {
+
+        if (sessionStore != null) {
+            sessionStore.close();
+            sessionStore = null;
+        }
+    }
+
+    // Whether the user of the principal still exists with the permissions it had at login.
+    private static boolean isCurrent(CarbonPrincipal principal) throws CarbonSecurityServerException {
+
+        UserStore userStore;
+        try {
+            userStore = TenantPartitions.getInstance().getPartition(principal.getTenant()).getUserStore();
+        } catch (CarbonSecurityClientException e) {
+            // The tenant no longer exists.
+            return false;
+        }
+        User user = CarbonSecurityUtils.getUserView(userStore, principal.getName());
+        return user != null && Objects.equals(user.getPermission(), principal.getUser().getPermission());
+    }
+
+    private SessionStore getSessionStore() throws CarbonSecurityServerException {
+
+        SessionStore store = sessionStore;
+        if (store != null) {
+            return store;
+        }
+        synchronized (this) {
+            if (sessionStore == null) {
+                sessionStore = createSessionStore(System.getProperty(CarbonSecurityConstants.SESSION_STORE,
+                                                                     CarbonSecurityConstants.IN_MEMORY_SESSION_STORE));
+            }
+            return sessionStore;
+        }
+    }
+
+    private static SessionStore createSessionStore(String name) throws CarbonSecurityServerException {
+
+        try {
+            if (CarbonSecurityConstants.IN_MEMORY_SESSION_STORE.equals(name)) {
+                return new InMemorySessionStore();
+            } else if (CarbonSecurityConstants.MAPPED_SESSION_STORE.equals(name)) {
+                return new MappedSessionStore();
+            }
+            return Class.forName(name).asSubclass(SessionStore.class).getConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            throw new CarbonSecurityServerException("Unable to create the session store " + name + ".", e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.tenant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.cache.AuthenticationCache;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.internal.TimingWheel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Partition of a single tenant: its user store and its authentication cache. The users are loaded on the first
+ * lookup and released by {@link TenantPartitions} once the tenant has been idle for a while or more heap is needed
+ * for other tenants.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class TenantPartition {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantPartition.class);
+
+    private final String tenant;
+    private final UserStore userStore;
+    private final AuthenticationCache authenticationCache;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+    // Estimated heap held per user, measured once after the first load as walking all the users is not cheap.
+    private volatile long userHeapSize = -1;
+    // Written under this. Checks whether the partition is idle, rescheduled rather than moved on every access.
+    private volatile TimingWheel.Timeout idleExpiry;
+
+    TenantPartition(String tenant, UserStore userStore, AuthenticationCache authenticationCache) {
+
+        this.tenant = tenant;
+        this.userStore = userStore;
+        this.authenticationCache = authenticationCache;
+    }
+
+    /**
+     * Returns the tenant of this partition.
+     *
+     * @return tenant, or null for the default partition.
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Returns the user store of this partition.
+     *
+     * @return UserStore.
+     */
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    /**
+     * Returns the authentication cache of this partition.
+     *
+     * @return AuthenticationCache.
+     */
+    public AuthenticationCache getAuthenticationCache() {
+        return authenticationCache;
+    }
+
+    /**
+     * Returns when this partition was last used.
+     *
+     * @return time in milliseconds.
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Returns whether the users of this partition are loaded.
+     *
+     * @return true if loaded.
+     */
+    public boolean isLoaded() {
+        return userStore.isLoaded();
+    }
+
+    /**
+     * Returns the estimated heap held by the users of this partition.
+     *
+     * @return size in bytes, 0 if the users are not loaded or kept off-heap.
+     */
+    public long getHeapEstimate() {
+
+        if (!userStore.isLoaded() || userStore.isOffHeap()) {
+            return 0;
+        }
+        try {
+            long perUser = userHeapSize;
+            int users = userStore.getUserCount();
+            if (perUser < 0) {
+                perUser = users == 0 ? 0 : userStore.getHeapSize() / users;
+                userHeapSize = perUser;
+            }
+            return perUser * users;
+        } catch (CarbonSecurityServerException e) {
+            return 0;
+        }
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    void expireWhenIdle(long idleTimeout) {
+
+        if (idleExpiry == null) {
+            synchronized (this) {
+                if (idleExpiry == null) {
+                    scheduleIdleExpiry(idleTimeout, idleTimeout);
+                }
+            }
+        }
+    }
+
+    void enforceQuota(long quota) {
+
+        if (getHeapEstimate() > quota) {
+            if (log.isDebugEnabled()) {
+                log.debug("Users of tenant {} exceed the heap quota of {} bytes, moving them off-heap.", tenant,
+                          quota);
+            }
+            userStore.moveOffHeap();
+        }
+    }
+
+    void unload() {
+
+        synchronized (this) {
+            if (idleExpiry != null) {
+                idleExpiry.cancel();
+                idleExpiry = null;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Unloading the users of tenant {}.", tenant);
+        }
+        userStore.unload();
+        authenticationCache.release();
+    }
+
+    private void scheduleIdleExpiry(long delay, long idleTimeout) {
+        idleExpiry = TimingWheel.getInstance().scheduleBlocking(() -> expireIfIdle(idleTimeout), delay,
+                                                                TimeUnit.MILLISECONDS);
+    }
+
+    private void expireIfIdle(long idleTimeout) {
+
+        synchronized (this) {
+            long idle = System.currentTimeMillis() - lastAccess;
+            if (idle < idleTimeout) {
+                scheduleIdleExpiry(idleTimeout - idle, idleTimeout);
+                return;
+            }
+            idleExpiry = null;
+        }
+        if (userStore.isLoaded()) {
+            unload();
+        }
+    }
+}
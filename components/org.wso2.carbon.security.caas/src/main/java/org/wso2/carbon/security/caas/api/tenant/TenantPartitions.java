@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.api.tenant;
+
+import org.wso2.carbon.security.caas.api.cache.AuthenticationCache;
+import org.wso2.carbon.security.caas.api.cluster.ClusterInvalidation;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityClientException;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityLoginException.CarbonSecurityErrorMessages;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.TimingWheel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Tenant partitions of the user store. Each tenant has its own users file,
+ * {@code conf/security/tenants/<tenant>/users.yaml}, its own journal and its own authentication cache, so that a
+ * change to the users of one tenant never invalidates the cached authentications of another. Logins without a tenant
+ * use the default partition, {@code conf/security/users.yaml}.
+ * </p>
+ * <p>
+ * Users of a tenant are loaded on its first login. Tenants idle for {@code carbon.security.tenant.idle.timeout}
+ * seconds are unloaded, tenants whose users take more than {@code carbon.security.tenant.heap.quota} bytes of heap are
+ * moved off-heap, and once all the tenants together take more than {@code carbon.security.tenants.heap.limit} bytes
+ * the least recently used ones are unloaded. The idle tenants are expired by the housekeeping {@code TimingWheel},
+ * which checks the quotas and the limit once a second. Both run on the worker thread of the wheel, as unloading waits
+ * for the pending changes of a tenant to be applied and moving it off-heap copies all its users.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public class TenantPartitions {
+
+    private static final TenantPartitions instance = new TenantPartitions();
+
+    private static final Pattern TENANT_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,254}");
+    private static final long HOUSEKEEPING_INTERVAL_SECONDS = 1;
+
+    private final TenantPartition defaultPartition =
+            new TenantPartition(null, UserStore.getInstance(), AuthenticationCache.getInstance());
+    private final ConcurrentMap<String, TenantPartition> partitions = new ConcurrentHashMap<>();
+    private final AtomicBoolean housekeeping = new AtomicBoolean();
+
+    private final long heapQuota;
+    private final long heapLimit;
+    private final long idleTimeout;
+
+    private TenantPartitions() {
+
+        heapQuota = Long.getLong(CarbonSecurityConstants.TENANT_HEAP_QUOTA,
+                                 CarbonSecurityConstants.DEFAULT_TENANT_HEAP_QUOTA);
+        heapLimit = Long.getLong(CarbonSecurityConstants.TENANTS_HEAP_LIMIT,
+                                 CarbonSecurityConstants.DEFAULT_TENANTS_HEAP_LIMIT);
+        idleTimeout = TimeUnit.SECONDS.toMillis(Long.getLong(CarbonSecurityConstants.TENANT_IDLE_TIMEOUT,
+                                                             CarbonSecurityConstants.DEFAULT_TENANT_IDLE_TIMEOUT));
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return TenantPartitions.
+     */
+    public static TenantPartitions getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the partition of a tenant.
+     *
+     * @param tenant tenant, or null for the default partition.
+     * @return TenantPartition.
+     * @throws CarbonSecurityClientException if the tenant does not exist.
+     */
+    public TenantPartition getPartition(String tenant) throws CarbonSecurityClientException {
+
+        if (tenant == null || tenant.isEmpty()) {
+            return defaultPartition;
+        }
+
+        TenantPartition partition = partitions.get(tenant);
+        if (partition == null) {
+            if (!TENANT_PATTERN.matcher(tenant).matches()) {
+                throw unknownTenant();
+            }
+            Path usersFile = Paths.get(CarbonSecurityConstants.getCarbonHomeDirectory().toString() +
+                                       CarbonSecurityConstants.TENANTS_LOCATION, tenant, "users.yaml");
+            if (!Files.isRegularFile(usersFile)) {
+                throw unknownTenant();
+            }
+            partition = partitions.computeIfAbsent(tenant, name -> {
+                UserStore userStore = new UserStore(usersFile);
+                userStore.setChangeListener((usernames, version) ->
+                                                    ClusterInvalidation.getInstance().publish(name, usernames,
+                                                                                              version));
+                return new TenantPartition(name, userStore, new AuthenticationCache(name, userStore));
+            });
+        }
+
+        partition.touch();
+        partition.expireWhenIdle(idleTimeout);
+        if (!housekeeping.get() && housekeeping.compareAndSet(false, true)) {
+            scheduleHousekeeping();
+        }
+        return partition;
+    }
+
+    /**
+     * Returns the partition of a tenant if its users are loaded, without loading them.
+     *
+     * @param tenant tenant, or null for the default partition.
+     * @return TenantPartition, or null if the users of the tenant are not loaded.
+     */
+    public TenantPartition getLoadedPartition(String tenant) {
+
+        TenantPartition partition = tenant == null ? defaultPartition : partitions.get(tenant);
+        return partition != null && partition.isLoaded() ? partition : null;
+    }
+
+    /**
+     * Calls an action for every partition whose users are loaded, the default partition included.
+     *
+     * @param action action.
+     */
+    public void forEachLoaded(Consumer<TenantPartition> action) {
+
+        if (defaultPartition.isLoaded()) {
+            action.accept(defaultPartition);
+        }
+        partitions.values().stream().filter(TenantPartition::isLoaded).forEach(action);
+    }
+
+    /**
+     * Returns the number of tenants whose users are loaded.
+     *
+     * @return loaded tenant count.
+     */
+    public int getLoadedTenantCount() {
+        return (int) partitions.values().stream().filter(TenantPartition::isLoaded).count();
+    }
+
+    /**
+     * Unloads the users of all the tenants.
+     */
+    public void unloadAll() {
+        partitions.values().forEach(TenantPartition::unload);
+    }
+
+    private void scheduleHousekeeping() {
+        TimingWheel.getInstance().scheduleBlocking(this::houseKeep, HOUSEKEEPING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void houseKeep() {
+
+        try {
+            enforceHeapLimits();
+        } finally {
+            scheduleHousekeeping();
+        }
+    }
+
+    private void enforceHeapLimits() {
+
+        List<TenantPartition> loaded = new ArrayList<>();
+        long total = 0;
+        for (TenantPartition partition : partitions.values()) {
+            if (!partition.isLoaded()) {
+                continue;
+            }
+            partition.enforceQuota(heapQuota);
+            total += partition.getHeapEstimate();
+            loaded.add(partition);
+        }
+
+        if (total > heapLimit && !loaded.isEmpty()) {
+            // The most recently used tenant is kept, whatever its size.
+            loaded.sort(Comparator.comparingLong(TenantPartition::getLastAccess));
+            for (TenantPartition partition : loaded.subList(0, loaded.size() - 1)) {
+                if (total <= heapLimit) {
+                    break;
+                }
+                total -= partition.getHeapEstimate();
+                partition.unload();
+            }
+        }
+    }
+
+    private static CarbonSecurityClientException unknownTenant() {
+        return new CarbonSecurityClientException(CarbonSecurityErrorMessages.UNKNOWN_TENANT.getCode(),
+                                                 CarbonSecurityErrorMessages.UNKNOWN_TENANT.getDescription());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.throttle;
+
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Admission control of logins against brute force and credential stuffing attacks. Failed logins are counted per
+ * user, that is per tenant and username, and per client address over a sliding window, and further attempts are
+ * rejected once either count reaches its limit, before the credential is looked up or verified.
+ * </p>
+ * <p>
+ * Counting is approximate and takes a fixed amount of memory, see {@code SlidingWindowCounter}, hence an attack
+ * spread over many usernames or addresses cannot exhaust the heap. Successful logins do not reset the counts, a
+ * user becomes admissible again once its failures age out of the window.
+ * </p>
+ * The limits are configured with the {@code carbon.security.throttle.*} system properties.
+ *
+ * @since 1.0.1
+ */
+public class LoginThrottle {
+
+    private static final int WIDTH = 1 << 15;
+    private static final int SLOTS = 5;
+
+    private static final LoginThrottle instance = new LoginThrottle();
+
+    private final boolean enabled;
+    private final int maxUsernameFailures;
+    private final int maxAddressFailures;
+    private final SlidingWindowCounter usernameFailures;
+    private final SlidingWindowCounter addressFailures;
+
+    private LoginThrottle() {
+
+        enabled = Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.THROTTLE_ENABLED, "true"));
+        maxUsernameFailures = Integer.getInteger(CarbonSecurityConstants.THROTTLE_MAX_USERNAME_FAILURES,
+                                                 CarbonSecurityConstants.DEFAULT_THROTTLE_MAX_USERNAME_FAILURES);
+        maxAddressFailures = Integer.getInteger(CarbonSecurityConstants.THROTTLE_MAX_ADDRESS_FAILURES,
+                                                CarbonSecurityConstants.DEFAULT_THROTTLE_MAX_ADDRESS_FAILURES);
+        long window = TimeUnit.SECONDS.toNanos(Long.getLong(CarbonSecurityConstants.THROTTLE_WINDOW,
+                                                            CarbonSecurityConstants.DEFAULT_THROTTLE_WINDOW));
+
+        usernameFailures = enabled ? new SlidingWindowCounter(WIDTH, SLOTS, window) : null;
+        addressFailures = enabled ? new SlidingWindowCounter(WIDTH, SLOTS, window) : null;
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return LoginThrottle.
+     */
+    public static LoginThrottle getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns whether logins are throttled.
+     *
+     * @return true if enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether a login attempt must be rejected.
+     *
+     * @param tenant tenant of the attempt, or null for the default user store.
+     * @param username username of the attempt.
+     * @param clientAddress address of the client, or null if unknown.
+     * @return true if too many logins failed for the user or the client address.
+     */
+    public boolean isThrottled(String tenant, String username, String clientAddress) {
+
+        if (!enabled) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        return usernameFailures.estimate(userKey(tenant, username), now) >= maxUsernameFailures ||
+               (clientAddress != null && addressFailures.estimate(clientAddress, now) >= maxAddressFailures);
+    }
+
+    /**
+     * Records a failed login attempt.
+     *
+     * @param tenant tenant of the attempt, or null for the default user store.
+     * @param username username of the attempt.
+     * @param clientAddress address of the client, or null if unknown.
+     */
+    public void recordFailure(String tenant, String username, String clientAddress) {
+
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        usernameFailures.increment(userKey(tenant, username), now);
+        if (clientAddress != null) {
+            addressFailures.increment(clientAddress, now);
+        }
+    }
+
+    private static String userKey(String tenant, String username) {
+
+        // Tenant names cannot contain the separator, so users of different tenants never share a key.
+        return tenant == null || tenant.isEmpty() ? username : tenant + '\u0000' + username;
+    }
+}
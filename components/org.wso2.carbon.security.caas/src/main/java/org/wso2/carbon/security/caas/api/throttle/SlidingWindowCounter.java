@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.throttle;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Approximate per key event counter over a sliding time window, with a fixed memory footprint regardless of the
+ * number of keys. The window is split into slots, each of which is a count-min sketch: every key maps to one cell per
+ * row and its count is the smallest of those cells. Counts may be overestimated when keys collide, never
+ * underestimated, apart from increments lost while a slot is recycled.
+ * </p>
+ * <p>
+ * Slots are recycled lazily, a block of cells at a time. Every block carries the time slot its cells were counted
+ * in, and is only cleared by the first increment falling into it in a later time slot, hence an increment clears at
+ * most a few cache lines rather than a whole slot.
+ * </p>
+ * <p>
+ * Keys are hashed with Murmur3 under seeds drawn at random for every counter, hence which keys collide cannot be
+ * predicted and keys crafted to collide with a victim's cannot be chosen up front.
+ * </p>
+ * Cells are updated with atomic increments, no locks are taken. Contention only arises between threads counting the
+ * same key, as different keys are spread over different cells.
+ *
+ * @since 1.0.1
+ */
+final class SlidingWindowCounter {
+
+    private static final int DEPTH = 4;
+    // Blocks of 16 cells, one cache line.
+    private static final int BLOCK_SHIFT = 4;
+
+    private final int seed1;
+    private final int seed2;
+    private final int mask;
+    private final int slotCount;
+    private final long slotNanos;
+    private final AtomicIntegerArray[] slots;
+    // Per slot, the time slot each block of cells was last counted in.
+    private final AtomicLongArray[] blockEpochs;
+
+    /**
+     * Creates a counter.
+     *
+     * @param width number of cells per row, rounded up to a power of two.
+     * @param slotCount number of slots the window is split into.
+     * @param windowNanos length of the window in nanoseconds.
+     */
+    SlidingWindowCounter(int width, int slotCount, long windowNanos) {
+
+        SecureRandom random = new SecureRandom();
+        this.seed1 = random.nextInt();
+        this.seed2 = random.nextInt();
+
+        int cells = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.mask = cells - 1;
+        this.slotCount = slotCount;
+        this.slotNanos = Math.max(1, windowNanos / slotCount);
+        this.slots = new AtomicIntegerArray[slotCount];
+        this.blockEpochs = new AtomicLongArray[slotCount];
+        int blocks = Math.max(1, (DEPTH * cells) >>> BLOCK_SHIFT);
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new AtomicIntegerArray(DEPTH * cells);
+            blockEpochs[i] = new AtomicLongArray(blocks);
+            for (int block = 0; block < blocks; block++) {
+                blockEpochs[i].set(block, Long.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Counts an event of the given key.
+     *
+     * @param key key.
+     * @param now current {@code System.nanoTime()}.
+     */
+    void increment(String key, long now) {
+
+        long epoch = now / slotNanos;
+        int slot = (int) Math.floorMod(epoch, (long) slotCount);
+        AtomicIntegerArray cells = slots[slot];
+        AtomicLongArray epochs = blockEpochs[slot];
+
+        int hash1 = hash(key, seed1);
+        int hash2 = hash(key, seed2);
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash1, hash2, row);
+            if (recycle(cells, epochs, index >>> BLOCK_SHIFT, epoch)) {
+                cells.incrementAndGet(index);
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of events of the given key within the window.
+     *
+     * @param key key.
+     * @param now current {@code System.nanoTime()}.
+     * @return event count.
+     */
+    int estimate(String key, long now) {
+
+        long epoch = now / slotNanos;
+        int hash1 = hash(key, seed1);
+        int hash2 = hash(key, seed2);
+        int total = 0;
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            AtomicIntegerArray cells = slots[slot];
+            AtomicLongArray epochs = blockEpochs[slot];
+            int count = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH && count > 0; row++) {
+                int index = index(hash1, hash2, row);
+                // Every increment of the key refreshes all of its blocks, a block left behind means no events.
+                long age = epoch - epochs.get(index >>> BLOCK_SHIFT);
+                count = age < 0 || age >= slotCount ? 0 : Math.min(count, cells.get(index));
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    // Brings a block of cells to the given time slot, clearing the counts of an expired one. Returns false if the
+    // block already counts a later time slot, for an increment which arrived late.
+    private static boolean recycle(AtomicIntegerArray cells, AtomicLongArray epochs, int block, long epoch) {
+
+        long blockEpoch = epochs.get(block);
+        while (blockEpoch < epoch) {
+            if (epochs.compareAndSet(block, blockEpoch, epoch)) {
+                int start = block << BLOCK_SHIFT;
+                int end = Math.min(cells.length(), start + (1 << BLOCK_SHIFT));
+                for (int i = start; i < end; i++) {
+                    cells.lazySet(i, 0);
+                }
+                return true;
+            }
+            blockEpoch = epochs.get(block);
+        }
+        return blockEpoch == epoch;
+    }
+
+    private int index(int hash1, int hash2, int row) {
+
+        // Rows combine two independent hashes, which keeps them independent without hashing the key once per row.
+        return row * (mask + 1) + (fmix(hash1 + row * hash2) & mask);
+    }
+
+    private static int hash(String key, int seed) {
+
+        // Murmur3 over the UTF-16 code units of the key, two to a block.
+        int h = seed;
+        int length = key.length();
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            h = mix(h, key.charAt(i) | (key.charAt(i + 1) << 16));
+            h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+        }
+        if (i < length) {
+            h = mix(h, key.charAt(i));
+        }
+        return fmix(h ^ (length << 1));
+    }
+
+    private static int mix(int h, int block) {
+
+        int k = block * 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15) * 0x1B873593;
+        return h ^ k;
+    }
+
+    private static int fmix(int h) {
+
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
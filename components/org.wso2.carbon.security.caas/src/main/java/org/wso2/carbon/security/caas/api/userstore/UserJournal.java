@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.userstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Append-only journal of user store mutations. Every record carries its length and a CRC-32 of its content, so a
+ * record torn by a crash is detected on replay and cut off, together with anything after it.
+ * </p>
+ * <pre>
+ *     int     length of the content
+ *     int     CRC-32 of the content
+ *     content byte operation, then per field an int byte length, -1 for null, followed by the UTF-8 bytes
+ * </pre>
+ * <p>
+ * Appending only writes to the file; durability is obtained by {@link #sync(long)}, which makes a single
+ * {@code fsync} cover every record appended before it, so concurrent writers share the cost of a sync.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+final class UserJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(UserJournal.class);
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path file;
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private long appended;
+    private volatile long synced;
+    private int records;
+
+    UserJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Replays the journal and opens it for appending, if not open yet. A torn record at the end of the journal is
+     * removed.
+     *
+     * @param visitor visitor of the records, in the order they were appended.
+     * @throws IOException if the journal cannot be read.
+     */
+    synchronized void open(Visitor visitor) throws IOException {
+
+        if (channel == null) {
+            if (!Files.exists(file)) {
+                // Created on the first append.
+                records = 0;
+                return;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        long valid = 0;
+        records = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (true) {
+            header.clear();
+            if (readFully(header, valid) < RECORD_HEADER_SIZE) {
+                break;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                break;
+            }
+            ByteBuffer content = ByteBuffer.allocate(length);
+            if (readFully(content, valid + RECORD_HEADER_SIZE) < length) {
+                break;
+            }
+            crc.reset();
+            crc.update(content.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+
+            content.flip();
+            byte operation = content.get();
+            String[] fields = new String[3];
+            for (int i = 0; i < fields.length && content.remaining() >= 4; i++) {
+                fields[i] = readString(content);
+            }
+            visitor.visit(operation, fields[0], fields[1], fields[2]);
+            valid += RECORD_HEADER_SIZE + length;
+            records++;
+        }
+
+        if (valid < channel.size()) {
+            log.warn("Discarding " + (channel.size() - valid) + " bytes of incomplete records at the end of " + file);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+    }
+
+    /**
+     * Appends a record, without waiting for it to be synced.
+     *
+     * @param operation operation.
+     * @param fields up to three fields of the operation, each may be null.
+     * @return sequence number of the record, to be passed to {@link #sync(long)}.
+     * @throws IOException if the record cannot be written.
+     */
+    synchronized long append(byte operation, String... fields) throws IOException {
+
+        byte[][] encoded = new byte[fields.length][];
+        int length = 1;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i] == null ? null : fields[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("User store journal record of " + length + " bytes exceeds the maximum size.");
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(operation);
+        for (byte[] field : encoded) {
+            record.putInt(field == null ? -1 : field.length);
+            if (field != null) {
+                record.put(field);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue());
+
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+        }
+        long start = channel.position();
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            // Remove a partially written record, which would hide the records appended after it on replay.
+            channel.truncate(start);
+            channel.position(start);
+            throw e;
+        }
+        records++;
+        return ++appended;
+    }
+
+    /**
+     * Waits until a record is durable. A sync in progress or the next one covers every record appended before it,
+     * hence concurrent callers are batched into as few syncs as possible.
+     *
+     * @param sequence sequence number returned by {@link #append(byte, String...)}.
+     * @throws IOException if the journal cannot be synced.
+     */
+    void sync(long sequence) throws IOException {
+
+        if (synced >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = appended;
+                current = channel;
+            }
+            if (current != null) {
+                current.force(false);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * Empties the journal, once its records are covered by a snapshot.
+     *
+     * @throws IOException if the journal cannot be truncated.
+     */
+    synchronized void reset() throws IOException {
+
+        if (channel != null) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+        records = 0;
+        synced = appended;
+    }
+
+    /**
+     * Syncs and closes the journal, then atomically renames it over another journal file, so that a crash leaves
+     * either of the two in place, never a partially written one.
+     *
+     * @param target journal file to replace.
+     * @throws IOException if the journal cannot be synced or renamed.
+     */
+    synchronized void moveTo(Path target) throws IOException {
+
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+            channel = null;
+        }
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Persist the rename as well. Not supported on all platforms, where the rename is left to the file system.
+        try (FileChannel directory = FileChannel.open(target.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to sync directory of " + target, e);
+        }
+    }
+
+    /**
+     * Returns the number of records in the journal.
+     *
+     * @return record count.
+     */
+    synchronized int size() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private static String readString(ByteBuffer content) {
+
+        int length = content.getInt();
+        if (length < 0 || length > content.remaining()) {
+            return null;
+        }
+        String value = new String(content.array(), content.position(), length, StandardCharsets.UTF_8);
+        content.position(content.position() + length);
+        return value;
+    }
+
+    /**
+     * Visitor of replayed records.
+     */
+    interface Visitor {
+
+        void visit(byte operation, String first, String second, String third);
+    }
+}
@@ -0,0 +1,755 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.api.userstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityClientException;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityLoginException.CarbonSecurityErrorMessages;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.TimingWheel;
+import org.wso2.carbon.security.caas.internal.UserIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * User store of the carbon security module, backed by the users file. Lookups read an immutable {@code UserIndex},
+ * published atomically, so they never block and always see a consistent point-in-time view of the users, however
+ * many changes are being made.
+ * </p>
+ * <p>
+ * Changes are queued and applied by a single applier thread, which takes all the queued changes as one batch,
+ * appends them to a journal next to the users file, {@code users.journal}, syncs the journal once for the whole batch
+ * and then publishes a new index derived from the previous one. A change returns once it is durable and visible.
+ * </p>
+ * <p>
+ * Every {@code carbon.security.userstore.snapshot.interval} changes the journal is compacted into a snapshot,
+ * {@code users.snapshot}, holding the latest state of every user changed since the users file was written, and the
+ * journal emptied. The snapshot is written to a temporary file and atomically renamed, while the users file itself is
+ * only read, hence it stays as its author wrote it. Loading replays the snapshot and then the journal on top of the
+ * users file. Records carry the resulting state of a user rather than a delta, so journal records replayed on top of
+ * a snapshot which already covers them, after a crash between writing the snapshot and emptying the journal, change
+ * nothing.
+ * </p>
+ * Edits of the users file by other means are picked up with the snapshot and the journal replayed on top, hence
+ * changes made through the user store take precedence over them. The users file is polled
+ * for them every {@code carbon.security.userstore.poll.interval} seconds while loaded, lookups never touch the file.
+ *
+ * @since 1.0.1
+ */
+public class UserStore {
+
+    private static final Logger log = LoggerFactory.getLogger(UserStore.class);
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SET_PERMISSION = 3;
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long IDLE_TIMEOUT_MILLIS = 60000;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final Path usersFile;
+    private final Path snapshotFile;
+    private final UserJournal journal;
+    private final int snapshotInterval;
+    private final long pollInterval;
+    private final BlockingQueue<Mutation> mutations = new LinkedBlockingQueue<>();
+    // Held while loading the index and while applying a batch, never by lookups of a loaded index.
+    private final Object lock = new Object();
+    // Guarded by lock. Usernames of the users changed since the users file was read, which a snapshot covers.
+    private final Set<String> changed = new HashSet<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile UserIndex index;
+    private volatile long snapshotModified;
+    // Set once the users file is found modified since it was loaded, so that lookups need not check it themselves.
+    private volatile boolean stale;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile boolean offHeap;
+    // The applier thread, which exits once it is no longer the current one and has applied the queued changes.
+    private volatile Thread applier;
+    private volatile ChangeListener changeListener;
+
+    /**
+     * Creates a user store. Nothing is read until the first lookup or change.
+     *
+     * @param usersFile users file.
+     */
+    public UserStore(Path usersFile) {
+
+        this.usersFile = usersFile;
+        String name = usersFile.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        String baseName = extension > 0 ? name.substring(0, extension) : name;
+        this.snapshotFile = usersFile.resolveSibling(baseName + ".snapshot");
+        this.journal = new UserJournal(usersFile.resolveSibling(baseName + ".journal"));
+        this.snapshotInterval = Math.max(1, Integer.getInteger(
+                CarbonSecurityConstants.USERSTORE_SNAPSHOT_INTERVAL,
+                CarbonSecurityConstants.DEFAULT_USERSTORE_SNAPSHOT_INTERVAL));
+        this.offHeap = Boolean.getBoolean(CarbonSecurityConstants.USERSTORE_OFF_HEAP);
+        this.pollInterval = Math.max(1, Long.getLong(CarbonSecurityConstants.USERSTORE_POLL_INTERVAL,
+                                                     CarbonSecurityConstants.DEFAULT_USERSTORE_POLL_INTERVAL));
+    }
+
+    /**
+     * Get the user store of the users file under {@code carbon.home}.
+     *
+     * @return UserStore.
+     */
+    public static UserStore getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Looks up a user. Changes to the returned user are not reflected in the user store, see
+     * {@link #updateUser(User)}.
+     *
+     * @param username username.
+     * @return copy of the user, or null if there is no such user.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public User getUser(String username) throws CarbonSecurityServerException {
+
+        User user = getIndex().get(username);
+        return user == null ? null : copyOf(user, user.getPermission());
+    }
+
+    /**
+     * Looks up a read-only view of a user, as held by the user store, for checking a credential with
+     * {@link User#matchesCredential(byte[])} or the permissions of the user without copying or decoding them. The
+     * setters of the view throw {@code UnsupportedOperationException}.
+     *
+     * @param username username.
+     * @return read-only view of the user, or null if there is no such user.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public User getUserView(String username) throws CarbonSecurityServerException {
+        return getIndex().get(username);
+    }
+
+    /**
+     * Returns all the users, as of a single point in time.
+     *
+     * @return copies of the users.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public List<User> getUsers() throws CarbonSecurityServerException {
+
+        List<User> users = getIndex().getUsers();
+        users.replaceAll(user -> copyOf(user, user.getPermission()));
+        return users;
+    }
+
+    /**
+     * Returns the number of users.
+     *
+     * @return user count.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public int getUserCount() throws CarbonSecurityServerException {
+        return getIndex().size();
+    }
+
+    /**
+     * Estimates the heap held by the users, walking all of them. Users kept off-heap are not included.
+     *
+     * @return size in bytes.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public long getHeapSize() throws CarbonSecurityServerException {
+        return getIndex().getHeapSize();
+    }
+
+    /**
+     * Returns a version stamp of the user store, which changes whenever users change.
+     *
+     * @return user store version.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public long getVersion() throws CarbonSecurityServerException {
+
+        getIndex();
+        return version.get();
+    }
+
+    /**
+     * Adds a user.
+     *
+     * @param user user to add.
+     * @throws CarbonSecurityClientException if a user with the same username exists.
+     * @throws CarbonSecurityServerException if the change cannot be persisted.
+     */
+    public void addUser(User user) throws CarbonSecurityClientException, CarbonSecurityServerException {
+        submit(new Mutation(PUT, true, username(user), user.getPassword(), user.getPermission()));
+    }
+
+    /**
+     * Replaces the password and permissions of a user.
+     *
+     * @param user user with the new password and permissions.
+     * @throws CarbonSecurityClientException if there is no user with the username.
+     * @throws CarbonSecurityServerException if the change cannot be persisted.
+     */
+    public void updateUser(User user) throws CarbonSecurityClientException, CarbonSecurityServerException {
+        submit(new Mutation(PUT, false, username(user), user.getPassword(), user.getPermission()));
+    }
+
+    /**
+     * Deletes a user.
+     *
+     * @param username username.
+     * @throws CarbonSecurityClientException if there is no such user.
+     * @throws CarbonSecurityServerException if the change cannot be persisted.
+     */
+    public void deleteUser(String username) throws CarbonSecurityClientException, CarbonSecurityServerException {
+        submit(new Mutation(DELETE, false, username));
+    }
+
+    /**
+     * Replaces the permissions granted to a user.
+     *
+     * @param username username.
+     * @param permission comma separated permission names.
+     * @throws CarbonSecurityClientException if there is no such user.
+     * @throws CarbonSecurityServerException if the change cannot be persisted.
+     */
+    public void setPermission(String username, String permission)
+            throws CarbonSecurityClientException, CarbonSecurityServerException {
+        submit(new Mutation(SET_PERMISSION, false, username, permission));
+    }
+
+    /**
+     * Writes a snapshot of the users changed since the users file was written and empties the journal. The users
+     * file is left untouched.
+     *
+     * @throws CarbonSecurityServerException if the snapshot cannot be written.
+     */
+    public void snapshot() throws CarbonSecurityServerException {
+
+        synchronized (lock) {
+            UserIndex current = getIndex();
+            try {
+                writeSnapshot(current);
+                journal.reset();
+            } catch (IOException e) {
+                throw writeFailure(e);
+            }
+            index = current.compact();
+        }
+    }
+
+    /**
+     * Returns whether the users are kept off-heap.
+     *
+     * @return true if off-heap.
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Moves the users off-heap, where they are kept from then on, reloads included.
+     */
+    public void moveOffHeap() {
+
+        synchronized (lock) {
+            offHeap = true;
+            UserIndex current = index;
+            if (current != null && !current.isOffHeap()) {
+                index = current.toOffHeap();
+            }
+        }
+    }
+
+    /**
+     * Releases the users and the journal, after applying the queued changes. They are loaded again on the next
+     * lookup or change.
+     */
+    public void unload() {
+
+        stop();
+        synchronized (lock) {
+            index = null;
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the user store journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Drops the loaded users, so that the next lookup reads the users file and the journal again. Used when they
+     * are shared with another node which changed them.
+     */
+    public void reload() {
+
+        synchronized (lock) {
+            if (index == null) {
+                return;
+            }
+            index = null;
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the user store journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the given users again from the snapshot and the journal, leaving the other loaded users as they are. Used
+     * when they are shared with another node which changed these users. The version is left unchanged, so that the
+     * cached authentications of the other users are kept. All the users are dropped instead, as by {@link #reload()},
+     * if one of them has no record in either, since its state is then only held by the users file.
+     *
+     * @param usernames usernames of the changed users.
+     */
+    public void reload(Collection<String> usernames) {
+
+        synchronized (lock) {
+            UserIndex current = index;
+            if (current == null) {
+                return;
+            }
+            Set<String> reloaded = new HashSet<>(usernames);
+            Set<String> found = new HashSet<>();
+            UserIndex.Editor editor = current.edit();
+            UserJournal.Visitor replay = (operation, username, second, third) -> {
+                if (reloaded.contains(username)) {
+                    apply(editor, operation, username, second, third);
+                    found.add(username);
+                }
+            };
+            try {
+                // Closed first, so that reopening positions it after the records appended by the other node.
+                journal.close();
+                if (Files.exists(snapshotFile)) {
+                    try (UserJournal snapshot = new UserJournal(snapshotFile)) {
+                        snapshot.open(replay);
+                    }
+                }
+                journal.open(replay);
+            } catch (IOException e) {
+                log.warn("Unable to reload the changed users, reloading all the users.", e);
+                found.clear();
+            }
+            if (found.size() < reloaded.size()) {
+                reload();
+                return;
+            }
+            changed.addAll(reloaded);
+            index = editor.publish();
+        }
+    }
+
+    /**
+     * Sets the listener told about every batch of changes once it is visible.
+     *
+     * @param changeListener listener, or null for none.
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Returns whether the users are loaded.
+     *
+     * @return true if loaded.
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * Stops the applier thread after applying the queued changes. A later change starts it again. The applier thread
+     * also stops by itself after being idle for a minute.
+     */
+    public void stop() {
+
+        Thread stopped;
+        synchronized (this) {
+            stopped = applier;
+            applier = null;
+        }
+        if (stopped != null) {
+            try {
+                stopped.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private UserIndex getIndex() throws CarbonSecurityServerException {
+
+        UserIndex current = index;
+        if (current != null && !stale) {
+            return current;
+        }
+
+        synchronized (lock) {
+            // Cleared before the check, so that a modification made after it is flagged again by the next poll.
+            stale = false;
+            long modified = lastModified();
+            if (index == null || modified != snapshotModified) {
+                UserIndex.Editor editor = UserIndex.load(usersFile, offHeap).edit();
+                changed.clear();
+                UserJournal.Visitor replay = (operation, username, second, third) -> {
+                    apply(editor, operation, username, second, third);
+                    if (username != null) {
+                        changed.add(username);
+                    }
+                };
+                try {
+                    if (Files.exists(snapshotFile)) {
+                        try (UserJournal snapshot = new UserJournal(snapshotFile)) {
+                            snapshot.open(replay);
+                        }
+                    }
+                    journal.open(replay);
+                } catch (IOException e) {
+                    throw new CarbonSecurityServerException("Error in replaying the user store journal.", e);
+                }
+                index = editor.publish();
+                snapshotModified = modified;
+                version.incrementAndGet();
+                startPolling();
+            }
+            return index;
+        }
+    }
+
+    private void startPolling() {
+
+        if (polling.compareAndSet(false, true)) {
+            TimingWheel.getInstance().scheduleBlocking(this::poll, pollInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    // Only stats the users file, reloading is left to the next lookup so that unused users are never read.
+    private void poll() {
+
+        if (index != null && lastModified() != snapshotModified) {
+            stale = true;
+        }
+        polling.set(false);
+        // Polling stops once the users are unloaded, and is started again by the next load.
+        if (index != null) {
+            startPolling();
+        }
+    }
+
+    private void submit(Mutation mutation) throws CarbonSecurityClientException, CarbonSecurityServerException {
+
+        mutations.add(mutation);
+        startApplier();
+        try {
+            mutation.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CarbonSecurityServerException("Interrupted while waiting for a user store change, which may " +
+                                                    "still be applied.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CarbonSecurityClientException) {
+                throw (CarbonSecurityClientException) cause;
+            } else if (cause instanceof CarbonSecurityServerException) {
+                throw (CarbonSecurityServerException) cause;
+            }
+            throw new CarbonSecurityServerException("Error in applying a user store change.", cause);
+        }
+    }
+
+    private synchronized void startApplier() {
+
+        if (applier == null) {
+            Thread thread = new Thread(this::applyMutations, "carbon-security-userstore-applier");
+            thread.setDaemon(true);
+            applier = thread;
+            thread.start();
+        }
+    }
+
+    private void applyMutations() {
+
+        Thread self = Thread.currentThread();
+        List<Mutation> batch = new ArrayList<>(BATCH_SIZE);
+        long idleSince = System.currentTimeMillis();
+
+        // Keep applying after a stop until the queue is empty, so that no submitted change is left waiting.
+        while (applier == self || !mutations.isEmpty()) {
+            try {
+                // Polled rather than interrupted on stop, an interrupt would close the journal channel.
+                Mutation first = mutations.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (System.currentTimeMillis() - idleSince > IDLE_TIMEOUT_MILLIS && stopIdle(self)) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            mutations.drainTo(batch, BATCH_SIZE - 1);
+            try {
+                applyBatch(batch);
+            } catch (RuntimeException e) {
+                batch.forEach(mutation -> mutation.done.completeExceptionally(e));
+            }
+            batch.clear();
+            idleSince = System.currentTimeMillis();
+        }
+    }
+
+    // A change queued before the check is applied by this thread, one queued after starts a new applier.
+    private synchronized boolean stopIdle(Thread self) {
+
+        if (applier == self && mutations.isEmpty()) {
+            applier = null;
+            return true;
+        }
+        return false;
+    }
+
+    private void applyBatch(List<Mutation> batch) {
+
+        synchronized (lock) {
+            UserIndex.Editor editor;
+            try {
+                editor = getIndex().edit();
+            } catch (CarbonSecurityServerException e) {
+                batch.forEach(mutation -> mutation.done.completeExceptionally(e));
+                return;
+            }
+
+            List<Mutation> applied = new ArrayList<>(batch.size());
+            long sequence = 0;
+            for (Mutation mutation : batch) {
+                User existing = editor.get(mutation.field(0));
+                if (mutation.create && existing != null) {
+                    mutation.done.completeExceptionally(
+                            clientException(CarbonSecurityErrorMessages.USER_ALREADY_EXISTS));
+                } else if (!mutation.create && existing == null) {
+                    mutation.done.completeExceptionally(clientException(CarbonSecurityErrorMessages.USER_NOT_FOUND));
+                } else {
+                    try {
+                        sequence = journal.append(mutation.operation, mutation.fields);
+                    } catch (IOException e) {
+                        mutation.done.completeExceptionally(writeFailure(e));
+                        continue;
+                    }
+                    apply(editor, mutation.operation, mutation.field(0), mutation.field(1), mutation.field(2));
+                    changed.add(mutation.field(0));
+                    applied.add(mutation);
+                }
+            }
+            if (applied.isEmpty()) {
+                return;
+            }
+
+            try {
+                journal.sync(sequence);
+            } catch (IOException e) {
+                // Whether the batch reached the disk is unknown, the next lookup reloads whatever it holds.
+                index = null;
+                CarbonSecurityServerException failure = writeFailure(e);
+                applied.forEach(mutation -> mutation.done.completeExceptionally(failure));
+                return;
+            }
+            index = editor.publish();
+            long published = version.incrementAndGet();
+            applied.forEach(mutation -> mutation.done.complete(null));
+            notifyChange(applied, published);
+
+            if (journal.size() >= snapshotInterval) {
+                try {
+                    snapshot();
+                } catch (CarbonSecurityServerException e) {
+                    // The changes are in the journal, the snapshot is retried after the next batch.
+                    log.error("Unable to write a snapshot of the user store.", e);
+                }
+            }
+        }
+    }
+
+    // Writes the latest state of every changed user, removals included, in place of the previous snapshot.
+    private void writeSnapshot(UserIndex current) throws IOException {
+
+        if (changed.isEmpty()) {
+            Files.deleteIfExists(snapshotFile);
+            return;
+        }
+
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        Files.deleteIfExists(temporaryFile);
+        try (UserJournal snapshot = new UserJournal(temporaryFile)) {
+            for (String username : changed) {
+                User user = current.get(username);
+                if (user == null) {
+                    snapshot.append(DELETE, username);
+                } else {
+                    snapshot.append(PUT, username, user.getPassword(), user.getPermission());
+                }
+            }
+            snapshot.moveTo(snapshotFile);
+        }
+    }
+
+    private void notifyChange(List<Mutation> applied, long published) {
+
+        ChangeListener listener = changeListener;
+        if (listener == null) {
+            return;
+        }
+        List<String> usernames = new ArrayList<>(applied.size());
+        applied.forEach(mutation -> usernames.add(mutation.field(0)));
+        try {
+            listener.usersChanged(usernames, published);
+        } catch (RuntimeException e) {
+            log.error("Error in notifying a user store change.", e);
+        }
+    }
+
+    private static void apply(UserIndex.Editor users, byte operation, String username, String second,
+                              String third) {
+
+        if (username == null) {
+            return;
+        }
+        switch (operation) {
+            case PUT:
+                User user = new User();
+                user.setUsername(username);
+                user.setPassword(second);
+                user.setPermission(third);
+                users.put(user);
+                break;
+            case DELETE:
+                users.remove(username);
+                break;
+            case SET_PERMISSION:
+                User existing = users.get(username);
+                if (existing != null) {
+                    users.put(copyOf(existing, second));
+                }
+                break;
+            default:
+                log.warn("Ignoring unknown user store journal operation " + operation + ".");
+        }
+    }
+
+    private long lastModified() {
+
+        try {
+            return Files.getLastModifiedTime(usersFile).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String username(User user) {
+
+        if (user.getUsername() == null) {
+            throw new IllegalArgumentException("Username cannot be null.");
+        }
+        return user.getUsername();
+    }
+
+    private static User copyOf(User user, String permission) {
+
+        User copy = new User();
+        copy.setUsername(user.getUsername());
+        copy.setPassword(user.getPassword());
+        copy.setPermission(permission);
+        return copy;
+    }
+
+    private static CarbonSecurityClientException clientException(CarbonSecurityErrorMessages error) {
+        return new CarbonSecurityClientException(error.getCode(), error.getDescription());
+    }
+
+    private static CarbonSecurityServerException writeFailure(IOException e) {
+        return new CarbonSecurityServerException(CarbonSecurityErrorMessages.USER_STORE_WRITE_FAILURE.getCode(),
+                                                 CarbonSecurityErrorMessages.USER_STORE_WRITE_FAILURE
+                                                         .getDescription(), e);
+    }
+
+    /**
+     * Queued change, carrying the fields of its journal record.
+     */
+    private static final class Mutation {
+
+        private final byte operation;
+        // Whether the user must not exist yet, rather than must exist.
+        private final boolean create;
+        private final String[] fields;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Mutation(byte operation, boolean create, String... fields) {
+
+            this.operation = operation;
+            this.create = create;
+            this.fields = fields;
+        }
+
+        String field(int index) {
+            return index < fields.length ? fields[index] : null;
+        }
+    }
+
+    /**
+     * Listener of user store changes. Called on the applier thread, hence must not block.
+     */
+    public interface ChangeListener {
+
+        /**
+         * Called after a batch of changes is durable and visible.
+         *
+         * @param usernames usernames of the changed users, in the order the changes were applied.
+         * @param version user store version after the changes.
+         */
+        void usersChanged(List<String> usernames, long version);
+    }
+
+    private static final class Holder {
+
+        private static final UserStore INSTANCE = new UserStore(Paths.get(
+                CarbonSecurityConstants.getCarbonHomeDirectory().toString() +
+                CarbonSecurityConstants.USERS_CONFIG_LOCATION));
+    }
+}
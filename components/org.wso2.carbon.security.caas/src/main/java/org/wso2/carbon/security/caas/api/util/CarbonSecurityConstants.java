@@ -46,6 +46,96 @@ public final class CarbonSecurityConstants {
     public static final String PERMISSION_CONFIG_FILE = "permissions.yml";
     public static final String USERS_CONFIG_LOCATION = "/conf/security/users.yaml";
 
+    // Authentication cache
+    public static final String AUTHENTICATION_CACHE_NAME = "carbon-security-authentication-cache";
+    public static final String AUTHENTICATION_CACHE_ENABLED = "carbon.security.authentication.cache.enabled";
+    public static final String AUTHENTICATION_CACHE_TTL = "carbon.security.authentication.cache.ttl";
+    public static final long DEFAULT_AUTHENTICATION_CACHE_TTL = 300;
+
+    // Metrics
+    public static final String METRICS_ENABLED = "carbon.security.metrics.enabled";
+    public static final String METRICS_MBEAN_NAME = "org.wso2.carbon.security:type=SecurityMetrics";
+
+    // Warm-up
+    public static final String WARMUP_ENABLED = "carbon.security.warmup.enabled";
+    public static final String WARMUP_LOGINS = "carbon.security.warmup.logins";
+    public static final String WARMUP_APPLICATION = "carbon.security.warmup.application";
+    public static final String DEFAULT_WARMUP_APPLICATION = "CarbonSecurityConfig";
+
+    // Coalescing of concurrent logins with the same credential
+    public static final String LOGIN_COALESCING_ENABLED = "carbon.security.login.coalescing.enabled";
+
+    // Login throttling
+    public static final String THROTTLE_ENABLED = "carbon.security.throttle.enabled";
+    public static final String THROTTLE_WINDOW = "carbon.security.throttle.window";
+    public static final String THROTTLE_MAX_USERNAME_FAILURES = "carbon.security.throttle.username.max.failures";
+    public static final String THROTTLE_MAX_ADDRESS_FAILURES = "carbon.security.throttle.address.max.failures";
+    public static final long DEFAULT_THROTTLE_WINDOW = 300;
+    public static final int DEFAULT_THROTTLE_MAX_USERNAME_FAILURES = 10;
+    public static final int DEFAULT_THROTTLE_MAX_ADDRESS_FAILURES = 100;
+
+    // Audit log
+    public static final String AUDIT_ENABLED = "carbon.security.audit.enabled";
+    public static final String AUDIT_FILE = "carbon.security.audit.file";
+    public static final String AUDIT_FORMAT = "carbon.security.audit.format";
+    public static final String AUDIT_BUFFER_SIZE = "carbon.security.audit.buffer.size";
+    public static final String AUDIT_OVERFLOW_POLICY = "carbon.security.audit.overflow.policy";
+    public static final String AUDIT_SAMPLE_RATE = "carbon.security.audit.sample.rate";
+    public static final String AUDIT_ROTATION_SIZE = "carbon.security.audit.rotation.size";
+    public static final String AUDIT_ROTATION_INTERVAL = "carbon.security.audit.rotation.interval";
+    public static final String DEFAULT_AUDIT_FILE = "logs/audit/carbon-security-audit.log";
+    public static final String DEFAULT_BINARY_AUDIT_FILE = "logs/audit/carbon-security-audit.bin";
+    public static final int DEFAULT_AUDIT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_AUDIT_SAMPLE_RATE = 10;
+    public static final long DEFAULT_AUDIT_ROTATION_SIZE = 100L * 1024 * 1024;
+    public static final long DEFAULT_AUDIT_ROTATION_INTERVAL = 86400;
+
+    // User store journal
+    public static final String USERSTORE_SNAPSHOT_INTERVAL = "carbon.security.userstore.snapshot.interval";
+    public static final int DEFAULT_USERSTORE_SNAPSHOT_INTERVAL = 10000;
+    public static final String USERSTORE_OFF_HEAP = "carbon.security.userstore.offheap";
+    public static final String USERSTORE_POLL_INTERVAL = "carbon.security.userstore.poll.interval";
+    public static final long DEFAULT_USERSTORE_POLL_INTERVAL = 1;
+
+    // Property of the CarbonMessage holding the client address, set by the carbon transports
+    public static final String CLIENT_ADDRESS_PROPERTY = "REMOTE_ADDRESS";
+
+    // Tenant partitions
+    public static final String TENANTS_LOCATION = "/conf/security/tenants";
+    public static final String TENANT_PROPERTY = "TENANT_DOMAIN";
+    public static final String TENANT_OPTION = "tenant";
+    public static final String TENANT_HEAP_QUOTA = "carbon.security.tenant.heap.quota";
+    public static final long DEFAULT_TENANT_HEAP_QUOTA = 64L * 1024 * 1024;
+    public static final String TENANTS_HEAP_LIMIT = "carbon.security.tenants.heap.limit";
+    public static final long DEFAULT_TENANTS_HEAP_LIMIT = 512L * 1024 * 1024;
+    public static final String TENANT_IDLE_TIMEOUT = "carbon.security.tenant.idle.timeout";
+    public static final long DEFAULT_TENANT_IDLE_TIMEOUT = 1800;
+
+    // Cluster invalidation
+    public static final String CLUSTER_INVALIDATION_BUS = "carbon.security.cluster.invalidation.bus";
+    public static final String MULTICAST_INVALIDATION_BUS = "multicast";
+    public static final String LOOPBACK_INVALIDATION_BUS = "loopback";
+    public static final String MULTICAST_GROUP = "carbon.security.cluster.multicast.group";
+    public static final String DEFAULT_MULTICAST_GROUP = "239.255.27.1";
+    public static final String MULTICAST_PORT = "carbon.security.cluster.multicast.port";
+    public static final int DEFAULT_MULTICAST_PORT = 45627;
+    public static final String MULTICAST_TTL = "carbon.security.cluster.multicast.ttl";
+    public static final int DEFAULT_MULTICAST_TTL = 1;
+    public static final String MULTICAST_INTERFACE = "carbon.security.cluster.multicast.interface";
+    public static final String MULTICAST_KEY_FILE = "carbon.security.cluster.multicast.key.file";
+    public static final String CLUSTER_KEY_LOCATION = "/conf/security/cluster.key";
+
+    // Sessions
+    public static final String SESSION_STORE = "carbon.security.session.store";
+    public static final String IN_MEMORY_SESSION_STORE = "memory";
+    public static final String MAPPED_SESSION_STORE = "mapped";
+    public static final String SESSION_STORE_FILE = "carbon.security.session.store.file";
+    public static final String SESSIONS_LOCATION = "/tmp/security/sessions.bin";
+    public static final String SESSION_STORE_CAPACITY = "carbon.security.session.store.capacity";
+    public static final int DEFAULT_SESSION_STORE_CAPACITY = 16384;
+    public static final String SESSION_TTL = "carbon.security.session.ttl";
+    public static final long DEFAULT_SESSION_TTL = 1800;
+
     public static Path getCarbonHomeDirectory() {
         return Paths.get(System.getProperty(CARBON_HOME));
     }
@@ -21,9 +21,14 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.wso2.carbon.security.caas.api.CarbonCallbackHandler;
 import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.metrics.SecurityMetrics;
 import org.wso2.carbon.security.caas.api.model.User;
 import org.wso2.carbon.security.caas.api.model.UsersFile;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
 import org.wso2.carbon.security.caas.internal.CarbonSecurityDataHolder;
+import org.wso2.carbon.security.caas.internal.SecurityEvents;
+import org.wso2.carbon.security.caas.internal.ServiceLoaderCallbackHandlerRegistry;
+import org.wso2.carbon.security.caas.internal.UserLookupEvent;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -36,12 +41,12 @@ import java.util.List;
  */
 public class CarbonSecurityUtils {
 
-    private static final String USERS_CONFIG_ABSOLUTE_LOCATION =
-            CarbonSecurityConstants.getCarbonHomeDirectory().getFileName() +
-                                                           CarbonSecurityConstants.USERS_CONFIG_LOCATION;
-
     public static List<CarbonCallbackHandler> getCallbackHandlers(String supportedLoginModule) {
 
+        if (!CarbonSecurityDataHolder.getInstance().isBundleContextAvailable()) {
+            return ServiceLoaderCallbackHandlerRegistry.getCallbackHandlers(supportedLoginModule);
+        }
+
         List<CarbonCallbackHandler> callbackHandlers = new ArrayList<>();
         BundleContext bundleContext = CarbonSecurityDataHolder.getInstance().getBundleContext();
 
@@ -62,18 +67,67 @@ public class CarbonSecurityUtils {
         return callbackHandlers;
     }
 
-    private static UsersFile getUsers() throws CarbonSecurityServerException {
-        return FileUtil.readConfigFile(USERS_CONFIG_ABSOLUTE_LOCATION, UsersFile.class);
+    /**
+     * Reads all the users of the user store.
+     *
+     * @return UsersFile.
+     * @throws CarbonSecurityServerException if the users file cannot be read.
+     */
+    public static UsersFile getUsers() throws CarbonSecurityServerException {
+
+        UsersFile usersFile = new UsersFile();
+        usersFile.setUsers(UserStore.getInstance().getUsers());
+        return usersFile;
     }
 
     public static User getUser(String username) throws CarbonSecurityServerException {
-        UsersFile users = CarbonSecurityUtils.getUsers();
-        for (User user : users.getUsers()) {
-            if (user.getUsername().equals(username)) {
-                return user;
-            }
+        return getUser(UserStore.getInstance(), username);
+    }
+
+    public static User getUser(UserStore userStore, String username) throws CarbonSecurityServerException {
+        return lookUp(userStore, username, false);
+    }
+
+    /**
+     * Looks up a read-only view of a user, see {@link UserStore#getUserView(String)}.
+     *
+     * @param userStore user store.
+     * @param username username.
+     * @return read-only view of the user, or null if there is no such user.
+     * @throws CarbonSecurityServerException if the user store cannot be read.
+     */
+    public static User getUserView(UserStore userStore, String username) throws CarbonSecurityServerException {
+        return lookUp(userStore, username, true);
+    }
+
+    private static User lookUp(UserStore userStore, String username, boolean view)
+            throws CarbonSecurityServerException {
+
+        SecurityMetrics metrics = SecurityMetrics.getInstance();
+        long start = metrics.startTimer();
+        UserLookupEvent event = SecurityEvents.beginUserLookup();
+        User found = null;
+        try {
+            found = view ? userStore.getUserView(username) : userStore.getUser(username);
+            return found;
+        } finally {
+            metrics.stopTimer(SecurityMetrics.Phase.USER_LOOKUP, start);
+            SecurityEvents.commitUserLookup(event, found != null);
+        }
+    }
+
+    /**
+     * Returns a version stamp of the user store which changes whenever users change, through {@code UserStore} or
+     * by modifying the users file.
+     *
+     * @return user store version, or -1 if the users file cannot be read.
+     */
+    public static long getUserStoreVersion() {
+        try {
+            return UserStore.getInstance().getVersion();
+        } catch (CarbonSecurityServerException e) {
+            return -1;
         }
-        return null;
     }
 
     private CarbonSecurityUtils() {
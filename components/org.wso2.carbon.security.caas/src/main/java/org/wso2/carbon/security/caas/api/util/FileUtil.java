@@ -15,8 +15,20 @@
 */
 package org.wso2.carbon.security.caas.api.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.model.User;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
 import org.yaml.snakeyaml.introspector.BeanAccess;
 
 import java.io.FileOutputStream;
@@ -29,17 +41,29 @@ import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
-import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * File util to write read yaml configurations
  */
 public class FileUtil {
+
+    private static final Logger log = LoggerFactory.getLogger(FileUtil.class);
+
+    private static final String USERS_KEY = "users";
+    private static final long PROGRESS_INTERVAL = 100000;
+
     private FileUtil() {
     }
 
@@ -52,6 +76,7 @@ public class FileUtil {
 
         try (InputStreamReader inputStreamReader =
                      new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            // Yaml instances are not thread safe, hence one per file.
             Yaml yaml = new Yaml();
             yaml.setBeanAccess(BeanAccess.FIELD);
             return yaml.loadAs(inputStreamReader, classType);
@@ -61,54 +86,213 @@ public class FileUtil {
         }
     }
 
-    public static <T> List<T> readConfigFiles(Path path, Class<T> classType, String fileNameRegex)
-            throws CarbonSecurityServerException {
+    /**
+     * <p>
+     * Streams the users of a users file to a consumer, one at a time, in the order they appear in the file. The
+     * document is read as a stream of YAML events, so unlike {@link #readConfigFile(Path, Class)} it is never held
+     * in memory as a whole and memory use is bounded by what the consumer keeps. Progress and throughput are logged
+     * every {@value #PROGRESS_INTERVAL} users.
+     * </p>
+     * Entries of the users list are mapped like {@code UsersFile} would be. YAML aliases are not resolved.
+     *
+     * @param file users file.
+     * @param consumer consumer of the users.
+     * @return number of users read.
+     * @throws CarbonSecurityServerException if the file cannot be read or is not valid YAML.
+     */
+    public static long readUsers(Path file, Consumer<User> consumer) throws CarbonSecurityServerException {
 
-        ArrayList configEntries = new ArrayList();
-        if (Files.exists(path, new LinkOption[0])) {
-            try {
-                DirectoryStream directoryStream = Files.newDirectoryStream(path, fileNameRegex);
-                Throwable ex = null;
-
-                try {
-                    Iterator iterator = directoryStream.iterator();
-
-                    while (iterator.hasNext()) {
-                        Path file = (Path) iterator.next();
-                        InputStreamReader in =
-                                new InputStreamReader(
-                                        Files.newInputStream(file, new OpenOption[0]), StandardCharsets.UTF_8);
-                        Yaml yaml = new Yaml();
-                        yaml.setBeanAccess(BeanAccess.FIELD);
-                        configEntries.add(yaml.loadAs(in, classType));
+        long start = System.nanoTime();
+        long count = 0;
+
+        try (InputStreamReader inputStreamReader =
+                     new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            Iterator<Event> events = new Yaml().parse(inputStreamReader).iterator();
+
+            // Find the mapping at the root of the document.
+            Event event = next(events);
+            while (event != null && !(event instanceof MappingStartEvent)) {
+                event = next(events);
+            }
+
+            while (event != null && !(event instanceof MappingEndEvent)) {
+                event = next(events);
+                if (!(event instanceof ScalarEvent)) {
+                    break;
+                }
+                String key = ((ScalarEvent) event).getValue();
+                Event value = next(events);
+                if (!USERS_KEY.equals(key) || !(value instanceof SequenceStartEvent)) {
+                    skip(events, value);
+                    continue;
+                }
+
+                for (Event entry = next(events); entry != null && !(entry instanceof SequenceEndEvent);
+                     entry = next(events)) {
+                    if (!(entry instanceof MappingStartEvent)) {
+                        skip(events, entry);
+                        continue;
                     }
-                } catch (Throwable e) {
-                    ex = e;
-                    throw e;
-                } finally {
-                    if (directoryStream != null) {
-                        if (ex != null) {
-                            try {
-                                directoryStream.close();
-                            } catch (Throwable throwable) {
-                                throw new CarbonSecurityServerException(
-                                        String.format("Error in reading file %s", new Object[]{path.getFileName()}),
-                                        throwable);
-                            }
-                        } else {
-                            directoryStream.close();
-                        }
+                    consumer.accept(readUser(events));
+                    if (++count % PROGRESS_INTERVAL == 0) {
+                        logProgress(file, count, start, false);
                     }
+                }
+            }
+        } catch (IOException | YAMLException e) {
+            throw new CarbonSecurityServerException(String.format("Error in reading file %s", file.toString()), e);
+        }
+
+        logProgress(file, count, start, true);
+        return count;
+    }
+
+    private static User readUser(Iterator<Event> events) {
+
+        User user = new User();
+        for (Event event = next(events); event instanceof ScalarEvent; event = next(events)) {
+            String key = ((ScalarEvent) event).getValue();
+            Event value = next(events);
+            if (!(value instanceof ScalarEvent)) {
+                skip(events, value);
+                continue;
+            }
+
+            String scalar = isNull((ScalarEvent) value) ? null : ((ScalarEvent) value).getValue();
+            switch (key) {
+                case "username":
+                    user.setUsername(scalar);
+                    break;
+                case "password":
+                    user.setPassword(scalar);
+                    break;
+                case "permission":
+                    user.setPermission(scalar);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return user;
+    }
+
+    // Skips the rest of a node whose first event has been read.
+    private static void skip(Iterator<Event> events, Event first) {
+
+        if (!(first instanceof CollectionStartEvent)) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Event event = next(events);
+            if (event == null) {
+                return;
+            } else if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    private static Event next(Iterator<Event> events) {
+        return events.hasNext() ? events.next() : null;
+    }
+
+    // Plain scalars YAML resolves to null, as loadAs would.
+    private static boolean isNull(ScalarEvent event) {
+
+        String value = event.getValue();
+        return event.getImplicit().canOmitTagInPlainScalar() &&
+               (value.isEmpty() || "~".equals(value) || "null".equals(value) || "Null".equals(value) ||
+                "NULL".equals(value));
+    }
+
+    private static void logProgress(Path file, long count, long start, boolean done) {
 
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        if (count >= PROGRESS_INTERVAL ? log.isInfoEnabled() : log.isDebugEnabled()) {
+            String message = String.format("Read %d users from %s%s in %d ms, %d users/s.", count, file,
+                                           done ? "" : " so far", TimeUnit.NANOSECONDS.toMillis(elapsed),
+                                           count * TimeUnit.SECONDS.toNanos(1) / elapsed);
+            if (count >= PROGRESS_INTERVAL) {
+                log.info(message);
+            } else {
+                log.debug(message);
+            }
+        }
+    }
+
+    /**
+     * Reads the YAML files of a directory matching a glob pattern. The files are parsed in parallel on the common
+     * fork-join pool, each with a parser of its own, unless there is only one file or one processor. The results are
+     * returned in the order of the file paths, regardless of the order the parsing completes in.
+     *
+     * @param path directory holding the files.
+     * @param classType type the files are mapped to.
+     * @param fileNameRegex glob pattern of the file names.
+     * @param <T> type the files are mapped to.
+     * @return mapped files, or an empty list if the directory does not exist.
+     * @throws CarbonSecurityServerException if the directory or any of the files cannot be read.
+     */
+    public static <T> List<T> readConfigFiles(Path path, Class<T> classType, String fileNameRegex)
+            throws CarbonSecurityServerException {
+
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path, fileNameRegex)) {
+            directoryStream.forEach(files::add);
+        } catch (IOException | DirectoryIteratorException e) {
+            throw new CarbonSecurityServerException(
+                    String.format("Failed to read identity connector files from path: %s", path.toString()), e);
+        }
+        Collections.sort(files);
+
+        if (files.size() <= 1 || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            List<T> configEntries = new ArrayList<>(files.size());
+            for (Path file : files) {
+                configEntries.add(readConfigEntry(file, classType));
+            }
+            return configEntries;
+        }
+
+        List<Callable<T>> tasks = new ArrayList<>(files.size());
+        files.forEach(file -> tasks.add(() -> readConfigEntry(file, classType)));
+
+        try {
+            List<T> configEntries = new ArrayList<>(files.size());
+            for (Future<T> configEntry : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                configEntries.add(configEntry.get());
+            }
+            return configEntries;
+        } catch (ExecutionException e) {
+            // The pool wraps checked exceptions of the tasks, hence the one naming the failed file is looked up.
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof CarbonSecurityServerException) {
+                    throw (CarbonSecurityServerException) cause;
                 }
-            } catch (IOException | DirectoryIteratorException e) {
-                throw new CarbonSecurityServerException(
-                        String.format("Failed to read identity connector files from path: %s",
-                                      new Object[]{path.toString()}), e);
             }
+            throw new CarbonSecurityServerException(
+                    String.format("Failed to read identity connector files from path: %s", path.toString()),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CarbonSecurityServerException(
+                    String.format("Interrupted while reading identity connector files from path: %s",
+                                  path.toString()), e);
         }
+    }
+
+    private static <T> T readConfigEntry(Path file, Class<T> classType) throws CarbonSecurityServerException {
 
-        return configEntries;
+        try {
+            return readConfigFile(file, classType);
+        } catch (YAMLException e) {
+            throw new CarbonSecurityServerException(String.format("Error in reading file %s", file.toString()), e);
+        }
     }
 
     public static <T> void writeConfigFiles(Path file, Object data)
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event emitted for callback handler lookups and callback dispatches of the
+ * {@code ProxyCallbackHandler}.
+ * Instances must only be created when {@link SecurityEvents#isSupported()} is true.
+ *
+ * @since 1.0.1
+ */
+@Name("org.wso2.carbon.security.CallbackHandler")
+@Label("Callback Handler")
+@Category({"WSO2 Carbon", "Security"})
+@Description("Lookup of callback handlers and dispatch of callbacks by the ProxyCallbackHandler")
+@Threshold("1 ms")
+public class CallbackHandlerEvent extends Event {
+
+    @Label("Operation")
+    @Description("Either lookup or dispatch")
+    String operation;
+
+    @Label("Login Module Type")
+    String loginModuleType;
+
+    @Label("Handler Count")
+    int handlerCount;
+}
@@ -17,6 +17,7 @@
 package org.wso2.carbon.security.caas.internal;
 
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -27,8 +28,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wso2.carbon.caching.CarbonCachingService;
 import org.wso2.carbon.kernel.startupresolver.RequiredCapabilityListener;
+import org.wso2.carbon.security.caas.api.SecurityReadiness;
+import org.wso2.carbon.security.caas.api.audit.AuditLog;
+import org.wso2.carbon.security.caas.api.cluster.ClusterInvalidation;
+import org.wso2.carbon.security.caas.api.metrics.SecurityMetrics;
+import org.wso2.carbon.security.caas.api.session.Sessions;
+import org.wso2.carbon.security.caas.api.tenant.TenantPartitions;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
 
+import java.lang.management.ManagementFactory;
+import java.util.Dictionary;
+import java.util.Hashtable;
 import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * OSGi service component which handle authentication and authorization.
@@ -46,16 +61,40 @@ public class CarbonSecurityComponent implements RequiredCapabilityListener {
 
     private static final Logger log = LoggerFactory.getLogger(CarbonSecurityComponent.class);
 
+    private final SecurityWarmUp warmUp = new SecurityWarmUp();
+
+    private ServiceRegistration<SecurityReadiness> readinessRegistration;
+
     @Activate
     public void registerCarbonSecurityProvider(BundleContext bundleContext) {
 
         CarbonSecurityDataHolder.getInstance().setBundleContext(bundleContext);
 
+        registerMetricsMBean();
+        // Started here rather than by the first event, as a deactivation stops it until started again.
+        AuditLog.getInstance().start();
+        ClusterInvalidation.getInstance().start();
+
+        readinessRegistration = bundleContext.registerService(SecurityReadiness.class, warmUp,
+                                                              readinessProperties(false));
     }
 
     @Deactivate
     public void unregisterCarbonSecurityProvider(BundleContext bundleContext) {
 
+        warmUp.stop();
+        unregisterReadiness();
+
+        unregisterMetricsMBean();
+
+        AuditLog.getInstance().stop();
+        UserStore.getInstance().stop();
+        TenantPartitions.getInstance().unloadAll();
+        Sessions.getInstance().close();
+        TimingWheel.getInstance().stop();
+        // Stopped last, to send the invalidations of the changes applied while stopping the user stores.
+        ClusterInvalidation.getInstance().stop();
+
         log.info("Carbon-Security bundle deactivated successfully.");
     }
 
@@ -75,9 +114,67 @@ public class CarbonSecurityComponent implements RequiredCapabilityListener {
     }
 
 
+    private void registerMetricsMBean() {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(CarbonSecurityConstants.METRICS_MBEAN_NAME);
+            if (!mBeanServer.isRegistered(name)) {
+                mBeanServer.registerMBean(SecurityMetrics.getInstance(), name);
+            }
+        } catch (JMException e) {
+            log.error("Unable to register the security metrics MBean.", e);
+        }
+    }
+
+    private void unregisterMetricsMBean() {
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(CarbonSecurityConstants.METRICS_MBEAN_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.error("Unable to unregister the security metrics MBean.", e);
+        }
+    }
+
+    private synchronized void publishReadiness() {
+
+        if (readinessRegistration != null) {
+            try {
+                readinessRegistration.setProperties(readinessProperties(true));
+            } catch (IllegalStateException e) {
+                // Unregistered while warming up.
+                readinessRegistration = null;
+            }
+        }
+    }
+
+    private synchronized void unregisterReadiness() {
+
+        if (readinessRegistration != null) {
+            try {
+                readinessRegistration.unregister();
+            } catch (IllegalStateException e) {
+                // Already unregistered along with the bundle.
+            }
+            readinessRegistration = null;
+        }
+    }
+
+    private static Dictionary<String, Object> readinessProperties(boolean ready) {
+
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(SecurityReadiness.READY, ready);
+        return properties;
+    }
+
     @Override
     public void onAllRequiredCapabilitiesAvailable() {
         log.info("Carbon-Security bundle activated successfully.");
+        warmUp.start(this::publishReadiness);
     }
 }
 
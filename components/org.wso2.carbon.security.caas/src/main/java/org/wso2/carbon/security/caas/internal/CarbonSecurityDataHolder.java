@@ -52,6 +52,15 @@ public class CarbonSecurityDataHolder {
         this.bundleContext = bundleContext;
     }
 
+    /**
+     * Returns whether the bundle is running in an OSGi framework, as opposed to a plain JVM.
+     *
+     * @return true if a BundleContext is available.
+     */
+    public boolean isBundleContextAvailable() {
+        return bundleContext != null;
+    }
+
     public BundleContext getBundleContext() {
 
         if (this.bundleContext == null) {
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.internal;
+
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * <p>
+ * Immutable, compact representation of a user held by the {@code UserIndex}. The credential is kept as the UTF-8
+ * bytes of its stored form rather than as a {@code String}, and the permissions as an array of
+ * {@code PermissionTable} identifiers, in the order they were given, rather than a comma separated list, so grant
+ * checks never split or parse. The comma separated list is only joined when asked for.
+ * </p>
+ * The username instance is shared with the previous record of the user when a user is replaced. Users are read-only,
+ * their setters throw {@code UnsupportedOperationException}.
+ *
+ * @since 1.0.1
+ */
+final class CompactUser extends User {
+
+    // Heap layout with compressed references.
+    static final int OBJECT_HEADER_SIZE = 12;
+    static final int ARRAY_HEADER_SIZE = 16;
+    static final int REFERENCE_SIZE = 4;
+
+    private final byte[] credential;
+    // Permission identifiers, null if the user has no permission entry.
+    private final int[] grants;
+
+    private CompactUser(String username, byte[] credential, int[] grants) {
+
+        super.setUsername(username);
+        this.credential = credential;
+        this.grants = grants;
+    }
+
+    /**
+     * Returns the compact representation of a user.
+     *
+     * @param user user.
+     * @param previous previous record of the user, or null.
+     * @return CompactUser.
+     */
+    static CompactUser of(User user, User previous) {
+
+        if (user instanceof CompactUser) {
+            return (CompactUser) user;
+        }
+        String username = previous instanceof CompactUser ? previous.getUsername() : user.getUsername();
+        String password = user.getPassword();
+        return new CompactUser(username, password == null ? null : password.getBytes(StandardCharsets.UTF_8),
+                               parseGrants(user.getPermission()));
+    }
+
+    @Override
+    public String getPassword() {
+        return credential == null ? null : new String(credential, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getPermission() {
+
+        if (grants == null) {
+            return null;
+        }
+        if (grants.length == 1) {
+            return PermissionTable.getName(grants[0]);
+        }
+        // Joined on every call rather than kept, so that the user holds its permissions only as identifiers.
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < grants.length; i++) {
+            if (i > 0) {
+                joined.append(',');
+            }
+            joined.append(PermissionTable.getName(grants[i]));
+        }
+        return joined.toString();
+    }
+
+    @Override
+    public void setUsername(String username) {
+        throw new UnsupportedOperationException("Users of the user store are read-only.");
+    }
+
+    @Override
+    public void setPassword(String password) {
+        throw new UnsupportedOperationException("Users of the user store are read-only.");
+    }
+
+    @Override
+    public void setPermission(String permission) {
+        throw new UnsupportedOperationException("Users of the user store are read-only.");
+    }
+
+    @Override
+    public boolean matchesCredential(byte[] credential) {
+        return this.credential != null && MessageDigest.isEqual(credential, this.credential);
+    }
+
+    @Override
+    public boolean isUserAuthorized(CarbonPermission permission) {
+
+        if (grants == null) {
+            return false;
+        }
+        for (int grant : grants) {
+            if (permission.implies(PermissionTable.getGrant(grant))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the heap held by this user, assuming compressed references. The username is included, the
+     * permission names, shared by all the users, are not.
+     *
+     * @return size in bytes.
+     */
+    long getHeapSize() {
+
+        long size = align(OBJECT_HEADER_SIZE + 5 * REFERENCE_SIZE) + getHeapSize(getUsername());
+        if (credential != null) {
+            size += align(ARRAY_HEADER_SIZE + credential.length);
+        }
+        if (grants != null) {
+            size += align(ARRAY_HEADER_SIZE + (long) Integer.BYTES * grants.length);
+        }
+        return size;
+    }
+
+    // Size of a string and its characters.
+    static long getHeapSize(String value) {
+        return align(OBJECT_HEADER_SIZE + REFERENCE_SIZE + 2 * Integer.BYTES) +
+               align(ARRAY_HEADER_SIZE + (long) Character.BYTES * value.length());
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static int[] parseGrants(String permission) {
+
+        if (permission == null) {
+            return null;
+        }
+        String[] names = permission.split(",");
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = PermissionTable.intern(names[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.internal;
+
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of the permission names granted to users, each interned once and identified by a small integer, so that
+ * users share the names and grant checks share the parsed {@code CarbonPermission}s. Names are never removed.
+ *
+ * @since 1.0.1
+ */
+final class PermissionTable {
+
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static volatile CarbonPermission[] grants = new CarbonPermission[64];
+    private static int count;
+
+    private PermissionTable() {
+
+    }
+
+    /**
+     * Returns the identifier of a permission name, registering the name if it is new.
+     *
+     * @param name permission name.
+     * @return permission identifier.
+     */
+    static int intern(String name) {
+
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    static String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the permission granted by a permission identifier.
+     *
+     * @param id permission identifier.
+     * @return CarbonPermission.
+     * @throws IllegalArgumentException if the name is not a valid permission name.
+     */
+    static CarbonPermission getGrant(int id) {
+
+        CarbonPermission[] current = grants;
+        CarbonPermission grant = id < current.length ? current[id] : null;
+        if (grant == null) {
+            // Created on first use, as invalid names must only fail the checks using them.
+            grant = new CarbonPermission(names[id], "grant");
+            cache(id, grant);
+        }
+        return grant;
+    }
+
+    /**
+     * Parses the grants of all the registered permission names, so that the first checks using them do not. Invalid
+     * names are left to fail the checks using them.
+     */
+    static void parseGrants() {
+
+        int registered;
+        synchronized (PermissionTable.class) {
+            registered = count;
+        }
+        for (int id = 0; id < registered; id++) {
+            try {
+                getGrant(id);
+            } catch (IllegalArgumentException e) {
+                // Left to fail the checks using the name.
+            }
+        }
+    }
+
+    private static synchronized int register(String name) {
+
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+        }
+        current[count] = name;
+        // Published before the identifier is handed out.
+        names = current;
+        ids.put(name, count);
+        return count++;
+    }
+
+    private static synchronized void cache(int id, CarbonPermission grant) {
+
+        CarbonPermission[] current = grants;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, names.length);
+        }
+        current[id] = grant;
+        grants = current;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+
+/**
+ * <p>
+ * Emits the flight recorder events of the carbon security module. Events are only created when the running JVM
+ * ships the {@code jdk.jfr} API, so that the module keeps working on JVMs without it. Each {@code begin} method
+ * returns null when events are not supported, and the matching {@code commit} method ignores null events.
+ * </p>
+ * <p>
+ * Events are committed only if they are enabled in the active recording and last longer than their threshold. The
+ * default threshold of all the events is 1 ms, and can be changed per recording with the {@code threshold}
+ * setting of the event, e.g. using the {@code carbon-security.jfc} settings file.
+ * </p>
+ *
+ * @since 1.0.1
+ */
+public final class SecurityEvents {
+
+    private static final boolean SUPPORTED = isFlightRecorderAvailable();
+
+    private SecurityEvents() {
+
+    }
+
+    /**
+     * Returns whether flight recorder events can be emitted in the running JVM.
+     *
+     * @return true if supported.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    public static LoginPhaseEvent beginLoginPhase() {
+
+        if (!SUPPORTED) {
+            return null;
+        }
+        LoginPhaseEvent event = new LoginPhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitLoginPhase(LoginPhaseEvent event, String loginModule, String phase, boolean success) {
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.loginModule = loginModule;
+                event.phase = phase;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    public static CallbackHandlerEvent beginCallbackHandler() {
+
+        if (!SUPPORTED) {
+            return null;
+        }
+        CallbackHandlerEvent event = new CallbackHandlerEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitCallbackHandler(CallbackHandlerEvent event, String operation, String loginModuleType,
+                                             int handlerCount) {
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.loginModuleType = loginModuleType;
+                event.handlerCount = handlerCount;
+                event.commit();
+            }
+        }
+    }
+
+    public static UserLookupEvent beginUserLookup() {
+
+        if (!SUPPORTED) {
+            return null;
+        }
+        UserLookupEvent event = new UserLookupEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitUserLookup(UserLookupEvent event, boolean found) {
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.found = found;
+                event.commit();
+            }
+        }
+    }
+
+    public static AuthorizationEvent beginAuthorization() {
+
+        if (!SUPPORTED) {
+            return null;
+        }
+        AuthorizationEvent event = new AuthorizationEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitAuthorization(AuthorizationEvent event, CarbonPermission permission, boolean granted) {
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.permission = permission.getName();
+                event.actions = permission.getActions();
+                event.granted = granted;
+                event.commit();
+            }
+        }
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, SecurityEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
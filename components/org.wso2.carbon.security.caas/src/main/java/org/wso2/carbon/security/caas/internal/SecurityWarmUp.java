@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
+import org.wso2.carbon.messaging.CarbonMessage;
+import org.wso2.carbon.messaging.DefaultCarbonMessage;
+import org.wso2.carbon.security.caas.api.ProxyCallbackHandler;
+import org.wso2.carbon.security.caas.api.SecurityReadiness;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.security.auth.Subject;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * <p>
+ * Warms up the carbon security module in the background once it is activated, so that the first logins after a
+ * restart do not pay for loading the user store, the JAAS configuration and the callback handlers. The user store, the
+ * JAAS application entry and the callback handlers are loaded in parallel, and the permissions granted to the users
+ * are parsed once the users are loaded. Optionally a number of synthetic logins are run afterwards to warm up the JIT.
+ * </p>
+ * <p>
+ * Synthetic logins use a random unknown user, hence they run the whole login path up to the failed user lookup,
+ * without needing any real credential. They are marked as {@code SyntheticLogins}, which keeps them out of the audit
+ * log, the login throttle and the security metrics.
+ * </p>
+ * Warm-up failures are logged and do not keep the module from becoming ready.
+ *
+ * @since 1.0.1
+ */
+final class SecurityWarmUp implements SecurityReadiness {
+
+    private static final Logger log = LoggerFactory.getLogger(SecurityWarmUp.class);
+
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    /**
+     * Starts warming up in the background.
+     *
+     * @param onReady called once warming up has completed.
+     */
+    synchronized void start(Runnable onReady) {
+
+        if (executor != null) {
+            return;
+        }
+        if (!Boolean.parseBoolean(System.getProperty(CarbonSecurityConstants.WARMUP_ENABLED, "true"))) {
+            markReady(onReady);
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            // Everything the warm-up threads run is synthetic, the JAAS configuration lookup included.
+            Thread thread = new Thread(() -> {
+                SyntheticLogins.begin();
+                runnable.run();
+            }, "carbon-security-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        String application = System.getProperty(CarbonSecurityConstants.WARMUP_APPLICATION,
+                                                CarbonSecurityConstants.DEFAULT_WARMUP_APPLICATION);
+        int logins = Integer.getInteger(CarbonSecurityConstants.WARMUP_LOGINS, 0);
+
+        CompletableFuture.allOf(
+                guard("user store", CompletableFuture.runAsync(SecurityWarmUp::loadUsers, executor)),
+                guard("JAAS configuration", CompletableFuture.runAsync(() -> loadJAASConfiguration(application),
+                                                                       executor)),
+                guard("callback handlers", CompletableFuture.runAsync(() -> CarbonSecurityUtils.getCallbackHandlers(
+                        CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE), executor)))
+                .thenCompose(ignored -> guard("login path", login(application, logins)))
+                .whenComplete((ignored, e) -> {
+                    log.info("Carbon-Security warm-up completed in " +
+                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+                    markReady(onReady);
+                    executor.shutdown();
+                });
+    }
+
+    /**
+     * Stops warming up, if still in progress.
+     */
+    synchronized void stop() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    private void markReady(Runnable onReady) {
+
+        ready.countDown();
+        onReady.run();
+    }
+
+    private static CompletableFuture<Void> guard(String name, CompletableFuture<Void> task) {
+
+        return task.exceptionally(e -> {
+            log.warn("Unable to warm up the " + name + ".", e);
+            return null;
+        });
+    }
+
+    // Loading the users registers their permission names, whose grants are then parsed once and kept for good.
+    private static void loadUsers() {
+
+        try {
+            UserStore.getInstance().getUserCount();
+        } catch (CarbonSecurityServerException e) {
+            throw new IllegalStateException(e);
+        }
+        PermissionTable.parseGrants();
+    }
+
+    private static void loadJAASConfiguration(String application) {
+
+        AppConfigurationEntry[] entries = Configuration.getConfiguration().getAppConfigurationEntry(application);
+        if (entries == null && log.isDebugEnabled()) {
+            log.debug("No JAAS application entry found for " + application + ".");
+        }
+    }
+
+    private CompletableFuture<Void> login(String application, int logins) {
+
+        if (logins <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int threads = Math.min(parallelism, logins);
+        List<CompletableFuture<Void>> loginThreads = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int count = logins / threads + (i < logins % threads ? 1 : 0);
+            loginThreads.add(CompletableFuture.runAsync(() -> login(application, createSyntheticMessage(), count),
+                                                        executor));
+        }
+        return CompletableFuture.allOf(loginThreads.toArray(new CompletableFuture[threads]));
+    }
+
+    private static void login(String application, CarbonMessage carbonMessage, int count) {
+
+        try {
+            for (int i = 0; i < count && !Thread.currentThread().isInterrupted(); i++) {
+                PrivilegedCarbonContext.destroyCurrentContext();
+                try {
+                    new LoginContext(application, new Subject(), new ProxyCallbackHandler(carbonMessage)).login();
+                } catch (LoginException e) {
+                    // Expected, the synthetic user does not exist.
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.destroyCurrentContext();
+        }
+    }
+
+    private static CarbonMessage createSyntheticMessage() {
+
+        String credential = "warmup-" + UUID.randomUUID() + ":" + UUID.randomUUID();
+        CarbonMessage carbonMessage = new DefaultCarbonMessage();
+        carbonMessage.setHeader("Authorization", CarbonSecurityConstants.HTTP_AUTHORIZATION_PREFIX_BASIC + " " +
+                Base64.getEncoder().encodeToString(credential.getBytes(StandardCharsets.UTF_8)));
+        return carbonMessage;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.CarbonCallbackHandler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * <p>
+ * Callback handler registry backed by {@code java.util.ServiceLoader}, used in place of the OSGi service registry when
+ * the bundle runs in a plain JVM. Callback handlers are registered by listing them in
+ * {@code META-INF/services/org.wso2.carbon.security.caas.api.CarbonCallbackHandler} and declare the login module they
+ * serve through {@link CarbonCallbackHandler#getSupportedLoginModule()}.
+ * </p>
+ * The service files are scanned once. As with the OSGi prototype scope, new callback handler instances are created for
+ * every lookup.
+ *
+ * @since 1.0.1
+ */
+public final class ServiceLoaderCallbackHandlerRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceLoaderCallbackHandlerRegistry.class);
+
+    private static volatile Map<String, List<Class<? extends CarbonCallbackHandler>>> callbackHandlers;
+
+    private ServiceLoaderCallbackHandlerRegistry() {
+    }
+
+    /**
+     * Returns new instances of the callback handlers supporting the given login module type.
+     *
+     * @param supportedLoginModule login module type.
+     * @return callback handlers, empty if there are none.
+     */
+    public static List<CarbonCallbackHandler> getCallbackHandlers(String supportedLoginModule) {
+
+        List<Class<? extends CarbonCallbackHandler>> handlerClasses =
+                getCallbackHandlerClasses().getOrDefault(supportedLoginModule, Collections.emptyList());
+
+        List<CarbonCallbackHandler> handlers = new ArrayList<>(handlerClasses.size());
+        for (Class<? extends CarbonCallbackHandler> handlerClass : handlerClasses) {
+            try {
+                handlers.add(handlerClass.getDeclaredConstructor().newInstance());
+            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException |
+                    InvocationTargetException e) {
+                throw new IllegalStateException("Unable to instantiate callback handler " + handlerClass.getName(),
+                                                e);
+            }
+        }
+        return handlers;
+    }
+
+    private static Map<String, List<Class<? extends CarbonCallbackHandler>>> getCallbackHandlerClasses() {
+
+        Map<String, List<Class<? extends CarbonCallbackHandler>>> handlerClasses = callbackHandlers;
+        if (handlerClasses == null) {
+            synchronized (ServiceLoaderCallbackHandlerRegistry.class) {
+                handlerClasses = callbackHandlers;
+                if (handlerClasses == null) {
+                    handlerClasses = load();
+                    callbackHandlers = handlerClasses;
+                }
+            }
+        }
+        return handlerClasses;
+    }
+
+    private static Map<String, List<Class<? extends CarbonCallbackHandler>>> load() {
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ServiceLoaderCallbackHandlerRegistry.class.getClassLoader();
+        }
+
+        Map<String, List<Class<? extends CarbonCallbackHandler>>> handlerClasses = new HashMap<>();
+        Iterator<CarbonCallbackHandler> iterator = ServiceLoader.load(CarbonCallbackHandler.class, classLoader)
+                .iterator();
+        while (iterator.hasNext()) {
+            CarbonCallbackHandler handler;
+            try {
+                handler = iterator.next();
+            } catch (ServiceConfigurationError e) {
+                log.error("Unable to load callback handler.", e);
+                continue;
+            }
+
+            String supportedLoginModule = handler.getSupportedLoginModule();
+            if (supportedLoginModule == null) {
+                log.warn("Callback handler " + handler.getClass().getName() + " does not declare a supported login " +
+                         "module and is ignored.");
+                continue;
+            }
+            handlerClasses.computeIfAbsent(supportedLoginModule, type -> new ArrayList<>()).add(handler.getClass());
+        }
+        return handlerClasses;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.security.auth.login.LoginException;
+
+/**
+ * <p>
+ * Deduplicates concurrent executions of the same unit of work. The first caller of {@link #execute(Object, Work)} for
+ * a key runs the work, while callers arriving with the same key before it completes wait for, and share, its outcome
+ * instead of running the work again. Nothing is remembered once the work has completed.
+ * </p>
+ * A failure of the work is rethrown to every waiting caller as the same exception instance.
+ *
+ * @param <K> key type.
+ * @param <V> result type.
+ * @since 1.0.1
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the work, or waits for the execution already in flight for the same key.
+     *
+     * @param key identifies the work.
+     * @param work work to run.
+     * @return result of the work.
+     * @throws LoginException if the work failed.
+     */
+    public V execute(K key, Work<V> work) throws LoginException {
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+
+        if (leader == null) {
+            try {
+                V result = work.run();
+                flight.complete(result);
+                return result;
+            } catch (LoginException | RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            // Do not keep an interrupted thread waiting, run the work on its own instead.
+            Thread.currentThread().interrupt();
+            return work.run();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LoginException) {
+                throw (LoginException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Returns the number of executions in flight.
+     *
+     * @return in flight count.
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * Unit of work executed by a {@code SingleFlight}.
+     *
+     * @param <V> result type.
+     */
+    @FunctionalInterface
+    public interface Work<V> {
+
+        V run() throws LoginException;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wso2.carbon.security.caas.internal;
+
+/**
+ * Marks the threads running logins of the security module itself, such as the warm-up logins. Synthetic logins are
+ * left out of the audit log, the login throttle and the security metrics, so that they are never mistaken for, or
+ * interfere with, real logins.
+ *
+ * @since 1.0.1
+ */
+public final class SyntheticLogins {
+
+    private static final ThreadLocal<Boolean> synthetic = new ThreadLocal<>();
+
+    private SyntheticLogins() {
+
+    }
+
+    /**
+     * Returns whether the current thread is running a synthetic login.
+     *
+     * @return true if synthetic.
+     */
+    public static boolean isSynthetic() {
+        return synthetic.get() != null;
+    }
+
+    // Marks the current thread for good, used for threads running nothing else.
+    static void begin() {
+        synthetic.set(Boolean.TRUE);
+    }
+}
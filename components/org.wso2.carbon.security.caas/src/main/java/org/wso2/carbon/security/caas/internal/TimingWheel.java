@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.carbon.security.caas.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Hierarchical timing wheel expiring the sessions, tenant partitions and other entries of the carbon security module
+ * on a single housekeeping thread, {@code carbon-security-housekeeping}, however many entries there are. Scheduling
+ * and cancelling a timeout are O(1) and take no allocation beyond the {@link Timeout} itself.
+ * </p>
+ * <p>
+ * The wheel turns one slot every 100 ms. Level 0 has a slot per tick for the next 64 ticks, and each of the three
+ * levels above covers 64 times the span of the level below, about 19 days in all. Timeouts further away are parked in
+ * the last slot of the top level and placed again when it comes round. When the top slot of a level comes round, its
+ * timeouts cascade to the levels below, so every timeout is moved at most three times before it fires.
+ * </p>
+ * Tasks run on the housekeeping thread, hence must be short and must not block. Tasks which may block, on I/O or
+ * locks, are scheduled with {@link #scheduleBlocking(Runnable, long, TimeUnit)} and handed to a worker thread,
+ * {@code carbon-security-housekeeping-worker}, once due. Expired entries which must outlive their first deadline, such
+ * as idle entries accessed in the meantime, are expected to schedule themselves again rather than be rescheduled on
+ * every access.
+ *
+ * @since 1.0.1
+ */
+public final class TimingWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final TimingWheel instance = new TimingWheel(100);
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_TICKS = (1L << (LEVELS * SLOT_BITS)) - 1;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[][] wheel = new Timeout[LEVELS][SLOTS];
+    // Runs the blocking tasks one at a time; its thread exits once idle, hence the pool is never shut down.
+    private final ThreadPoolExecutor worker;
+
+    // Guarded by this. Next tick to be processed; every pending timeout is due at or after it.
+    private long nextTick;
+    private int size;
+    private Thread housekeeper;
+
+    TimingWheel(long tickMillis) {
+
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        startNanos = System.nanoTime();
+        worker = new ThreadPoolExecutor(1, 1, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "carbon-security-housekeeping-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.allowCoreThreadTimeOut(true);
+        for (Timeout[] level : wheel) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Timeout(null, 0);
+            }
+        }
+    }
+
+    /**
+     * Get the instance of this class.
+     *
+     * @return TimingWheel.
+     */
+    public static TimingWheel getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedules a task to run once a delay has passed, starting the housekeeping thread if it is not running.
+     *
+     * @param task task.
+     * @param delay delay.
+     * @param unit unit of the delay.
+     * @return Timeout, which cancels the task.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay)));
+        synchronized (this) {
+            add(timeout);
+            size++;
+            if (housekeeper == null) {
+                Thread thread = new Thread(this::turn, "carbon-security-housekeeping");
+                thread.setDaemon(true);
+                housekeeper = thread;
+                thread.start();
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * Schedules a task which may block to run once a delay has passed. The task runs on the worker thread, after the
+     * blocking tasks due before it, so that it never holds up the tasks of the housekeeping thread.
+     *
+     * @param task task.
+     * @param delay delay.
+     * @param unit unit of the delay.
+     * @return Timeout, which cancels the task unless it has been handed to the worker thread.
+     */
+    public Timeout scheduleBlocking(Runnable task, long delay, TimeUnit unit) {
+        return schedule(() -> worker.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Error in running a housekeeping task.", e);
+            }
+        }), delay, unit);
+    }
+
+    /**
+     * Returns the number of scheduled tasks.
+     *
+     * @return pending timeout count.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Stops the housekeeping thread. Scheduled tasks are kept and run once a new task starts it again.
+     */
+    public void stop() {
+
+        Thread stopped;
+        synchronized (this) {
+            stopped = housekeeper;
+            housekeeper = null;
+        }
+        if (stopped != null) {
+            LockSupport.unpark(stopped);
+            try {
+                stopped.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void turn() {
+
+        Thread self = Thread.currentThread();
+        List<Timeout> expired = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                if (housekeeper != self) {
+                    return;
+                }
+                long now = System.nanoTime() - startNanos;
+                while (nextTick * tickNanos <= now) {
+                    expire(expired);
+                }
+            }
+
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Error in running a housekeeping task.", e);
+                }
+            }
+            expired.clear();
+
+            long next;
+            synchronized (this) {
+                next = nextTick * tickNanos;
+            }
+            LockSupport.parkNanos(this, next - (System.nanoTime() - startNanos));
+        }
+    }
+
+    // Processes nextTick: cascades the levels whose slot comes round, then collects the timeouts of the level 0 slot.
+    private void expire(List<Timeout> expired) {
+
+        long tick = nextTick;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (level * SLOT_BITS)) - 1)) != 0) {
+                break;
+            }
+            Timeout slot = wheel[level][(int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK];
+            Timeout timeout = slot.next;
+            slot.next = slot;
+            slot.previous = slot;
+            while (timeout != slot) {
+                Timeout next = timeout.next;
+                add(timeout);
+                timeout = next;
+            }
+        }
+        nextTick = tick + 1;
+
+        Timeout slot = wheel[0][(int) tick & SLOT_MASK];
+        Timeout timeout = slot.next;
+        while (timeout != slot) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= tick) {
+                timeout.unlink();
+                timeout.state = Timeout.EXPIRED;
+                size--;
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void add(Timeout timeout) {
+
+        // Ticks are rounded up, so that a timeout never fires before its deadline.
+        long deadlineTick = Math.max(nextTick, (timeout.deadline + tickNanos - 1) / tickNanos);
+        timeout.deadlineTick = deadlineTick;
+
+        long ticks = Math.min(deadlineTick - nextTick, MAX_TICKS);
+        long placedTick = nextTick + ticks;
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+        timeout.linkBefore(wheel[level][(int) (placedTick >>> (level * SLOT_BITS)) & SLOT_MASK]);
+    }
+
+    /**
+     * Handle of a scheduled task, linked into the slot of the wheel it is due in.
+     */
+    public final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        // Nanoseconds since the wheel started.
+        private final long deadline;
+        private long deadlineTick;
+        private Timeout previous = this;
+        private Timeout next = this;
+        private int state;
+
+        private Timeout(Runnable task, long deadline) {
+
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task, unless it has already run or is running.
+         *
+         * @return true if cancelled.
+         */
+        public boolean cancel() {
+
+            synchronized (TimingWheel.this) {
+                if (state != PENDING) {
+                    return false;
+                }
+                state = CANCELLED;
+                unlink();
+                size--;
+                return true;
+            }
+        }
+
+        /**
+         * Returns whether the task has run or is running.
+         *
+         * @return true if expired.
+         */
+        public boolean isExpired() {
+
+            synchronized (TimingWheel.this) {
+                return state == EXPIRED;
+            }
+        }
+
+        private void linkBefore(Timeout slot) {
+
+            previous = slot.previous;
+            next = slot;
+            slot.previous.next = this;
+            slot.previous = this;
+        }
+
+        private void unlink() {
+
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+        }
+    }
+}
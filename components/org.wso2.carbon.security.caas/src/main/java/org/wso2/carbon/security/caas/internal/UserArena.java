@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Immutable arena of users kept outside the Java heap. Records are stored one after the other in a direct buffer and
+ * found through an open-addressing hash table, also a direct buffer, of slots holding the hash of the username and
+ * the offset of the record. A lookup probes the table and compares the username in place; only the user found is
+ * materialised, as a read-only view decoding its fields from the arena on access.
+ * </p>
+ * <pre>
+ *     slot    int hash, int record offset + 1, 0 for an empty slot
+ *     record  per field, username, password and permission, an int byte length, -1 for null, and the UTF-8 bytes
+ * </pre>
+ * The heap held by an arena is constant, regardless of the number of users in it.
+ *
+ * @since 1.0.1
+ */
+final class UserArena {
+
+    private static final int SLOT_SIZE = 8;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_DATA_SIZE = 64 * 1024;
+
+    private final ByteBuffer table;
+    private final ByteBuffer data;
+    private final int mask;
+    private final int size;
+    private final int dataSize;
+
+    private UserArena(ByteBuffer table, ByteBuffer data, int size, int dataSize) {
+
+        this.table = table;
+        this.data = data;
+        this.mask = table.capacity() / SLOT_SIZE - 1;
+        this.size = size;
+        this.dataSize = dataSize;
+    }
+
+    /**
+     * Looks up a user.
+     *
+     * @param hash hash of the username.
+     * @param username username.
+     * @return read-only view of the user, or null if there is no such user.
+     */
+    User get(int hash, String username) {
+
+        int offset = find(table, mask, data, hash, username);
+        return offset < 0 ? null : new ArenaUser(data, offset);
+    }
+
+    /**
+     * Passes a read-only view of every user to an action, in the order they were added.
+     *
+     * @param action action.
+     */
+    void forEach(Consumer<User> action) {
+
+        int offset = 0;
+        while (offset < dataSize) {
+            action.accept(new ArenaUser(data, offset));
+            for (int field = 0; field < 3; field++) {
+                offset += Integer.BYTES + Math.max(0, data.getInt(offset));
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the native memory held by this arena.
+     *
+     * @return size in bytes.
+     */
+    long getMemorySize() {
+        return (long) table.capacity() + data.capacity();
+    }
+
+    // Returns the offset of the record of a username, or -1.
+    private static int find(ByteBuffer table, int mask, ByteBuffer data, int hash, String username) {
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int reference = table.getInt(slot * SLOT_SIZE + Integer.BYTES);
+            if (reference == 0) {
+                return -1;
+            }
+            if (table.getInt(slot * SLOT_SIZE) == hash && matches(data, reference - 1, username)) {
+                return reference - 1;
+            }
+        }
+    }
+
+    private static boolean matches(ByteBuffer data, int offset, String username) {
+
+        int length = data.getInt(offset);
+        int start = offset + Integer.BYTES;
+        if (length == username.length()) {
+            // Compared without decoding as long as both are ASCII.
+            int i = 0;
+            for (; i < length; i++) {
+                byte b = data.get(start + i);
+                if (b < 0) {
+                    break;
+                }
+                if (b != username.charAt(i)) {
+                    return false;
+                }
+            }
+            if (i == length) {
+                return true;
+            }
+        } else if (length < username.length()) {
+            // UTF-8 never takes fewer bytes than UTF-16 chars.
+            return false;
+        }
+        return username.equals(decode(data, offset));
+    }
+
+    private static String decode(ByteBuffer data, int offset) {
+
+        int length = data.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + Integer.BYTES + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds an arena. The first user added for a username is kept, later ones are ignored.
+     */
+    static final class Builder {
+
+        private ByteBuffer table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+        private ByteBuffer data = ByteBuffer.allocateDirect(INITIAL_DATA_SIZE);
+        private int size;
+
+        /**
+         * Adds a user.
+         *
+         * @param hash hash of the username.
+         * @param user user, with a username.
+         * @return false if a user with the same username was added before.
+         */
+        boolean add(int hash, User user) {
+
+            int mask = table.capacity() / SLOT_SIZE - 1;
+            if (find(table, mask, data, hash, user.getUsername()) >= 0) {
+                return false;
+            }
+            if ((size + 1) * 2 > mask + 1) {
+                table = rehash(table, (mask + 1) * 2);
+                mask = table.capacity() / SLOT_SIZE - 1;
+            }
+
+            int offset = data.position();
+            put(user.getUsername());
+            put(user.getPassword());
+            put(user.getPermission());
+
+            int slot = hash & mask;
+            while (table.getInt(slot * SLOT_SIZE + Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putInt(slot * SLOT_SIZE, hash);
+            table.putInt(slot * SLOT_SIZE + Integer.BYTES, offset + 1);
+            size++;
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns the arena. The builder must not be used afterwards.
+         *
+         * @return UserArena.
+         */
+        UserArena build() {
+            return new UserArena(table, data, size, data.position());
+        }
+
+        private void put(String value) {
+
+            byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            int length = Integer.BYTES + (bytes == null ? 0 : bytes.length);
+            if (data.remaining() < length) {
+                long required = (long) data.position() + length;
+                long capacity = data.capacity();
+                while (capacity < required) {
+                    capacity *= 2;
+                }
+                if (capacity > Integer.MAX_VALUE - SLOT_SIZE) {
+                    throw new IllegalStateException("Users exceed the maximum size of the off-heap user store.");
+                }
+                ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+                data.flip();
+                grown.put(data);
+                data = grown;
+            }
+            if (bytes == null) {
+                data.putInt(-1);
+            } else {
+                data.putInt(bytes.length);
+                data.put(bytes);
+            }
+        }
+
+        private static ByteBuffer rehash(ByteBuffer table, int slots) {
+
+            ByteBuffer grown = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+            int mask = slots - 1;
+            for (int slot = 0; slot < table.capacity() / SLOT_SIZE; slot++) {
+                int reference = table.getInt(slot * SLOT_SIZE + Integer.BYTES);
+                if (reference != 0) {
+                    int hash = table.getInt(slot * SLOT_SIZE);
+                    int target = hash & mask;
+                    while (grown.getInt(target * SLOT_SIZE + Integer.BYTES) != 0) {
+                        target = (target + 1) & mask;
+                    }
+                    grown.putInt(target * SLOT_SIZE, hash);
+                    grown.putInt(target * SLOT_SIZE + Integer.BYTES, reference);
+                }
+            }
+            return grown;
+        }
+    }
+
+    /**
+     * Read-only view of a user record of an arena.
+     */
+    private static final class ArenaUser extends User {
+
+        private final ByteBuffer data;
+        private final int offset;
+
+        ArenaUser(ByteBuffer data, int offset) {
+
+            this.data = data;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getUsername() {
+            return decode(data, offset);
+        }
+
+        @Override
+        public String getPassword() {
+            return decode(data, next(offset));
+        }
+
+        @Override
+        public String getPermission() {
+            return decode(data, next(next(offset)));
+        }
+
+        @Override
+        public boolean matchesCredential(byte[] credential) {
+
+            // Compared in place and in constant time for a given length, without decoding the stored credential.
+            int field = next(offset);
+            int length = data.getInt(field);
+            if (length != credential.length) {
+                return false;
+            }
+            int difference = 0;
+            for (int i = 0; i < length; i++) {
+                difference |= credential[i] ^ data.get(field + Integer.BYTES + i);
+            }
+            return difference == 0;
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Users of the off-heap user store are read-only.");
+        }
+
+        @Override
+        public void setPassword(String password) {
+            throw new UnsupportedOperationException("Users of the off-heap user store are read-only.");
+        }
+
+        @Override
+        public void setPermission(String permission) {
+            throw new UnsupportedOperationException("Users of the off-heap user store are read-only.");
+        }
+
+        private int next(int field) {
+            return field + Integer.BYTES + Math.max(0, data.getInt(field));
+        }
+    }
+}
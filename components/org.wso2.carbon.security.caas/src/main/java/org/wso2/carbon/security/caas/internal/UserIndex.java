@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.util.FileUtil;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Immutable in-memory index of the user store, keyed by username. The users are kept in a hash array mapped trie, so
+ * a changed index shares all but the paths to the changed users with the index it was derived from. Changes are made
+ * through an {@link Editor}, which copies a node once per batch of changes and updates it in place afterwards.
+ * Users are held as {@code CompactUser}s.
+ * </p>
+ * <p>
+ * An off-heap index keeps the users of the users file in a {@code UserArena} outside the Java heap instead, and the
+ * trie only holds the changes made since, removals included. Such an index is folded back into a single arena by
+ * {@link #compact()}.
+ * </p>
+ * An index can be read by any number of threads without locking once published.
+ *
+ * @since 1.0.1
+ */
+public final class UserIndex {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // Header, two references and an int.
+    private static final int NODE_SIZE = CompactUser.OBJECT_HEADER_SIZE + 2 * CompactUser.REFERENCE_SIZE +
+                                         Integer.BYTES;
+
+    private static final Logger log = LoggerFactory.getLogger(UserIndex.class);
+
+    private static final UserIndex EMPTY = new UserIndex(null, new BitmapNode(null, 0, new Object[0]), 0);
+
+    // Users loaded off-heap, null if kept on the heap.
+    private final UserArena base;
+    private final Node root;
+    private final int size;
+
+    private UserIndex(UserArena base, Node root, int size) {
+
+        this.base = base;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns an index without users.
+     *
+     * @return UserIndex.
+     */
+    public static UserIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Indexes a users file.
+     *
+     * @param file users file.
+     * @param offHeap whether to keep the users off-heap.
+     * @return UserIndex.
+     * @throws CarbonSecurityServerException if the file cannot be read.
+     */
+    public static UserIndex load(Path file, boolean offHeap) throws CarbonSecurityServerException {
+
+        if (offHeap) {
+            UserArena.Builder builder = new UserArena.Builder();
+            FileUtil.readUsers(file, user -> {
+                if (user.getUsername() != null) {
+                    builder.add(hash(user.getUsername()), user);
+                }
+            });
+            return withArena(builder);
+        }
+
+        Editor editor = EMPTY.edit();
+        FileUtil.readUsers(file, user -> {
+            // The first entry of a username wins, as it did when the users list was searched.
+            if (user.getUsername() != null && editor.get(user.getUsername()) == null) {
+                editor.put(user);
+            }
+        });
+        UserIndex index = editor.publish();
+        if (log.isDebugEnabled() && index.size > 0) {
+            log.debug("Indexed " + index.size + " users in " + index.getHeapSize() / index.size + " bytes per user.");
+        }
+        return index;
+    }
+
+    /**
+     * Looks up a user.
+     *
+     * @param username username.
+     * @return User, or null if there is no such user.
+     */
+    public User get(String username) {
+        return username == null ? null : get(base, root, hash(username), username);
+    }
+
+    /**
+     * Returns the number of users.
+     *
+     * @return user count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns all the users, in no particular order.
+     *
+     * @return new list of the users.
+     */
+    public List<User> getUsers() {
+
+        List<User> users = new ArrayList<>(size);
+        root.forEach(user -> {
+            if (!(user instanceof Removed)) {
+                users.add(user);
+            }
+        });
+        if (base != null) {
+            base.forEach(user -> {
+                String username = user.getUsername();
+                if (root.get(hash(username), 0, username) == null) {
+                    users.add(user);
+                }
+            });
+        }
+        return users;
+    }
+
+    /**
+     * Estimates the heap held by this index, assuming compressed references. Users kept off-heap are not included.
+     *
+     * @return size in bytes.
+     */
+    public long getHeapSize() {
+        return root.getHeapSize();
+    }
+
+    /**
+     * Folds the changes made to an off-heap index into a new arena. Off-heap memory of the previous arena is released
+     * once it is no longer referenced. An index kept on the heap is returned as is.
+     *
+     * @return UserIndex.
+     */
+    public UserIndex compact() {
+        return base == null ? this : toOffHeap();
+    }
+
+    /**
+     * Returns whether the users of this index are kept off-heap.
+     *
+     * @return true if off-heap.
+     */
+    public boolean isOffHeap() {
+        return base != null;
+    }
+
+    /**
+     * Returns an off-heap index of the users of this index, as a single arena.
+     *
+     * @return UserIndex.
+     */
+    public UserIndex toOffHeap() {
+
+        UserArena.Builder builder = new UserArena.Builder();
+        for (User user : getUsers()) {
+            builder.add(hash(user.getUsername()), user);
+        }
+        return withArena(builder);
+    }
+
+    /**
+     * Starts a batch of changes to this index. This index itself is left unchanged.
+     *
+     * @return Editor.
+     */
+    public Editor edit() {
+        return new Editor(base, root, size);
+    }
+
+    private static UserIndex withArena(UserArena.Builder builder) {
+
+        UserArena arena = builder.build();
+        if (log.isDebugEnabled()) {
+            log.debug("Indexed " + arena.size() + " users in " + arena.getMemorySize() + " bytes off-heap.");
+        }
+        return new UserIndex(arena, EMPTY.root, arena.size());
+    }
+
+    private static User get(UserArena base, Node root, int hash, String username) {
+
+        User user = root.get(hash, 0, username);
+        if (user != null) {
+            return user instanceof Removed ? null : user;
+        }
+        return base == null ? null : base.get(hash, username);
+    }
+
+    private static int hash(String username) {
+
+        int h = username.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static long userHeapSize(User user) {
+
+        if (user instanceof CompactUser) {
+            return ((CompactUser) user).getHeapSize();
+        }
+        // A removal, holding the username only.
+        return CompactUser.align(CompactUser.OBJECT_HEADER_SIZE + 3 * CompactUser.REFERENCE_SIZE) +
+               CompactUser.getHeapSize(user.getUsername());
+    }
+
+    /**
+     * Batch of changes to a {@code UserIndex}, confined to a single thread. Nodes copied by an editor are owned by it
+     * and updated in place by later changes of the same batch, until the batch is published.
+     */
+    public static final class Editor {
+
+        private final UserArena base;
+        private Node root;
+        private int size;
+        private Object owner = new Object();
+
+        private Editor(UserArena base, Node root, int size) {
+
+            this.base = base;
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * Looks up a user, including the changes made so far.
+         *
+         * @param username username.
+         * @return User, or null if there is no such user.
+         */
+        public User get(String username) {
+            return username == null ? null : UserIndex.get(base, root, hash(username), username);
+        }
+
+        /**
+         * Adds or replaces a user.
+         *
+         * @param user user, which must not be modified afterwards.
+         */
+        public void put(User user) {
+
+            int hash = hash(user.getUsername());
+            User previous = UserIndex.get(base, root, hash, user.getUsername());
+            if (previous == null) {
+                size++;
+            }
+            root = root.put(owner, hash, 0, CompactUser.of(user, previous), new boolean[1]);
+        }
+
+        /**
+         * Removes a user.
+         *
+         * @param username username.
+         */
+        public void remove(String username) {
+
+            int hash = hash(username);
+            if (UserIndex.get(base, root, hash, username) == null) {
+                return;
+            }
+            size--;
+            if (base != null && base.get(hash, username) != null) {
+                // Shadows the user of the arena.
+                root = root.put(owner, hash, 0, new Removed(username), new boolean[1]);
+            } else {
+                Node node = root.remove(owner, hash, 0, username, new boolean[1]);
+                root = node != null ? node : EMPTY.root;
+            }
+        }
+
+        /**
+         * Returns the index with the changes made so far. Later changes copy the nodes they touch again, leaving the
+         * returned index unchanged.
+         *
+         * @return UserIndex.
+         */
+        public UserIndex publish() {
+
+            owner = new Object();
+            return new UserIndex(base, root, size);
+        }
+    }
+
+    // Removal of a user of the arena.
+    private static final class Removed extends User {
+
+        Removed(String username) {
+            setUsername(username);
+        }
+    }
+
+    private abstract static class Node {
+
+        // Token of the editor which may update this node in place.
+        Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+
+        abstract User get(int hash, int shift, String username);
+
+        abstract Node put(Object owner, int hash, int shift, User user, boolean[] added);
+
+        // Returns null when the node is left empty.
+        abstract Node remove(Object owner, int hash, int shift, String username, boolean[] removed);
+
+        abstract void forEach(Consumer<User> action);
+
+        abstract long getHeapSize();
+
+        // Returns the user of a node holding a single user, to be inlined in its parent.
+        abstract User single();
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private int bitmap;
+        // Per set bit of the bitmap, either a User or a child Node.
+        private Object[] entries;
+
+        BitmapNode(Object owner, int bitmap, Object[] entries) {
+
+            super(owner);
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+
+        @Override
+        User get(int hash, int shift, String username) {
+
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object entry = entries[index(bit)];
+            if (entry instanceof Node) {
+                return ((Node) entry).get(hash, shift + BITS, username);
+            }
+            User user = (User) entry;
+            return username.equals(user.getUsername()) ? user : null;
+        }
+
+        @Override
+        Node put(Object owner, int hash, int shift, User user, boolean[] added) {
+
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[entries.length + 1];
+                System.arraycopy(entries, 0, grown, 0, index);
+                grown[index] = user;
+                System.arraycopy(entries, index, grown, index + 1, entries.length - index);
+                added[0] = true;
+                return update(owner, bitmap | bit, grown);
+            }
+
+            Object entry = entries[index];
+            Object replacement;
+            if (entry instanceof Node) {
+                replacement = ((Node) entry).put(owner, hash, shift + BITS, user, added);
+                if (replacement == entry) {
+                    return this;
+                }
+            } else if (user.getUsername().equals(((User) entry).getUsername())) {
+                replacement = user;
+            } else {
+                User existing = (User) entry;
+                replacement = merge(owner, shift + BITS, existing, hash(existing.getUsername()), user, hash);
+                added[0] = true;
+            }
+            return set(owner, index, replacement);
+        }
+
+        @Override
+        Node remove(Object owner, int hash, int shift, String username, boolean[] removed) {
+
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object entry = entries[index];
+            if (entry instanceof Node) {
+                Node child = ((Node) entry).remove(owner, hash, shift + BITS, username, removed);
+                if (child == entry) {
+                    return this;
+                }
+                if (child != null) {
+                    User single = child.single();
+                    return set(owner, index, single != null ? single : child);
+                }
+            } else if (!username.equals(((User) entry).getUsername())) {
+                return this;
+            } else {
+                removed[0] = true;
+            }
+
+            if (entries.length == 1) {
+                return null;
+            }
+            Object[] shrunk = new Object[entries.length - 1];
+            System.arraycopy(entries, 0, shrunk, 0, index);
+            System.arraycopy(entries, index + 1, shrunk, index, shrunk.length - index);
+            return update(owner, bitmap & ~bit, shrunk);
+        }
+
+        @Override
+        void forEach(Consumer<User> action) {
+
+            for (Object entry : entries) {
+                if (entry instanceof Node) {
+                    ((Node) entry).forEach(action);
+                } else {
+                    action.accept((User) entry);
+                }
+            }
+        }
+
+        @Override
+        long getHeapSize() {
+
+            long size = CompactUser.align(NODE_SIZE) +
+                        CompactUser.align(CompactUser.ARRAY_HEADER_SIZE + 4L * entries.length);
+            for (Object entry : entries) {
+                size += entry instanceof Node ? ((Node) entry).getHeapSize() : userHeapSize((User) entry);
+            }
+            return size;
+        }
+
+        @Override
+        User single() {
+            return entries.length == 1 && entries[0] instanceof User ? (User) entries[0] : null;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private Node set(Object owner, int index, Object entry) {
+
+            if (owner != null && this.owner == owner) {
+                entries[index] = entry;
+                return this;
+            }
+            Object[] copy = entries.clone();
+            copy[index] = entry;
+            return new BitmapNode(owner, bitmap, copy);
+        }
+
+        private Node update(Object owner, int bitmap, Object[] entries) {
+
+            if (owner != null && this.owner == owner) {
+                this.bitmap = bitmap;
+                this.entries = entries;
+                return this;
+            }
+            return new BitmapNode(owner, bitmap, entries);
+        }
+
+        private static Node merge(Object owner, int shift, User first, int firstHash, User second, int secondHash) {
+
+            if (firstHash == secondHash) {
+                return new CollisionNode(owner, firstHash, new User[]{first, second});
+            }
+            Node node = new BitmapNode(owner, 0, new Object[0]);
+            boolean[] added = new boolean[1];
+            return node.put(owner, firstHash, shift, first, added).put(owner, secondHash, shift, second, added);
+        }
+    }
+
+    // Users whose hashes are equal in all 32 bits.
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private User[] users;
+
+        CollisionNode(Object owner, int hash, User[] users) {
+
+            super(owner);
+            this.hash = hash;
+            this.users = users;
+        }
+
+        @Override
+        User get(int hash, int shift, String username) {
+
+            if (hash == this.hash) {
+                for (User user : users) {
+                    if (username.equals(user.getUsername())) {
+                        return user;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Object owner, int hash, int shift, User user, boolean[] added) {
+
+            if (hash != this.hash) {
+                return new BitmapNode(owner, bit(this.hash, shift), new Object[]{this})
+                        .put(owner, hash, shift, user, added);
+            }
+            int index = indexOf(user.getUsername());
+            User[] updated;
+            if (index < 0) {
+                updated = new User[users.length + 1];
+                System.arraycopy(users, 0, updated, 0, users.length);
+                updated[users.length] = user;
+                added[0] = true;
+            } else {
+                updated = owner != null && this.owner == owner ? users : users.clone();
+                updated[index] = user;
+            }
+            return update(owner, updated);
+        }
+
+        @Override
+        Node remove(Object owner, int hash, int shift, String username, boolean[] removed) {
+
+            int index = hash == this.hash ? indexOf(username) : -1;
+            if (index < 0) {
+                return this;
+            }
+            removed[0] = true;
+            if (users.length == 1) {
+                return null;
+            }
+            User[] shrunk = new User[users.length - 1];
+            System.arraycopy(users, 0, shrunk, 0, index);
+            System.arraycopy(users, index + 1, shrunk, index, shrunk.length - index);
+            return update(owner, shrunk);
+        }
+
+        @Override
+        void forEach(Consumer<User> action) {
+
+            for (User user : users) {
+                action.accept(user);
+            }
+        }
+
+        @Override
+        long getHeapSize() {
+
+            long size = CompactUser.align(NODE_SIZE) +
+                        CompactUser.align(CompactUser.ARRAY_HEADER_SIZE + 4L * users.length);
+            for (User user : users) {
+                size += userHeapSize(user);
+            }
+            return size;
+        }
+
+        @Override
+        User single() {
+            return users.length == 1 ? users[0] : null;
+        }
+
+        private int indexOf(String username) {
+
+            for (int i = 0; i < users.length; i++) {
+                if (username.equals(users[i].getUsername())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Node update(Object owner, User[] users) {
+
+            if (owner != null && this.owner == owner) {
+                this.users = users;
+                return this;
+            }
+            return new CollisionNode(owner, hash, users);
+        }
+    }
+}
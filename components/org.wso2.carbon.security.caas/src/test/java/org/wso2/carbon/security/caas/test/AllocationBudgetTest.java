@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test;
+
+import org.osgi.framework.BundleContext;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Optional;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
+import org.wso2.carbon.messaging.CarbonMessage;
+import org.wso2.carbon.messaging.DefaultCarbonMessage;
+import org.wso2.carbon.security.caas.api.CarbonCallbackHandler;
+import org.wso2.carbon.security.caas.api.CarbonJAASConfiguration;
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+import org.wso2.carbon.security.caas.api.CarbonPolicy;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.ProxyCallbackHandler;
+import org.wso2.carbon.security.caas.api.handler.UsernamePasswordCallbackHandler;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.module.UsernamePasswordLoginModule;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.boot.ProxyLoginModule;
+import org.wso2.carbon.security.caas.internal.CarbonSecurityComponent;
+import org.wso2.carbon.security.caas.test.util.BundleContextStub;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivilegedAction;
+import java.security.ProtectionDomain;
+import java.util.Base64;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.spi.LoginModule;
+
+/**
+ * <p>
+ * Allocation budget tests of the login and authorization hot paths. Each operation is warmed up so that the JIT has
+ * compiled it, then the bytes allocated by the test thread are measured with
+ * {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes} and averaged over a number of operations.
+ * </p>
+ * The budgets are given in bytes per operation as parameters in testng.xml.
+ */
+public class AllocationBudgetTest {
+
+    private static final String APPLICATION_NAME = "CarbonSecurityBasicConfig";
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private Configuration configuration;
+    private CarbonMessage carbonMessage;
+
+    @BeforeClass
+    public void setUp() {
+
+        java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        if (!(mxBean instanceof com.sun.management.ThreadMXBean) ||
+            !((com.sun.management.ThreadMXBean) mxBean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Thread allocation accounting is not supported by this JVM.");
+        }
+        threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        BundleContext bundleContext = new BundleContextStub()
+                .register(LoginModule.class, UsernamePasswordLoginModule::new)
+                .register(CarbonCallbackHandler.class, UsernamePasswordCallbackHandler::new)
+                .getBundleContext();
+        new CarbonSecurityComponent().registerCarbonSecurityProvider(bundleContext);
+        ProxyLoginModule.init(bundleContext);
+
+        configuration = new CarbonJAASConfiguration(
+                CarbonSecurityConstants.getCarbonHomeDirectory().resolve("conf/security/carbon-jaas.config").toUri());
+
+        carbonMessage = new DefaultCarbonMessage();
+        carbonMessage.setHeader("Authorization", "Basic " + Base64.getEncoder()
+                .encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @Parameters("loginBudget")
+    public void testLoginAllocation(@Optional("65536") long budget) throws Exception {
+
+        long allocated = allocatedBytesPerOperation(2000, 1000, () -> {
+            PrivilegedCarbonContext.destroyCurrentContext();
+            LoginContext loginContext = new LoginContext(APPLICATION_NAME, new Subject(),
+                                                         new ProxyCallbackHandler(carbonMessage), configuration);
+            loginContext.login();
+        });
+
+        assertWithinBudget("LoginContext login", allocated, budget);
+    }
+
+    @Test
+    @Parameters("callbackDispatchBudget")
+    public void testCallbackDispatchAllocation(@Optional("4096") long budget) throws Exception {
+
+        ProxyCallbackHandler callbackHandler = new ProxyCallbackHandler(carbonMessage);
+        Callback[] callbacks = {new NameCallback("username"), new PasswordCallback("password", false)};
+
+        long allocated = allocatedBytesPerOperation(20000, 10000, () -> callbackHandler.handle(callbacks));
+
+        assertWithinBudget("ProxyCallbackHandler dispatch", allocated, budget);
+    }
+
+    @Test
+    @Parameters("policyImpliesBudget")
+    public void testPolicyImpliesAllocation(@Optional("512") long budget) throws Exception {
+
+        User user = new User();
+        user.setUsername("admin");
+        user.setPassword("YWRtaW4=");
+        user.setPermission("createLoginContext,modifyPrincipals");
+
+        Subject subject = new Subject();
+        subject.getPrincipals().add(CarbonPrincipal.intern(user));
+
+        CarbonPolicy policy = new CarbonPolicy();
+        ProtectionDomain domain = AllocationBudgetTest.class.getProtectionDomain();
+        CarbonPermission permission = new CarbonPermission("modifyPrincipals", "grant");
+
+        // The whole measurement runs inside a single doAs, so that only the policy decision is measured.
+        long allocated = Subject.doAs(subject, (PrivilegedAction<Long>) () -> {
+            try {
+                return allocatedBytesPerOperation(100000, 100000, () -> policy.implies(domain, permission));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertWithinBudget("CarbonPolicy implies", allocated, budget);
+    }
+
+    private long allocatedBytesPerOperation(int warmupOperations, int measuredOperations, Operation operation)
+            throws Exception {
+
+        for (int i = 0; i < warmupOperations; i++) {
+            operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < measuredOperations; i++) {
+            operation.run();
+        }
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / measuredOperations;
+    }
+
+    private static void assertWithinBudget(String operation, long allocated, long budget) {
+
+        Assert.assertTrue(allocated <= budget, operation + " allocated " + allocated +
+                                               " bytes per operation, which exceeds the budget of " + budget +
+                                               " bytes.");
+    }
+
+    /**
+     * Measured operation.
+     */
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+}
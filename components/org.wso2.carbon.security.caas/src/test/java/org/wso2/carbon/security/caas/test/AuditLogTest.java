@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.security.caas.api.audit.AuditLog;
+
+/**
+ * Tests of the {@link AuditLog} lifecycle.
+ */
+public class AuditLogTest {
+
+    private static final String WRITER_THREAD = "carbon-security-audit-writer";
+
+    private final AuditLog auditLog = AuditLog.getInstance();
+
+    @AfterClass
+    public void restart() {
+        auditLog.start();
+    }
+
+    @Test
+    public void testEventsAfterStopAreDropped() throws Exception {
+
+        auditLog.start();
+        long written = auditLog.getWrittenEvents();
+        auditLog.loginSucceeded("admin", "127.0.0.1");
+        auditLog.stop();
+        Assert.assertEquals(auditLog.getWrittenEvents(), written + 1, "Buffered event not written on stop.");
+        Assert.assertFalse(isWriterRunning());
+
+        long dropped = auditLog.getDroppedEvents();
+        auditLog.loginFailed("admin", "127.0.0.1", -1);
+        auditLog.authorizationDenied("admin", "modifyPrincipals");
+
+        Assert.assertFalse(isWriterRunning(), "Writer started again by an event published after stop.");
+        Assert.assertEquals(auditLog.getDroppedEvents(), dropped + 2);
+        Assert.assertEquals(auditLog.getWrittenEvents(), written + 1);
+
+        auditLog.start();
+        auditLog.loggedOut("admin", "127.0.0.1");
+        Assert.assertTrue(isWriterRunning());
+        Assert.assertEquals(auditLog.getDroppedEvents(), dropped + 2);
+    }
+
+    private static boolean isWriterRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> WRITER_THREAD.equals(thread.getName()) && thread.isAlive());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.caching.CarbonCachingService;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.cache.AuthenticationCache;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.internal.CarbonSecurityComponent;
+import org.wso2.carbon.security.caas.test.util.CachingServiceStub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Tests of {@link AuthenticationCache} against changes of the user store made while a verification is in flight.
+ * Each test plays the steps of {@code UsernamePasswordLoginModule} one by one, with the change in between.
+ */
+public class AuthenticationCacheTest {
+
+    private static final String TENANT = "cache-test";
+
+    private final CachingServiceBinder binder = new CachingServiceBinder();
+    private final CachingServiceStub cachingServiceStub = new CachingServiceStub();
+    private final CarbonCachingService cachingService = cachingServiceStub.getCachingService();
+
+    private Path directory;
+    private UserStore userStore;
+    private AuthenticationCache authenticationCache;
+
+    @BeforeClass
+    public void registerCachingService() {
+        binder.bind(cachingService);
+    }
+
+    @AfterClass
+    public void unRegisterCachingService() {
+        binder.unbind(cachingService);
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+
+        directory = Files.createTempDirectory("authentication-cache-test");
+        Path usersFile = directory.resolve("users.yaml");
+        Files.write(usersFile, ("users:\n" +
+                                "-\n" +
+                                "  username: alice\n" +
+                                "  password: YWxpY2U=\n" +
+                                "  permission: readResource\n" +
+                                "-\n" +
+                                "  username: bob\n" +
+                                "  password: Ym9i\n" +
+                                "  permission: readResource\n").getBytes(StandardCharsets.UTF_8));
+        userStore = new UserStore(usersFile);
+        authenticationCache = new AuthenticationCache(TENANT, userStore);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+
+        authenticationCache.release();
+        userStore.unload();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testVerifiedPrincipalIsCached() throws Exception {
+
+        String digest = authenticationCache.digest("alice", "alice".toCharArray());
+        long epoch = authenticationCache.getEpoch();
+        CarbonPrincipal principal = verify("alice", "YWxpY2U=");
+        authenticationCache.put(digest, principal, epoch);
+
+        Assert.assertSame(authenticationCache.get(digest), principal);
+    }
+
+    @Test
+    public void testInvalidateKeepsOtherUsers() throws Exception {
+
+        String aliceDigest = authenticationCache.digest("alice", "alice".toCharArray());
+        String bobDigest = authenticationCache.digest("bob", "bob".toCharArray());
+        long epoch = authenticationCache.getEpoch();
+        CarbonPrincipal alice = verify("alice", "YWxpY2U=");
+        CarbonPrincipal bob = verify("bob", "Ym9i");
+        authenticationCache.put(aliceDigest, alice, epoch);
+        authenticationCache.put(bobDigest, bob, epoch);
+
+        authenticationCache.invalidate("alice");
+
+        Assert.assertNull(authenticationCache.get(aliceDigest));
+        Assert.assertSame(authenticationCache.get(bobDigest), bob);
+        Assert.assertEquals(cachingServiceStub.size(cacheName()), 1);
+
+        // Cached again once verified under the new epoch.
+        epoch = authenticationCache.getEpoch();
+        authenticationCache.put(aliceDigest, verify("alice", "YWxpY2U="), epoch);
+        Assert.assertSame(authenticationCache.get(aliceDigest), alice);
+    }
+
+    @Test
+    public void testPasswordChangedWhileVerifying() throws Exception {
+
+        String digest = authenticationCache.digest("alice", "alice".toCharArray());
+        long epoch = authenticationCache.getEpoch();
+        CarbonPrincipal principal = verify("alice", "YWxpY2U=");
+
+        userStore.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        authenticationCache.put(digest, principal, epoch);
+
+        Assert.assertNull(authenticationCache.get(digest), "Old password cached after a password change.");
+        Assert.assertEquals(cachingServiceStub.size(cacheName()), 0);
+    }
+
+    @Test
+    public void testPasswordChangedWhileVerifyingAfterCacheRefreshed() throws Exception {
+
+        String digest = authenticationCache.digest("alice", "alice".toCharArray());
+        long epoch = authenticationCache.getEpoch();
+        CarbonPrincipal principal = verify("alice", "YWxpY2U=");
+
+        // Another login notices the new version, and drops the cached authentications, before the put below.
+        userStore.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        Assert.assertNull(authenticationCache.get(authenticationCache.digest("bob", "bob".toCharArray())));
+        authenticationCache.put(digest, principal, epoch);
+
+        Assert.assertNull(authenticationCache.get(digest), "Old password cached after a password change.");
+    }
+
+    @Test
+    public void testPasswordChangedByAnotherNodeWhileVerifying() throws Exception {
+
+        String digest = authenticationCache.digest("alice", "alice".toCharArray());
+        long epoch = authenticationCache.getEpoch();
+        CarbonPrincipal principal = verify("alice", "YWxpY2U=");
+
+        // Changed through a second store of the same files, and applied as ClusterInvalidation does, leaving the
+        // version unchanged.
+        UserStore otherNode = new UserStore(directory.resolve("users.yaml"));
+        try {
+            otherNode.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        } finally {
+            otherNode.unload();
+        }
+        long version = userStore.getVersion();
+        userStore.reload(Collections.singleton("alice"));
+        authenticationCache.invalidate(Collections.singleton("alice"));
+        Assert.assertEquals(userStore.getVersion(), version);
+
+        authenticationCache.put(digest, principal, epoch);
+
+        Assert.assertNull(authenticationCache.get(digest), "Old password cached after a password change.");
+        Assert.assertTrue(userStore.getUserView("alice").matchesCredential(
+                "bmV3UGFzc3dvcmQ=".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private CarbonPrincipal verify(String username, String encodedPassword) throws Exception {
+
+        User user = userStore.getUserView(username);
+        Assert.assertNotNull(user);
+        Assert.assertTrue(user.matchesCredential(encodedPassword.getBytes(StandardCharsets.UTF_8)),
+                          "Password of " + username + " not matched.");
+        return CarbonPrincipal.intern(TENANT, user);
+    }
+
+    private static String cacheName() {
+        return CarbonSecurityConstants.AUTHENTICATION_CACHE_NAME + "-" + TENANT;
+    }
+
+    private static User createUser(String username, String password, String permission) {
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(password);
+        user.setPermission(permission);
+        return user;
+    }
+
+    /**
+     * Binds the caching service as the OSGi framework would.
+     */
+    private static final class CachingServiceBinder extends CarbonSecurityComponent {
+
+        void bind(CarbonCachingService cachingService) {
+            registerCachingService(cachingService, Collections.emptyMap());
+        }
+
+        void unbind(CarbonCachingService cachingService) {
+            unRegisterCachingService(cachingService);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wso2.carbon.security.caas.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.codec.PrincipalCodec;
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.security.auth.Subject;
+
+/**
+ * Round-trip tests of {@link PrincipalCodec}, through heap and direct buffers.
+ */
+public class PrincipalCodecTest {
+
+    @Test
+    public void testPrincipalRoundTrip() {
+
+        CarbonPrincipal principal = new CarbonPrincipal(createUser("admin", "YWRtaW4=", "readResource,writeResource"));
+        CarbonPermission permission = new CarbonPermission("writeResource", "grant");
+
+        for (ByteBuffer buffer : createBuffers(PrincipalCodec.getEncodedSize(principal))) {
+            PrincipalCodec.encode(principal, buffer);
+            Assert.assertFalse(buffer.hasRemaining(), "Encoded size does not match the encoded principal.");
+            buffer.flip();
+
+            CarbonPrincipal decoded = PrincipalCodec.decodePrincipal(buffer);
+            Assert.assertEquals(decoded, principal);
+            Assert.assertFalse(buffer.hasRemaining());
+            Assert.assertNull(decoded.getUser().getPassword(), "Password of an encoded principal.");
+            Assert.assertEquals(decoded.getUser().getPermission(), "readResource,writeResource");
+            Assert.assertEquals(decoded.isAuthorized(permission), principal.isAuthorized(permission));
+        }
+
+        CarbonPrincipal decoded = PrincipalCodec.decodePrincipal(ByteBuffer.wrap(PrincipalCodec.encode(principal)));
+        Assert.assertEquals(decoded.getUser().getPermission(), "readResource,writeResource");
+    }
+
+    @Test
+    public void testTenantPrincipalIsInterned() {
+
+        CarbonPrincipal principal = CarbonPrincipal.intern("acme", createUser("admin", "YWRtaW4=", "readResource"));
+        byte[] encoded = PrincipalCodec.encode(principal);
+
+        CarbonPrincipal decoded = PrincipalCodec.decodePrincipal(ByteBuffer.wrap(encoded));
+        Assert.assertSame(decoded, principal);
+        Assert.assertEquals(decoded.getTenant(), "acme");
+        Assert.assertNotEquals(decoded, new CarbonPrincipal(createUser("admin", null, "readResource")));
+
+        User user = PrincipalCodec.decodeUser(ByteBuffer.wrap(encoded));
+        Assert.assertEquals(user.getUsername(), "admin");
+        Assert.assertEquals(user.getPermission(), "readResource");
+    }
+
+    @Test
+    public void testUserDecodedAsPrincipal() {
+
+        User user = createUser("carol", "Y2Fyb2w=", "readResource");
+        ByteBuffer buffer = ByteBuffer.allocate(PrincipalCodec.getEncodedSize(user));
+        PrincipalCodec.encode(user, buffer);
+        buffer.flip();
+
+        CarbonPrincipal decoded = PrincipalCodec.decodePrincipal(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        Assert.assertEquals(decoded.getName(), "carol");
+        Assert.assertNull(decoded.getTenant());
+        Assert.assertNull(decoded.getUser().getPassword(), "Password of a user decoded as a principal.");
+        Assert.assertEquals(decoded.getUser().getPermission(), "readResource");
+    }
+
+    @Test
+    public void testUserRoundTrip() {
+
+        // Multi-byte characters, a supplementary character and a missing permission.
+        User user = createUser("\u00fcser-\u0915-\ud83d\ude00", "c2VjcmV0", null);
+
+        for (ByteBuffer buffer : createBuffers(PrincipalCodec.getEncodedSize(user))) {
+            PrincipalCodec.encode(user, buffer);
+            Assert.assertFalse(buffer.hasRemaining(), "Encoded size does not match the encoded user.");
+            buffer.flip();
+
+            User decoded = PrincipalCodec.decodeUser(buffer);
+            Assert.assertEquals(decoded.getUsername(), user.getUsername());
+            Assert.assertEquals(decoded.getPassword(), user.getPassword());
+            Assert.assertNull(decoded.getPermission());
+        }
+    }
+
+    @Test
+    public void testSubjectRoundTrip() {
+
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new CarbonPrincipal(createUser("alice", "YWxpY2U=", "readResource")));
+        subject.getPrincipals().add(new CarbonPrincipal(createUser("bob", null, "a,b,c,d,e,f,g,h,i,j,k")));
+        subject.getPrincipals().add(new CarbonPrincipal("acme", createUser("alice", null, "readResource")));
+        subject.getPrincipals().add(() -> "not-a-carbon-principal");
+
+        for (ByteBuffer buffer : createBuffers(PrincipalCodec.getEncodedSize(subject))) {
+            PrincipalCodec.encode(subject, buffer);
+            buffer.flip();
+
+            Subject decoded = PrincipalCodec.decodeSubject(buffer);
+            Assert.assertEquals(decoded.getPrincipals(), subject.getPrincipals(CarbonPrincipal.class));
+            for (CarbonPrincipal principal : decoded.getPrincipals(CarbonPrincipal.class)) {
+                Assert.assertNull(principal.getUser().getPassword(), "Password of an encoded subject.");
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsInSequence() {
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        Set<String> usernames = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            PrincipalCodec.encode(new CarbonPrincipal(createUser("user" + i, null, "p" + i)), buffer);
+            usernames.add("user" + i);
+        }
+        buffer.flip();
+
+        Set<String> decoded = new HashSet<>();
+        while (buffer.hasRemaining()) {
+            decoded.add(PrincipalCodec.decodePrincipal(buffer).getName());
+        }
+        Assert.assertEquals(decoded, usernames);
+    }
+
+    @Test
+    public void testLongStrings() {
+
+        char[] permission = new char[100000];
+        Arrays.fill(permission, 'p');
+        User user = createUser("admin", null, new String(permission));
+
+        ByteBuffer buffer = ByteBuffer.allocate(PrincipalCodec.getEncodedSize(user));
+        PrincipalCodec.encode(user, buffer);
+        buffer.flip();
+        Assert.assertEquals(PrincipalCodec.decodeUser(buffer).getPermission(), user.getPermission());
+    }
+
+    @Test
+    public void testOverflowWritesNothing() {
+
+        CarbonPrincipal principal = new CarbonPrincipal(createUser("admin", null, "readResource"));
+        ByteBuffer buffer = ByteBuffer.allocate(PrincipalCodec.getEncodedSize(principal) - 1);
+        try {
+            PrincipalCodec.encode(principal, buffer);
+            Assert.fail("Encoded a principal into a buffer too small for it.");
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(buffer.position(), 0);
+        }
+    }
+
+    @Test
+    public void testMalformedRecords() {
+
+        byte[] encoded = PrincipalCodec.encode(new CarbonPrincipal(createUser("admin", null, "readResource")));
+
+        for (int length = 0; length < encoded.length; length++) {
+            assertRejected(Arrays.copyOf(encoded, length));
+        }
+
+        byte[] version = encoded.clone();
+        version[0]++;
+        assertRejected(version);
+
+        byte[] flags = encoded.clone();
+        flags[2] = (byte) 0x80;
+        assertRejected(flags);
+
+        // A length running past the end of the record.
+        byte[] length = encoded.clone();
+        length[3] = 0x7F;
+        assertRejected(length);
+
+        assertRejected(new byte[]{PrincipalCodec.FORMAT_VERSION, 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                                  (byte) 0xFF, (byte) 0x7F});
+    }
+
+    private static void assertRejected(byte[] bytes) {
+
+        try {
+            PrincipalCodec.decodePrincipal(ByteBuffer.wrap(bytes));
+            Assert.fail("Decoded a malformed principal: " + Arrays.toString(bytes));
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private static ByteBuffer[] createBuffers(int size) {
+        return new ByteBuffer[]{ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size)};
+    }
+
+    private static User createUser(String username, String password, String permission) {
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(password);
+        user.setPermission(permission);
+        return user;
+    }
+}
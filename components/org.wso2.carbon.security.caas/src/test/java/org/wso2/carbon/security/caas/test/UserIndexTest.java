@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.internal.UserIndex;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tests of the {@link UserIndex} trie, including users whose hashes collide and users kept off-heap.
+ */
+public class UserIndexTest {
+
+    // Usernames whose String hash codes are all equal.
+    private static final String[] COLLIDING = {"AaAa", "AaBB", "BBAa", "BBBB"};
+
+    @Test
+    public void testCollidingUsernames() {
+
+        Assert.assertEquals(Arrays.stream(COLLIDING).map(String::hashCode).distinct().count(), 1);
+
+        UserIndex.Editor editor = UserIndex.empty().edit();
+        for (String username : COLLIDING) {
+            editor.put(createUser(username, "permission-" + username));
+        }
+        editor.put(createUser("alice", "readResource"));
+        UserIndex index = editor.publish();
+
+        Assert.assertEquals(index.size(), COLLIDING.length + 1);
+        for (String username : COLLIDING) {
+            Assert.assertEquals(index.get(username).getPermission(), "permission-" + username);
+        }
+        Assert.assertEquals(usernames(index).size(), COLLIDING.length + 1);
+
+        // Replaced in place of the colliding user, not added next to it.
+        editor = index.edit();
+        editor.put(createUser("AaBB", "replaced"));
+        index = editor.publish();
+        Assert.assertEquals(index.size(), COLLIDING.length + 1);
+        Assert.assertEquals(index.get("AaBB").getPermission(), "replaced");
+
+        // Removed one by one, down to a single user left of the collision.
+        editor = index.edit();
+        for (int i = 0; i < COLLIDING.length - 1; i++) {
+            editor.remove(COLLIDING[i]);
+            Assert.assertNull(editor.get(COLLIDING[i]));
+            for (int j = i + 1; j < COLLIDING.length; j++) {
+                Assert.assertNotNull(editor.get(COLLIDING[j]), COLLIDING[j] + " removed along with " + COLLIDING[i]);
+            }
+        }
+        index = editor.publish();
+
+        Assert.assertEquals(index.size(), 2);
+        Assert.assertEquals(usernames(index), new HashSet<>(Arrays.asList("alice", "BBBB")));
+        Assert.assertEquals(index.get("BBBB").getPermission(), "permission-BBBB");
+        Assert.assertNull(index.get("BBAa"));
+    }
+
+    @Test
+    public void testPublishedIndexIsUnchangedByLaterEdits() {
+
+        UserIndex.Editor editor = UserIndex.empty().edit();
+        for (int i = 0; i < 200; i++) {
+            editor.put(createUser("user" + i, "readResource"));
+        }
+        editor.put(createUser("Aa", "readResource"));
+        editor.put(createUser("BB", "readResource"));
+        UserIndex published = editor.publish();
+        Set<String> publishedUsers = usernames(published);
+
+        // The same editor goes on after publishing, along with a second one started from the published index.
+        for (int i = 0; i < 200; i += 2) {
+            editor.remove("user" + i);
+        }
+        editor.put(createUser("user1", "writeResource"));
+        editor.put(createUser("BB", "writeResource"));
+        editor.put(createUser("AaAa", "readResource"));
+        editor.put(createUser("carol", "readResource"));
+        UserIndex.Editor other = published.edit();
+        other.remove("Aa");
+        other.put(createUser("user3", "writeResource"));
+
+        Assert.assertEquals(published.size(), 202);
+        Assert.assertEquals(usernames(published), publishedUsers);
+        Assert.assertEquals(published.get("user0").getPermission(), "readResource");
+        Assert.assertEquals(published.get("user1").getPermission(), "readResource");
+        Assert.assertEquals(published.get("user3").getPermission(), "readResource");
+        Assert.assertEquals(published.get("BB").getPermission(), "readResource");
+        Assert.assertNotNull(published.get("Aa"));
+        Assert.assertNull(published.get("AaAa"));
+        Assert.assertNull(published.get("carol"));
+
+        UserIndex edited = editor.publish();
+        Assert.assertEquals(edited.size(), 104);
+        Assert.assertNull(edited.get("user0"));
+        Assert.assertEquals(edited.get("user1").getPermission(), "writeResource");
+        Assert.assertEquals(edited.get("BB").getPermission(), "writeResource");
+        Assert.assertNotNull(edited.get("AaAa"));
+        Assert.assertNotNull(edited.get("Aa"));
+
+        UserIndex otherEdited = other.publish();
+        Assert.assertEquals(otherEdited.size(), 201);
+        Assert.assertNull(otherEdited.get("Aa"));
+        Assert.assertEquals(otherEdited.get("user3").getPermission(), "writeResource");
+        Assert.assertEquals(otherEdited.get("user1").getPermission(), "readResource");
+    }
+
+    @Test
+    public void testRemoveUserOfArena() {
+
+        UserIndex.Editor editor = UserIndex.empty().edit();
+        editor.put(createUser("alice", "readResource"));
+        editor.put(createUser("bob", "readResource"));
+        editor.put(createUser("Aa", "readResource"));
+        UserIndex offHeap = editor.publish().toOffHeap();
+        Assert.assertTrue(offHeap.isOffHeap());
+
+        editor = offHeap.edit();
+        editor.remove("alice");
+        editor.remove("Aa");
+        // Colliding with a removed user of the arena.
+        editor.put(createUser("BB", "writeResource"));
+        editor.remove("nobody");
+        UserIndex removed = editor.publish();
+
+        Assert.assertNull(removed.get("alice"));
+        Assert.assertNull(removed.get("Aa"));
+        Assert.assertEquals(removed.get("BB").getPermission(), "writeResource");
+        Assert.assertEquals(removed.size(), 2);
+        Assert.assertEquals(usernames(removed), new HashSet<>(Arrays.asList("bob", "BB")));
+
+        // Removing it again changes nothing, adding it back shadows the removal.
+        editor = removed.edit();
+        editor.remove("alice");
+        Assert.assertNull(editor.get("alice"));
+        editor.put(createUser("alice", "writeResource"));
+        UserIndex restored = editor.publish();
+        Assert.assertEquals(restored.size(), 3);
+        Assert.assertEquals(restored.get("alice").getPermission(), "writeResource");
+
+        // The arena itself still holds the user, for the indexes derived before the removal.
+        Assert.assertEquals(offHeap.size(), 3);
+        Assert.assertEquals(offHeap.get("alice").getPermission(), "readResource");
+
+        UserIndex compacted = removed.compact();
+        Assert.assertTrue(compacted.isOffHeap());
+        Assert.assertEquals(compacted.size(), 2);
+        Assert.assertNull(compacted.get("alice"));
+        Assert.assertEquals(usernames(compacted), new HashSet<>(Arrays.asList("bob", "BB")));
+    }
+
+    private static Set<String> usernames(UserIndex index) {
+        return index.getUsers().stream().map(User::getUsername).collect(Collectors.toSet());
+    }
+
+    private static User createUser(String username, String permission) {
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("cGFzc3dvcmQ=");
+        user.setPermission(permission);
+        return user;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityClientException;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Tests of {@link UserStore} and its journal across restarts, each simulated by unloading the store and opening a new
+ * one on the same files.
+ */
+public class UserStoreTest {
+
+    private static final String USERS = "users:\n" +
+                                        "-\n" +
+                                        "  username: alice\n" +
+                                        "  password: YWxpY2U=\n" +
+                                        "  permission: readResource\n" +
+                                        "-\n" +
+                                        "  username: bob\n" +
+                                        "  password: Ym9i\n" +
+                                        "  permission: readResource\n";
+
+    private Path directory;
+    private Path usersFile;
+    private Path journalFile;
+    private Path snapshotFile;
+    private UserStore userStore;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+
+        directory = Files.createTempDirectory("user-store-test");
+        usersFile = directory.resolve("users.yaml");
+        journalFile = directory.resolve("users.journal");
+        snapshotFile = directory.resolve("users.snapshot");
+        Files.write(usersFile, USERS.getBytes(StandardCharsets.UTF_8));
+        userStore = new UserStore(usersFile);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+
+        userStore.unload();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testChangesSurviveRestart() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        userStore.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        userStore.deleteUser("bob");
+        userStore.setPermission("carol", "readResource,writeResource");
+
+        restart();
+
+        assertUser("alice", "bmV3UGFzc3dvcmQ=", "readResource");
+        assertUser("carol", "Y2Fyb2w=", "readResource,writeResource");
+        Assert.assertNull(userStore.getUser("bob"));
+        Assert.assertEquals(userStore.getUserCount(), 2);
+        Assert.assertEquals(new String(Files.readAllBytes(usersFile), StandardCharsets.UTF_8), USERS,
+                            "Users file changed by the user store.");
+    }
+
+    @Test
+    public void testChangesAfterRestartAreValidated() throws Exception {
+
+        userStore.deleteUser("bob");
+        restart();
+
+        try {
+            userStore.setPermission("bob", "readResource");
+            Assert.fail("Permission set for a deleted user.");
+        } catch (CarbonSecurityClientException e) {
+            Assert.assertNull(userStore.getUser("bob"));
+        }
+        try {
+            userStore.addUser(createUser("alice", "YWxpY2U=", "readResource"));
+            Assert.fail("User added twice.");
+        } catch (CarbonSecurityClientException e) {
+            assertUser("alice", "YWxpY2U=", "readResource");
+        }
+    }
+
+    @Test
+    public void testTornTailRecordIsDiscarded() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        long valid = Files.size(journalFile);
+        userStore.addUser(createUser("dave", "ZGF2ZQ==", "readResource"));
+        userStore.unload();
+
+        // A crash in the middle of appending the last record.
+        truncate(journalFile, Files.size(journalFile) - 3);
+        restartUnloaded();
+
+        assertUser("carol", "Y2Fyb2w=", "readResource");
+        Assert.assertNull(userStore.getUser("dave"), "Torn record replayed.");
+        Assert.assertEquals(Files.size(journalFile), valid, "Torn record left in the journal.");
+
+        // Records appended after the recovery are not hidden behind the torn one.
+        userStore.addUser(createUser("erin", "ZXJpbg==", "readResource"));
+        restart();
+        assertUser("carol", "Y2Fyb2w=", "readResource");
+        assertUser("erin", "ZXJpbg==", "readResource");
+    }
+
+    @Test
+    public void testCorruptTailRecordIsDiscarded() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        long valid = Files.size(journalFile);
+        userStore.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        userStore.unload();
+
+        // A bit flipped in the content of the last record, detected by its CRC.
+        byte[] journal = Files.readAllBytes(journalFile);
+        journal[journal.length - 2] ^= 0x01;
+        Files.write(journalFile, journal);
+        restartUnloaded();
+
+        assertUser("carol", "Y2Fyb2w=", "readResource");
+        assertUser("alice", "YWxpY2U=", "readResource");
+        Assert.assertEquals(Files.size(journalFile), valid, "Corrupt record left in the journal.");
+    }
+
+    @Test
+    public void testGarbageAfterLastRecordIsDiscarded() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        long valid = Files.size(journalFile);
+        userStore.unload();
+
+        byte[] journal = Files.readAllBytes(journalFile);
+        byte[] extended = new byte[journal.length + 6];
+        System.arraycopy(journal, 0, extended, 0, journal.length);
+        extended[journal.length + 3] = 0x7f;
+        Files.write(journalFile, extended);
+        restartUnloaded();
+
+        assertUser("carol", "Y2Fyb2w=", "readResource");
+        Assert.assertEquals(Files.size(journalFile), valid);
+    }
+
+    @Test
+    public void testReplayAfterSnapshot() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        userStore.deleteUser("bob");
+        userStore.snapshot();
+        Assert.assertTrue(Files.exists(snapshotFile));
+        Assert.assertEquals(Files.size(journalFile), 0, "Journal not emptied by the snapshot.");
+
+        userStore.setPermission("carol", "writeResource");
+        userStore.updateUser(createUser("alice", "bmV3UGFzc3dvcmQ=", "readResource"));
+        restart();
+
+        assertUser("alice", "bmV3UGFzc3dvcmQ=", "readResource");
+        assertUser("carol", "Y2Fyb2w=", "writeResource");
+        Assert.assertNull(userStore.getUser("bob"));
+        Assert.assertEquals(new String(Files.readAllBytes(usersFile), StandardCharsets.UTF_8), USERS);
+    }
+
+    @Test
+    public void testJournalCoveredBySnapshotIsReplayedAgain() throws Exception {
+
+        userStore.addUser(createUser("carol", "Y2Fyb2w=", "readResource"));
+        userStore.deleteUser("bob");
+        userStore.setPermission("carol", "writeResource");
+        Path journalCopy = directory.resolve("users.journal.copy");
+        Files.copy(journalFile, journalCopy);
+        userStore.snapshot();
+        userStore.unload();
+
+        // A crash between writing the snapshot and emptying the journal.
+        Files.move(journalCopy, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        restartUnloaded();
+
+        assertUser("alice", "YWxpY2U=", "readResource");
+        assertUser("carol", "Y2Fyb2w=", "writeResource");
+        Assert.assertNull(userStore.getUser("bob"));
+        Assert.assertEquals(userStore.getUserCount(), 2);
+    }
+
+    private void restart() {
+
+        userStore.unload();
+        restartUnloaded();
+    }
+
+    private void restartUnloaded() {
+        userStore = new UserStore(usersFile);
+    }
+
+    private void assertUser(String username, String password, String permission) throws Exception {
+
+        User user = userStore.getUser(username);
+        Assert.assertNotNull(user, "No user " + username + ".");
+        Assert.assertTrue(user.matchesCredential(password.getBytes(StandardCharsets.UTF_8)),
+                          "Password of " + username + " not matched.");
+        Assert.assertEquals(user.getPermission(), permission);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+
+        byte[] content = Files.readAllBytes(file);
+        byte[] truncated = new byte[(int) size];
+        System.arraycopy(content, 0, truncated, 0, truncated.length);
+        Files.write(file, truncated);
+    }
+
+    private static User createUser(String username, String password, String permission) {
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(password);
+        user.setPermission(permission);
+        return user;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test.util;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceObjects;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * {@code BundleContext} serving prototype scoped services, for tests running outside an OSGi framework. Unlike a
+ * mock it does not record invocations, hence it adds next to nothing to the allocations of the code under test.
+ * Services are looked up by type only, the lookup filter is ignored. Services registered by the code under test are
+ * discarded.
+ */
+public final class BundleContextStub {
+
+    private final Map<Class<?>, List<ServiceReference<?>>> references = new HashMap<>();
+    private final Map<ServiceReference<?>, ServiceObjects<?>> serviceObjects = new HashMap<>();
+
+    /**
+     * Registers a service type. Every lookup returns a new service object created by the given factory.
+     *
+     * @param type service type.
+     * @param factory creates the service objects.
+     * @param <S> service type.
+     * @return this stub.
+     */
+    public <S> BundleContextStub register(Class<S> type, Supplier<? extends S> factory) {
+
+        ServiceReference<?> reference = proxy(ServiceReference.class, (proxy, method, args) ->
+                objectMethod(proxy, method.getName(), args));
+        references.put(type, Collections.singletonList(reference));
+        serviceObjects.put(reference, proxy(ServiceObjects.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getService":
+                    return factory.get();
+                case "getServiceReference":
+                    return reference;
+                case "ungetService":
+                    return null;
+                default:
+                    return objectMethod(proxy, method.getName(), args);
+            }
+        }));
+        return this;
+    }
+
+    /**
+     * Returns the {@code BundleContext} backed by the registered services.
+     *
+     * @return BundleContext.
+     */
+    public BundleContext getBundleContext() {
+
+        return proxy(BundleContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServiceReferences":
+                    return references.getOrDefault(args[0], Collections.emptyList());
+                case "getServiceObjects":
+                    return serviceObjects.get(args[0]);
+                case "registerService":
+                    return proxy(ServiceRegistration.class, BundleContextStub::discardedRegistration);
+                default:
+                    return objectMethod(proxy, method.getName(), args);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(BundleContextStub.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object discardedRegistration(Object proxy, Method method, Object[] args) {
+
+        switch (method.getName()) {
+            case "setProperties":
+            case "unregister":
+                return null;
+            default:
+                return objectMethod(proxy, method.getName(), args);
+        }
+    }
+
+    private static Object objectMethod(Object proxy, String methodName, Object[] args) {
+
+        switch (methodName) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getName();
+            default:
+                throw new UnsupportedOperationException(methodName + " is not supported by the stub.");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.test.util;
+
+import org.wso2.carbon.caching.CarbonCachingService;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+
+/**
+ * {@code CarbonCachingService} whose caches are plain concurrent maps, for tests running without a JCache
+ * implementation. Entries never expire and the cache configuration is ignored.
+ */
+public final class CachingServiceStub {
+
+    private final Map<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+    private final CacheManager cacheManager = proxy(CacheManager.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "getCache":
+                return caches.get(args[0]);
+            case "createCache":
+                return caches.computeIfAbsent((String) args[0], name -> createCache(proxy));
+            case "destroyCache":
+                caches.remove(args[0]);
+                return null;
+            case "isClosed":
+                return false;
+            default:
+                return objectMethod(proxy, method.getName(), args);
+        }
+    });
+
+    /**
+     * Returns the {@code CarbonCachingService} backed by this stub.
+     *
+     * @return CarbonCachingService.
+     */
+    public CarbonCachingService getCachingService() {
+
+        CachingProvider cachingProvider = proxy(CachingProvider.class, (proxy, method, args) ->
+                "getCacheManager".equals(method.getName()) ? cacheManager :
+                objectMethod(proxy, method.getName(), args));
+        return proxy(CarbonCachingService.class, (proxy, method, args) ->
+                "getCachingProvider".equals(method.getName()) ? cachingProvider :
+                objectMethod(proxy, method.getName(), args));
+    }
+
+    /**
+     * Returns the number of entries of a cache.
+     *
+     * @param name cache name.
+     * @return number of entries, or -1 if there is no such cache.
+     */
+    public int size(String name) {
+
+        Cache<?, ?> cache = caches.get(name);
+        if (cache == null) {
+            return -1;
+        }
+        int size = 0;
+        for (Cache.Entry<?, ?> ignored : cache) {
+            size++;
+        }
+        return size;
+    }
+
+    private static Cache<?, ?> createCache(Object cacheManager) {
+
+        Map<Object, Object> entries = new ConcurrentHashMap<>();
+        return proxy(Cache.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "get":
+                    return entries.get(args[0]);
+                case "put":
+                    entries.put(args[0], args[1]);
+                    return null;
+                case "remove":
+                    return args.length == 1 ? entries.remove(args[0]) != null : entries.remove(args[0], args[1]);
+                case "removeAll":
+                    if (args == null) {
+                        entries.clear();
+                    } else {
+                        entries.keySet().removeAll((Collection<?>) args[0]);
+                    }
+                    return null;
+                case "iterator":
+                    return iterator(entries);
+                case "getCacheManager":
+                    return cacheManager;
+                case "isClosed":
+                    return false;
+                default:
+                    return objectMethod(proxy, method.getName(), args);
+            }
+        });
+    }
+
+    private static Iterator<Cache.Entry<Object, Object>> iterator(Map<Object, Object> entries) {
+
+        Iterator<Map.Entry<Object, Object>> iterator = entries.entrySet().iterator();
+        return new Iterator<Cache.Entry<Object, Object>>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Cache.Entry<Object, Object> next() {
+
+                Map.Entry<Object, Object> entry = new AbstractMap.SimpleImmutableEntry<>(iterator.next());
+                return new Cache.Entry<Object, Object>() {
+
+                    @Override
+                    public Object getKey() {
+                        return entry.getKey();
+                    }
+
+                    @Override
+                    public Object getValue() {
+                        return entry.getValue();
+                    }
+
+                    @Override
+                    public <T> T unwrap(Class<T> type) {
+                        return type.cast(entry);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(CachingServiceStub.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object objectMethod(Object proxy, String methodName, Object[] args) {
+
+        switch (methodName) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getName();
+            default:
+                throw new UnsupportedOperationException(methodName + " is not supported by the stub.");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.security.caas.api.CarbonPermission;
+import org.wso2.carbon.security.caas.api.CarbonPolicy;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.security.PrivilegedAction;
+import java.security.ProtectionDomain;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+
+/**
+ * Authorization decisions through {@link User#isUserAuthorized(CarbonPermission)} and through
+ * {@link CarbonPolicy#implies(ProtectionDomain, java.security.Permission)} for a subject holding a
+ * {@link CarbonPrincipal}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkEnvironment.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+                                  BenchmarkEnvironment.EXPORT_SECURITY_PROVIDER})
+public class AuthorizationBenchmark {
+
+    private User user;
+    private CarbonPermission permission;
+    private Subject subject;
+    private PrivilegedAction<Boolean> policyCheck;
+
+    @Setup
+    public void setUp() {
+
+        user = new User();
+        user.setUsername("admin");
+        user.setPassword("YWRtaW4=");
+        user.setPermission("createLoginContext,modifyPrincipals,readResource,writeResource,deleteResource");
+        permission = new CarbonPermission("deleteResource", "grant");
+
+        subject = new Subject();
+        subject.getPrincipals().add(CarbonPrincipal.intern(user));
+
+        CarbonPolicy policy = new CarbonPolicy();
+        ProtectionDomain domain = AuthorizationBenchmark.class.getProtectionDomain();
+        policyCheck = () -> policy.implies(domain, permission);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean isUserAuthorized() {
+        return user.isUserAuthorized(permission);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean isUserAuthorizedConcurrent() {
+        return user.isUserAuthorized(permission);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean policyImplies() {
+        return Subject.doAs(subject, policyCheck);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean policyImpliesConcurrent() {
+        return Subject.doAs(subject, policyCheck);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.wso2.carbon.messaging.CarbonMessage;
+import org.wso2.carbon.messaging.DefaultCarbonMessage;
+import org.wso2.carbon.security.caas.api.CarbonCallbackHandler;
+import org.wso2.carbon.security.caas.api.CarbonJAASConfiguration;
+import org.wso2.carbon.security.caas.api.handler.UsernamePasswordCallbackHandler;
+import org.wso2.carbon.security.caas.api.module.UsernamePasswordLoginModule;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+import org.wso2.carbon.security.caas.boot.ProxyLoginModule;
+import org.wso2.carbon.security.caas.internal.CarbonSecurityComponent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.spi.LoginModule;
+
+/**
+ * <p>
+ * Carbon home and service registry shared by the benchmarks. A temporary carbon home is created holding a generated
+ * users file and a JAAS configuration, and the login modules and callback handlers are served from a
+ * {@link LocalServiceRegistry} instead of the OSGi framework.
+ * </p>
+ * Users are named {@code user0 .. userN-1} and the password of each user is the same as the username.
+ */
+public final class BenchmarkEnvironment {
+
+    /**
+     * JAAS application name of the benchmark login configuration.
+     */
+    public static final String APPLICATION_NAME = "CarbonSecurityBenchmark";
+
+    /**
+     * Lets the forked JVMs start on Java 8, which does not know {@link #EXPORT_SECURITY_PROVIDER}.
+     */
+    public static final String IGNORE_UNRECOGNIZED_VM_OPTIONS = "-XX:+IgnoreUnrecognizedVMOptions";
+
+    /**
+     * {@code CarbonPolicy} and {@code CarbonJAASConfiguration} extend JDK internal classes, which have to be exported
+     * to the forked JVMs on Java 9 or later.
+     */
+    public static final String EXPORT_SECURITY_PROVIDER = "--add-exports=java.base/sun.security.provider=ALL-UNNAMED";
+
+    private static final String USERNAME_PREFIX = "user";
+    private static final String PERMISSIONS = "createLoginContext,modifyPrincipals";
+
+    private static Path carbonHome;
+    private static Configuration configuration;
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Sets up the carbon home with the given number of users. The carbon home and the services are created once per
+     * JVM and the carbon home is removed when the JVM exits, while the users file is rewritten on every call.
+     *
+     * @param userCount number of users in the user store.
+     * @throws IOException if the carbon home could not be written.
+     */
+    public static synchronized void setUp(int userCount) throws IOException {
+
+        if (carbonHome == null) {
+            carbonHome = Files.createTempDirectory("carbon-security-benchmark");
+            System.setProperty(CarbonSecurityConstants.CARBON_HOME, carbonHome.toString());
+            Runtime.getRuntime().addShutdownHook(new Thread(BenchmarkEnvironment::deleteCarbonHome));
+            Path jaasConfig = writeJAASConfiguration(carbonHome);
+
+            LocalServiceRegistry registry = new LocalServiceRegistry();
+            registry.register(LoginModule.class, ProxyLoginModule.LOGIN_MODULE_SEARCH_KEY,
+                              UsernamePasswordLoginModule.class.getName(), UsernamePasswordLoginModule::new);
+            registry.register(CarbonCallbackHandler.class, CarbonCallbackHandler.SUPPORTED_LOGIN_MODULE,
+                              CarbonSecurityConstants.USERNAME_PASSWORD_LOGIN_MODULE,
+                              UsernamePasswordCallbackHandler::new);
+
+            new CarbonSecurityComponent().registerCarbonSecurityProvider(registry.getBundleContext());
+            ProxyLoginModule.init(registry.getBundleContext());
+            configuration = new CarbonJAASConfiguration(jaasConfig.toUri());
+        }
+
+        writeUsers(carbonHome, userCount);
+    }
+
+    /**
+     * Returns the JAAS configuration holding the {@link #APPLICATION_NAME} entry.
+     *
+     * @return Configuration.
+     */
+    public static Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns the name of the user at the given index.
+     *
+     * @param index index of the user.
+     * @return username.
+     */
+    public static String getUsername(int index) {
+        return USERNAME_PREFIX + index;
+    }
+
+    /**
+     * Creates a carbon message carrying basic authentication credentials.
+     *
+     * @param username username.
+     * @param password password.
+     * @return CarbonMessage.
+     */
+    public static CarbonMessage createBasicAuthMessage(String username, String password) {
+
+        CarbonMessage carbonMessage = new DefaultCarbonMessage();
+        carbonMessage.setHeader("Authorization", CarbonSecurityConstants.HTTP_AUTHORIZATION_PREFIX_BASIC + " " +
+                Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8)));
+        return carbonMessage;
+    }
+
+    private static void deleteCarbonHome() {
+
+        try (Stream<Path> paths = Files.walk(carbonHome)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Unable to delete " + carbonHome + ": " + e.getMessage());
+        }
+    }
+
+    private static Path writeJAASConfiguration(Path carbonHome) throws IOException {
+
+        Path jaasConfig = carbonHome.resolve("conf/security/carbon-jaas.config");
+        Files.createDirectories(jaasConfig.getParent());
+        Files.write(jaasConfig, (APPLICATION_NAME + " {\n   " + UsernamePasswordLoginModule.class.getName() +
+                                 " required;\n};\n").getBytes(StandardCharsets.UTF_8));
+        return jaasConfig;
+    }
+
+    private static void writeUsers(Path carbonHome, int userCount) throws IOException {
+
+        Path usersFile = carbonHome.resolve(CarbonSecurityConstants.USERS_CONFIG_LOCATION.substring(1));
+        Files.createDirectories(usersFile.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(usersFile, StandardCharsets.UTF_8)) {
+            writer.write("users:\n");
+            for (int i = 0; i < userCount; i++) {
+                String username = getUsername(i);
+                writer.write("-\n  username: ");
+                writer.write(username);
+                writer.write("\n  password: ");
+                writer.write(Base64.getEncoder().encodeToString(username.getBytes(StandardCharsets.UTF_8)));
+                writer.write("\n  permission: ");
+                writer.write(PERMISSIONS);
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.security.caas.api.handler.UsernamePasswordCallbackHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the basic authentication header by {@link UsernamePasswordCallbackHandler#canHandle()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkEnvironment.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+                                  BenchmarkEnvironment.EXPORT_SECURITY_PROVIDER})
+public class CallbackHandlerBenchmark {
+
+    private UsernamePasswordCallbackHandler callbackHandler;
+
+    @Setup
+    public void setUp() {
+
+        callbackHandler = new UsernamePasswordCallbackHandler();
+        callbackHandler.setCarbonMessage(BenchmarkEnvironment.createBasicAuthMessage("admin", "admin"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean canHandle() {
+        return callbackHandler.canHandle();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean canHandleConcurrent() {
+        return callbackHandler.canHandle();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wso2.carbon.security.caas.benchmark;
+
+/**
+ * <p>
+ * Log-linear latency histogram of the login storm. Every power of two range of latencies is split into
+ * {@value #SUB_BUCKETS} linear buckets, so that percentiles are reported within 1% of the recorded latencies, where
+ * the power of two buckets of the {@code SecurityMetrics} histograms may be off by up to 2x.
+ * </p>
+ * Not thread safe: each login thread records into its own recorder and the recorders are merged once a run is over.
+ */
+final class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS)];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds.
+     */
+    void record(long nanos) {
+
+        long value = Math.max(0, nanos);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the latencies recorded by another recorder.
+     *
+     * @param other recorder.
+     */
+    void add(LatencyRecorder other) {
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the latency below which the given share of the recorded latencies falls.
+     *
+     * @param percentile percentile, between 0 and 100.
+     * @return midpoint of the bucket holding the percentile, in nanoseconds, or 0 if nothing was recorded.
+     */
+    long getPercentile(double percentile) {
+
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return Math.min(max, midpointOf(i));
+            }
+        }
+        return 0;
+    }
+
+    // Values below SUB_BUCKETS have a bucket each, every following power of two range has SUB_BUCKETS buckets.
+    private static int indexOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long midpointOf(int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceObjects;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Minimal stand-in for the OSGi service registry, exposing prototype scoped services through a {@code BundleContext}
+ * so that the login path can be exercised without booting an OSGi framework. Only the lookups performed by
+ * {@code ProxyLoginModule} and {@code CarbonSecurityUtils} are supported.
+ */
+public final class LocalServiceRegistry {
+
+    private final List<Registration> registrations = new ArrayList<>();
+
+    /**
+     * Registers a prototype scoped service.
+     *
+     * @param type service type.
+     * @param property service property used to look the service up.
+     * @param value value of the service property.
+     * @param factory creates a new service object per lookup.
+     * @param <S> service type.
+     */
+    public <S> void register(Class<S> type, String property, String value, Supplier<? extends S> factory) {
+        registrations.add(new Registration(type, "(" + property + "=" + value + ")", factory));
+    }
+
+    /**
+     * Returns a {@code BundleContext} backed by this registry.
+     *
+     * @return BundleContext.
+     */
+    public BundleContext getBundleContext() {
+        return proxy(BundleContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServiceReferences":
+                    return getServiceReferences((Class<?>) args[0], (String) args[1]);
+                case "getServiceObjects":
+                    return getServiceObjects((ServiceReference<?>) args[0]);
+                case "registerService":
+                    return proxy(ServiceRegistration.class, LocalServiceRegistry::discardedRegistration);
+                default:
+                    return objectMethod(proxy, method, args);
+            }
+        });
+    }
+
+    // Services registered by the code under test are not served.
+    private static Object discardedRegistration(Object proxy, Method method, Object[] args) {
+
+        switch (method.getName()) {
+            case "setProperties":
+            case "unregister":
+                return null;
+            default:
+                return objectMethod(proxy, method, args);
+        }
+    }
+
+    private List<ServiceReference<?>> getServiceReferences(Class<?> type, String filter) {
+
+        List<ServiceReference<?>> references = new ArrayList<>();
+        for (Registration registration : registrations) {
+            if (registration.type.equals(type) && filter != null && filter.contains(registration.filter)) {
+                references.add(registration.reference);
+            }
+        }
+        return references;
+    }
+
+    private ServiceObjects<?> getServiceObjects(ServiceReference<?> reference) {
+
+        for (Registration registration : registrations) {
+            if (registration.reference == reference) {
+                return registration.serviceObjects;
+            }
+        }
+        return null;
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args) {
+
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getInterfaces()[0].getSimpleName() + "@" + System.identityHashCode(proxy);
+            default:
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the local registry.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LocalServiceRegistry.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Registered service.
+     */
+    private static final class Registration {
+
+        private final Class<?> type;
+        private final String filter;
+        private final ServiceReference<?> reference;
+        private final ServiceObjects<?> serviceObjects;
+
+        private Registration(Class<?> type, String filter, Supplier<?> factory) {
+
+            this.type = type;
+            this.filter = filter;
+            this.reference = proxy(ServiceReference.class, LocalServiceRegistry::objectMethod);
+            this.serviceObjects = proxy(ServiceObjects.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getService":
+                        return factory.get();
+                    case "ungetService":
+                        return null;
+                    case "getServiceReference":
+                        return reference;
+                    default:
+                        return objectMethod(proxy, method, args);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
+import org.wso2.carbon.messaging.CarbonMessage;
+import org.wso2.carbon.security.caas.api.ProxyCallbackHandler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * End to end JAAS logins through {@link ProxyCallbackHandler}, {@code CarbonJAASConfiguration} and
+ * {@code ProxyLoginModule}, as performed by a carbon transport for every request carrying basic authentication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkEnvironment.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+                                  BenchmarkEnvironment.EXPORT_SECURITY_PROVIDER})
+public class LoginBenchmark {
+
+    @Param({"10", "1000"})
+    private int userCount;
+
+    private CarbonMessage carbonMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        BenchmarkEnvironment.setUp(userCount);
+        String username = BenchmarkEnvironment.getUsername(userCount / 2);
+        carbonMessage = BenchmarkEnvironment.createBasicAuthMessage(username, username);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Subject login() throws LoginException {
+        return doLogin();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Subject loginConcurrent() throws LoginException {
+        return doLogin();
+    }
+
+    private Subject doLogin() throws LoginException {
+
+        // The login module refuses to replace a principal already set on the thread.
+        PrivilegedCarbonContext.destroyCurrentContext();
+        LoginContext loginContext = new LoginContext(BenchmarkEnvironment.APPLICATION_NAME, new Subject(),
+                                                     new ProxyCallbackHandler(carbonMessage),
+                                                     BenchmarkEnvironment.getConfiguration());
+        loginContext.login();
+        return loginContext.getSubject();
+    }
+}
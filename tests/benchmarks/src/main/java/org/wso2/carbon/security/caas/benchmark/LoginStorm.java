@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.wso2.carbon.kernel.context.PrivilegedCarbonContext;
+import org.wso2.carbon.messaging.CarbonMessage;
+import org.wso2.carbon.security.caas.api.ProxyCallbackHandler;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityConstants;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * <p>
+ * Standalone load driver that storms the JAAS login path with concurrent logins through {@link ProxyCallbackHandler}
+ * and {@code CarbonJAASConfiguration}, once per configured thread count, and reports the throughput, the latency
+ * percentiles and the scaling of each run against the single threaded one.
+ * </p>
+ * <pre>
+ *     java -cp benchmarks.jar org.wso2.carbon.security.caas.benchmark.LoginStorm \
+ *          --threads 1,2,4,8 --users 1000 --mix 80:10:10 --warmup 5 --duration 20 --csv scaling.csv
+ * </pre>
+ * The credential mix gives the percentages of logins with valid credentials, with a wrong password and with an
+ * unknown user. Valid logins cycle over at most {@value #MAX_MESSAGES} credentials, hence with the authentication
+ * cache enabled they measure cache hits once warmed up. Run with {@code --cache false} to measure the verification
+ * of the credentials against the user store.
+ */
+public final class LoginStorm {
+
+    private static final int MAX_MESSAGES = 1024;
+
+    private final int validPercentage;
+    private final int invalidPercentage;
+    private final CarbonMessage[] validMessages;
+    private final CarbonMessage[] invalidMessages;
+    private final CarbonMessage[] unknownMessages;
+
+    private LoginStorm(int userCount, int validPercentage, int invalidPercentage) {
+
+        this.validPercentage = validPercentage;
+        this.invalidPercentage = invalidPercentage;
+
+        int messageCount = Math.min(userCount, MAX_MESSAGES);
+        validMessages = new CarbonMessage[messageCount];
+        invalidMessages = new CarbonMessage[messageCount];
+        unknownMessages = new CarbonMessage[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            String username = BenchmarkEnvironment.getUsername((int) ((long) i * userCount / messageCount));
+            validMessages[i] = BenchmarkEnvironment.createBasicAuthMessage(username, username);
+            invalidMessages[i] = BenchmarkEnvironment.createBasicAuthMessage(username, username + "-invalid");
+            unknownMessages[i] = BenchmarkEnvironment.createBasicAuthMessage("unknown" + i, "unknown" + i);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int[] threadCounts = defaultThreadCounts();
+        int userCount = 1000;
+        int[] mix = {100, 0, 0};
+        int warmupSeconds = 5;
+        int durationSeconds = 10;
+        String csvFile = null;
+        boolean throttle = false;
+        boolean cache = true;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if ("--help".equals(option)) {
+                printUsage(System.out);
+                return;
+            }
+            if (i + 1 == args.length) {
+                exitWithUsage("Missing value of " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--threads":
+                        threadCounts = parseInts(value, ",");
+                        break;
+                    case "--users":
+                        userCount = Integer.parseInt(value);
+                        break;
+                    case "--mix":
+                        mix = parseInts(value, ":");
+                        break;
+                    case "--warmup":
+                        warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--csv":
+                        csvFile = value;
+                        break;
+                    case "--throttle":
+                        throttle = Boolean.parseBoolean(value);
+                        break;
+                    case "--cache":
+                        cache = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        exitWithUsage("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                exitWithUsage("Invalid value of " + option + ": " + value);
+            }
+        }
+
+        if (mix.length != 3 || mix[0] < 0 || mix[1] < 0 || mix[2] < 0 || mix[0] + mix[1] + mix[2] != 100) {
+            exitWithUsage("The credential mix must be three percentages adding up to 100.");
+        }
+        if (userCount < 1 || durationSeconds < 1 || warmupSeconds < 0 || threadCounts.length == 0) {
+            exitWithUsage("Users, duration and thread counts must be positive.");
+        }
+
+        // Invalid credentials would otherwise get valid logins of the same users throttled.
+        System.setProperty(CarbonSecurityConstants.THROTTLE_ENABLED, Boolean.toString(throttle));
+        System.setProperty(CarbonSecurityConstants.AUTHENTICATION_CACHE_ENABLED, Boolean.toString(cache));
+        BenchmarkEnvironment.setUp(userCount);
+        LoginStorm loginStorm = new LoginStorm(userCount, mix[0], mix[1]);
+
+        System.out.printf("Login storm: %d users, credential mix %d:%d:%d (valid:invalid:unknown), %ds per run, " +
+                          "authentication cache %s%n", userCount, mix[0], mix[1], mix[2], durationSeconds,
+                          cache ? "enabled" : "disabled");
+        if (warmupSeconds > 0) {
+            loginStorm.run(threadCounts[threadCounts.length - 1], warmupSeconds);
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            results.add(loginStorm.run(threads, durationSeconds));
+        }
+
+        printReport(results, System.out);
+        if (csvFile != null) {
+            writeCsv(results, csvFile);
+        }
+    }
+
+    /**
+     * Runs logins on the given number of threads for the given duration.
+     *
+     * @param threads number of login threads.
+     * @param durationSeconds duration of the run.
+     * @return Result.
+     * @throws InterruptedException if interrupted while waiting for the login threads.
+     */
+    private Result run(int threads, int durationSeconds) throws InterruptedException {
+
+        LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        LongAdder unexpected = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(threads);
+        long[] window = new long[2];
+
+        for (int i = 0; i < threads; i++) {
+            LatencyRecorder latencies = new LatencyRecorder();
+            recorders[i] = latencies;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    long deadline = window[1];
+                    while (System.nanoTime() < deadline) {
+                        login(latencies, unexpected);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            }, "login-storm-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        window[0] = System.nanoTime();
+        window[1] = window[0] + TimeUnit.SECONDS.toNanos(durationSeconds);
+        start.countDown();
+        finished.await();
+        long elapsed = System.nanoTime() - window[0];
+
+        LatencyRecorder latency = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            latency.add(recorder);
+        }
+        return new Result(threads, latency, unexpected.sum(), elapsed);
+    }
+
+    private void login(LatencyRecorder latencies, LongAdder unexpected) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int draw = random.nextInt(100);
+        int index = random.nextInt(validMessages.length);
+        boolean valid = draw < validPercentage;
+        CarbonMessage carbonMessage = valid ? validMessages[index] :
+                                      draw < validPercentage + invalidPercentage ? invalidMessages[index] :
+                                      unknownMessages[index];
+
+        long start = System.nanoTime();
+        boolean authenticated;
+        try {
+            PrivilegedCarbonContext.destroyCurrentContext();
+            LoginContext loginContext = new LoginContext(BenchmarkEnvironment.APPLICATION_NAME, new Subject(),
+                                                         new ProxyCallbackHandler(carbonMessage),
+                                                         BenchmarkEnvironment.getConfiguration());
+            loginContext.login();
+            authenticated = true;
+        } catch (LoginException e) {
+            authenticated = false;
+        }
+        latencies.record(System.nanoTime() - start);
+
+        if (authenticated != valid) {
+            unexpected.increment();
+        }
+    }
+
+    private static void printReport(List<Result> results, PrintStream out) {
+
+        double baseline = results.get(0).getThroughput() / results.get(0).threads;
+
+        out.println();
+        out.printf("%8s %14s %9s %11s %12s %12s %12s %12s %11s%n", "threads", "logins/s", "speedup", "efficiency",
+                   "mean(us)", "p50(us)", "p99(us)", "p999(us)", "unexpected");
+        for (Result result : results) {
+            double speedup = result.getThroughput() / baseline;
+            out.printf("%8d %14.1f %9.2f %10.1f%% %12s %12s %12s %12s %11d%n", result.threads,
+                       result.getThroughput(), speedup, 100 * speedup / result.threads,
+                       micros(result.latency.getMean()), micros(result.latency.getPercentile(50)),
+                       micros(result.latency.getPercentile(99)), micros(result.latency.getPercentile(99.9)),
+                       result.unexpected);
+        }
+        out.println();
+        out.println("Speedup is relative to the per thread throughput of the first run. Percentiles are within 1% " +
+                    "of the recorded latencies.");
+    }
+
+    private static void writeCsv(List<Result> results, String csvFile) throws IOException {
+
+        StringBuilder csv = new StringBuilder("threads,throughput,meanNanos,p50Nanos,p99Nanos,p999Nanos,maxNanos," +
+                                              "logins,unexpected\n");
+        for (Result result : results) {
+            csv.append(result.threads).append(',')
+                    .append(String.format("%.1f", result.getThroughput())).append(',')
+                    .append(result.latency.getMean()).append(',')
+                    .append(result.latency.getPercentile(50)).append(',')
+                    .append(result.latency.getPercentile(99)).append(',')
+                    .append(result.latency.getPercentile(99.9)).append(',')
+                    .append(result.latency.getMax()).append(',')
+                    .append(result.latency.getCount()).append(',')
+                    .append(result.unexpected).append('\n');
+        }
+        Files.write(Paths.get(csvFile), csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    private static int[] defaultThreadCounts() {
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(processors);
+        return threadCounts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] parseInts(String value, String separator) {
+
+        String[] parts = value.split(separator);
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static void exitWithUsage(String message) {
+
+        System.err.println(message);
+        printUsage(System.err);
+        System.exit(1);
+    }
+
+    private static void printUsage(PrintStream out) {
+
+        out.println("Usage: LoginStorm [options]");
+        out.println("  --threads <n,n,..>   thread counts to run, default 1,2,4,.. up to the available processors");
+        out.println("  --users <n>          number of users in the user store, default 1000");
+        out.println("  --mix <v:i:u>        percentages of valid, wrong password and unknown user logins, " +
+                    "default 100:0:0");
+        out.println("  --warmup <seconds>   warm up duration at the highest thread count, default 5");
+        out.println("  --duration <seconds> duration of each run, default 10");
+        out.println("  --csv <file>         also write the scaling curve as CSV");
+        out.println("  --throttle <bool>    throttle failed logins, default false");
+        out.println("  --cache <bool>       cache successful authentications, default true, false to measure the " +
+                    "verification of every credential");
+    }
+
+    /**
+     * Outcome of a run at a single thread count.
+     */
+    private static final class Result {
+
+        private final int threads;
+        private final LatencyRecorder latency;
+        private final long unexpected;
+        private final long elapsedNanos;
+
+        private Result(int threads, LatencyRecorder latency, long unexpected, long elapsedNanos) {
+
+            this.threads = threads;
+            this.latency = latency;
+            this.unexpected = unexpected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private double getThroughput() {
+            return latency.getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.security.caas.api.CarbonPrincipal;
+import org.wso2.carbon.security.caas.api.codec.PrincipalCodec;
+import org.wso2.carbon.security.caas.api.model.User;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+
+/**
+ * Throughput of encoding and decoding principals, users and subjects with {@link PrincipalCodec}, through heap
+ * buffers and through direct buffers such as the ones of memory-mapped session stores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkEnvironment.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+                                  BenchmarkEnvironment.EXPORT_SECURITY_PROVIDER})
+public class PrincipalCodecBenchmark {
+
+    @Param({"false", "true"})
+    private boolean direct;
+
+    private CarbonPrincipal principal;
+    private User user;
+    private Subject subject;
+
+    private ByteBuffer buffer;
+    private ByteBuffer encodedPrincipal;
+    private ByteBuffer encodedUser;
+    private ByteBuffer encodedSubject;
+
+    @Setup
+    public void setUp() {
+
+        user = new User();
+        user.setUsername("admin");
+        user.setPassword("YWRtaW4=");
+        user.setPermission("createLoginContext,modifyPrincipals,readResource,writeResource,deleteResource");
+        principal = new CarbonPrincipal(user);
+
+        subject = new Subject();
+        subject.getPrincipals().add(principal);
+
+        buffer = allocate(4096);
+        encodedPrincipal = allocate(PrincipalCodec.getEncodedSize(principal));
+        PrincipalCodec.encode(principal, encodedPrincipal);
+        encodedUser = allocate(PrincipalCodec.getEncodedSize(user));
+        PrincipalCodec.encode(user, encodedUser);
+        encodedSubject = allocate(PrincipalCodec.getEncodedSize(subject));
+        PrincipalCodec.encode(subject, encodedSubject);
+    }
+
+    @Benchmark
+    public ByteBuffer encodePrincipal() {
+
+        buffer.clear();
+        PrincipalCodec.encode(principal, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeUser() {
+
+        buffer.clear();
+        PrincipalCodec.encode(user, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeSubject() {
+
+        buffer.clear();
+        PrincipalCodec.encode(subject, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public CarbonPrincipal decodePrincipal() {
+
+        encodedPrincipal.clear();
+        return PrincipalCodec.decodePrincipal(encodedPrincipal);
+    }
+
+    @Benchmark
+    public User decodeUser() {
+
+        encodedUser.clear();
+        return PrincipalCodec.decodeUser(encodedUser);
+    }
+
+    @Benchmark
+    public Subject decodeSubject() {
+
+        encodedSubject.clear();
+        return PrincipalCodec.decodeSubject(encodedSubject);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
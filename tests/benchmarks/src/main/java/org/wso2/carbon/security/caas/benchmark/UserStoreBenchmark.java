@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.security.caas.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.security.caas.api.exception.CarbonSecurityServerException;
+import org.wso2.carbon.security.caas.api.model.User;
+import org.wso2.carbon.security.caas.api.userstore.UserStore;
+import org.wso2.carbon.security.caas.api.util.CarbonSecurityUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * User store lookups through {@link CarbonSecurityUtils#getUserView(UserStore, String)}, as made by logins. Each
+ * lookup walks the hash trie of the user index, hence its cost should barely grow with the number of users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkEnvironment.IGNORE_UNRECOGNIZED_VM_OPTIONS,
+                                  BenchmarkEnvironment.EXPORT_SECURITY_PROVIDER, "-Xmx4g"})
+public class UserStoreBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int userCount;
+
+    private String username;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        BenchmarkEnvironment.setUp(userCount);
+        username = BenchmarkEnvironment.getUsername(userCount - 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public User getUser() throws CarbonSecurityServerException {
+        return CarbonSecurityUtils.getUserView(UserStore.getInstance(), username);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public User getUserConcurrent() throws CarbonSecurityServerException {
+        return CarbonSecurityUtils.getUserView(UserStore.getInstance(), username);
+    }
+}